@@ -34,6 +34,8 @@ import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.TextView
+import com.atmotube.ble.AtmotubeData
+import com.atmotube.ble.AtmotubeRegistry
 import com.atmotube.ble.AtmotubeUtils
 import com.atmotube.ble.UpdateDataHolder
 import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat
@@ -41,7 +43,6 @@ import no.nordicsemi.android.support.v18.scanner.ScanCallback
 import no.nordicsemi.android.support.v18.scanner.ScanResult
 import no.nordicsemi.android.support.v18.scanner.ScanSettings
 import java.util.*
-import kotlin.collections.ArrayList
 
 class MainActivity : AppCompatActivity() {
 
@@ -75,21 +76,17 @@ class MainActivity : AppCompatActivity() {
 
     class MyAdapter : RecyclerView.Adapter<MyAdapter.MyViewHolder>() {
 
-        private val data = ArrayList<UpdateDataHolder>()
+        private val registry = AtmotubeRegistry()
         private val mSb = StringBuilder()
 
-        @Synchronized
         fun addItem(item: UpdateDataHolder) {
-            val key = item.mac
-            for ((pos, i) in data.withIndex()) {
-                if (i.mac == key) {
-                    data[pos] = item
-                    notifyItemChanged(pos)
-                    return
-                }
+            val count = registry.size()
+            val pos = registry.update(item)
+            if (pos < count) {
+                notifyItemChanged(pos)
+            } else {
+                notifyItemInserted(pos)
             }
-            data.add(item)
-            notifyItemInserted(data.size - 1)
         }
 
         class MyViewHolder(view: View) : RecyclerView.ViewHolder(view) {
@@ -107,7 +104,7 @@ class MainActivity : AppCompatActivity() {
 
         @Synchronized
         override fun onBindViewHolder(holder: MyViewHolder, position: Int) {
-            val d = data[position]
+            val d = registry.get(position)
             mSb.setLength(0)
             holder.line1.text = getLine1(mSb, d)
             mSb.setLength(0)
@@ -148,10 +145,9 @@ class MainActivity : AppCompatActivity() {
                     else if (d.isChargingTimeout) R.drawable.timer else 0, 0)
         }
 
-        @Synchronized
-        override fun getItemCount() = data.size
+        override fun getItemCount() = registry.size()
 
-        private fun getLine1(mSb: StringBuilder, data: UpdateDataHolder): StringBuilder {
+        private fun getLine1(mSb: StringBuilder, data: AtmotubeData): StringBuilder {
             mSb.append(data.mac).append(" (")
             mSb.append(AtmotubeUtils.getVersionName(data.hwVer))
             mSb.append(")")
@@ -164,7 +160,7 @@ class MainActivity : AppCompatActivity() {
             return mSb
         }
 
-        private fun getLine2(mSb: StringBuilder, data: UpdateDataHolder): StringBuilder {
+        private fun getLine2(mSb: StringBuilder, data: AtmotubeData): StringBuilder {
             mSb.append("FW ")
             if (data.fwVer != null && data.fwVer!!.length == 6) {
                 mSb.append(data.fwVer!!.substring(0, 2)).append('.').append(data.fwVer!!.substring(2, 4)).append('.').append(data.fwVer!!.substring(4))
@@ -185,7 +181,7 @@ class MainActivity : AppCompatActivity() {
             return mSb
         }
 
-        private fun getLine3(mSb: StringBuilder, data: UpdateDataHolder): StringBuilder {
+        private fun getLine3(mSb: StringBuilder, data: AtmotubeData): StringBuilder {
             if (data.temperature > 0) {
                 mSb.append('+')
             }
@@ -197,7 +193,7 @@ class MainActivity : AppCompatActivity() {
             return mSb
         }
 
-        private fun getLine4(mSb: StringBuilder, data: UpdateDataHolder): StringBuilder {
+        private fun getLine4(mSb: StringBuilder, data: AtmotubeData): StringBuilder {
             if (data.isHw4) {
                 if (!data.isPmIsOn) {
                     mSb.append("PM: off")
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble.benchmark;
+
+import com.atmotube.ble.AtmotubeConstants;
+
+import java.util.UUID;
+
+/**
+ * Scan records of every Atmotube generation, laid out as the devices advertise them
+ * <p>
+ * Each generation has a few records with different readings, so benchmarks do not run
+ * on a single constant input.
+ */
+public final class AdvertisementCorpus {
+
+    public static final String MAC = "C2:5E:11:00:AA:01";
+
+    public static final String GEN_1_0 = "1.0";
+    public static final String GEN_2_0 = "2.0";
+    public static final String GEN_PLUS = "PLUS";
+    public static final String GEN_PRO = "PRO";
+    public static final String GEN_FACTORY = "atmotest3";
+
+    private static final int RECORD_LENGTH = 62;
+    private static final int VARIANTS = 4;
+
+    private AdvertisementCorpus() {
+    }
+
+    /**
+     * Get device name reported together with the records of a generation
+     *
+     * @param generation one of GEN_* constants
+     * @return device name
+     */
+    public static String getName(String generation) {
+        switch (generation) {
+            case GEN_FACTORY:
+                return AtmotubeConstants.ATMOTEST_NAME_PLUS_PRO;
+            case GEN_PLUS:
+            case GEN_PRO:
+                return "Atmotube";
+            default:
+                return "ATMOTUBE";
+        }
+    }
+
+    /**
+     * Get scan records of a generation
+     *
+     * @param generation one of GEN_* constants
+     * @return scan records
+     */
+    public static byte[][] getRecords(String generation) {
+        byte[][] records = new byte[VARIANTS][];
+        for (int i = 0; i < VARIANTS; i++) {
+            switch (generation) {
+                case GEN_1_0:
+                    records[i] = legacy(AtmotubeConstants.UART_SERVICE_UUID, i, 0x70, 0x0100);
+                    break;
+                case GEN_2_0:
+                    records[i] = legacy(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V2, i, 0x72, 0x0102);
+                    break;
+                case GEN_PLUS:
+                    records[i] = plus(i);
+                    break;
+                case GEN_PRO:
+                    records[i] = pro(i);
+                    break;
+                case GEN_FACTORY:
+                    records[i] = factory(i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown generation " + generation);
+            }
+        }
+        return records;
+    }
+
+    private static byte[] legacy(UUID uuid, int variant, int fwMajor, int hwId) {
+        byte[] b = new byte[RECORD_LENGTH];
+        put(b, 0, 0x02, 0x01, 0x06, 0x11, 0x07);
+        putUuid(b, 5, uuid);
+        // VOC, humidity, temperature, info
+        put(b, 21, 0x08, 0xFF, 0xFF, 0xFF, 0x00, 0x20 + variant * 7, 40 + variant, 21 + variant, 0x05);
+        put(b, 30, 0x09, 0x09, 'A', 'T', 'M', 'O', 'T', 'U', 'B', 'E');
+        // scan response: firmware, ADC, hardware id
+        put(b, 40, 0x14, 0xFF, 0xFF, 0xFF);
+        put(b, 52, fwMajor, 0x01, 0x02 + variant);
+        put(b, 55, 0x01, 0x10 + variant, hwId >> 8, hwId);
+        return b;
+    }
+
+    private static byte[] pro(int variant) {
+        byte[] b = plusPro(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4, variant);
+        // PM1, PM2.5, PM10, firmware
+        put(b, 51, 0x00, 0x05 + variant, 0x00, 0x0A + variant, 0x00, 0x10 + variant, 0x74, 0x01, 0x05);
+        return b;
+    }
+
+    private static byte[] plus(int variant) {
+        byte[] b = plusPro(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V3, variant);
+        // baseline, battery voltage, firmware
+        put(b, 51, 0x01, 0x02 + variant, 0x01, 0x8B, 0x00, 0x00, 0x73, 0x02, 0x01);
+        return b;
+    }
+
+    private static byte[] plusPro(UUID service, int variant) {
+        byte[] b = new byte[RECORD_LENGTH];
+        put(b, 0, 0x02, 0x01, 0x06);
+        // VOC, CRC, humidity, temperature, pressure, info, battery
+        put(b, 3, 0x0F, 0xFF, 0xFF, 0xFF, 0x01, 0x90 + variant, 0x12, 0x34, 45 + variant, 23 - variant,
+                0x00, 0x01, 0x8B, 0xCD + variant, 0x41, 87 - variant);
+        put(b, 19, 0x11, 0x07);
+        putUuid(b, 21, service);
+        put(b, 37, 0x09, 0x09, 'a', 't', 'm', 'o', 't', 'u', 'b', 'e');
+        put(b, 47, 0x0D, 0xFF, 0xFF, 0xFF);
+        return b;
+    }
+
+    private static byte[] factory(int variant) {
+        byte[] b = new byte[RECORD_LENGTH];
+        put(b, 0, 0x02, 0x01, 0x06);
+        // VOC, battery, battery voltage, firmware, error code, baseline, humidity, temperature
+        put(b, 3, 0x11, 0xFF, 0xFF, 0xFF, 0x00, 0x40 + variant, 90, 0x01, 0x90, 0x74, 0x01, 0x05,
+                0x00, 0x02, 0x10 + variant, 50, 24);
+        // pressure, info, PM2.5
+        put(b, 20, 0x0A, 0xFF, 0xFF, 0xFF, 0x00, 0x01, 0x8B, 0xCD, 0x21, 0x00, 0x0C + variant);
+        put(b, 31, 0x0A, 0x09, 'a', 't', 'm', 'o', 't', 'e', 's', 't', '3');
+        return b;
+    }
+
+    private static void put(byte[] b, int off, int... values) {
+        for (int i = 0; i < values.length; i++) {
+            b[off + i] = (byte) values[i];
+        }
+    }
+
+    private static void putUuid(byte[] b, int off, UUID uuid) {
+        long lsb = uuid.getLeastSignificantBits();
+        long msb = uuid.getMostSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            b[off + i] = (byte) (lsb >>> (8 * i));
+            b[off + 8 + i] = (byte) (msb >>> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble.benchmark;
+
+import com.atmotube.ble.AtmotubeAqs;
+import com.atmotube.ble.AtmotubeData;
+import com.atmotube.ble.AtmotubeDecoders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Air Quality Score calculation for VOC only and VOC with PM readings
+ * <p>
+ * {@link #series()} scores {@value #SAMPLES} points per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AqsBenchmark {
+
+    private static final int SAMPLES = 64;
+
+    private final float[] mVoc = new float[SAMPLES];
+    private final float[] mPm1 = new float[SAMPLES];
+    private final float[] mPm25 = new float[SAMPLES];
+    private final float[] mPm10 = new float[SAMPLES];
+    private final int[] mOut = new int[SAMPLES];
+    private final AtmotubeData mPro = new AtmotubeData();
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        // readings spread over all score levels
+        for (int i = 0; i < SAMPLES; i++) {
+            mVoc[i] = i * 0.08f;
+            mPm1[i] = i * 1.7f;
+            mPm25[i] = i * 3.1f;
+            mPm10[i] = i * 6.3f;
+        }
+        byte[] record = AdvertisementCorpus.getRecords(AdvertisementCorpus.GEN_PRO)[0];
+        AtmotubeDecoders.decode(AdvertisementCorpus.getName(AdvertisementCorpus.GEN_PRO), AdvertisementCorpus.MAC, record, -60, mPro);
+    }
+
+    @Benchmark
+    public int vocOnly() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        return AtmotubeAqs.getAQS(mVoc[mIndex]);
+    }
+
+    @Benchmark
+    public int vocAndPm() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        return AtmotubeAqs.getAQS(mVoc[mIndex], mPm1[mIndex], mPm25[mIndex], mPm10[mIndex]);
+    }
+
+    @Benchmark
+    public int holder() {
+        return AtmotubeAqs.getAQS(mPro);
+    }
+
+    @Benchmark
+    public int[] series() {
+        AtmotubeAqs.getAQS(mVoc, mPm1, mPm25, mPm10, mOut);
+        return mOut;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble.benchmark;
+
+import com.atmotube.ble.AtmotubeData;
+import com.atmotube.ble.AtmotubeDecoder;
+import com.atmotube.ble.AtmotubeDecoders;
+import com.atmotube.ble.AtmotubeDeduplicator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Advertisement decoding for every hardware generation
+ * <p>
+ * {@link #decodeNew()} allocates a holder per packet as {@code AtmotubeUtils.getDataFromScanResult}
+ * does, {@link #decodeInto()} reuses one holder as {@code AtmotubeUtils.decodeInto} allows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({AdvertisementCorpus.GEN_1_0, AdvertisementCorpus.GEN_2_0, AdvertisementCorpus.GEN_PLUS,
+            AdvertisementCorpus.GEN_PRO, AdvertisementCorpus.GEN_FACTORY})
+    public String generation;
+
+    private String mName;
+    private byte[][] mRecords;
+    private final AtmotubeData mTarget = new AtmotubeData();
+    private final AtmotubeDeduplicator mDeduplicator = new AtmotubeDeduplicator();
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        mName = AdvertisementCorpus.getName(generation);
+        mRecords = AdvertisementCorpus.getRecords(generation);
+        for (byte[] record : mRecords) {
+            if (AtmotubeDecoders.decode(mName, AdvertisementCorpus.MAC, record, -60, mTarget) != AtmotubeDecoder.DECODE_OK) {
+                throw new IllegalStateException("Corpus record is not decoded: " + generation);
+            }
+        }
+    }
+
+    private byte[] next() {
+        mIndex = (mIndex + 1) & (mRecords.length - 1);
+        return mRecords[mIndex];
+    }
+
+    @Benchmark
+    public AtmotubeData decodeNew() {
+        AtmotubeData data = new AtmotubeData();
+        return AtmotubeDecoders.decode(mName, AdvertisementCorpus.MAC, next(), -60, data) == AtmotubeDecoder.DECODE_OK ? data : null;
+    }
+
+    @Benchmark
+    public int decodeInto() {
+        return AtmotubeDecoders.decode(mName, AdvertisementCorpus.MAC, next(), -60, mTarget);
+    }
+
+    @Benchmark
+    public boolean isCandidate() {
+        return AtmotubeDecoders.isCandidate(next());
+    }
+
+    @Benchmark
+    public boolean isDuplicate() {
+        return mDeduplicator.isDuplicate(AdvertisementCorpus.MAC, next());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble.benchmark;
+
+import com.atmotube.ble.AtmotubeData;
+import com.atmotube.ble.AtmotubeDecoders;
+import com.atmotube.ble.AtmotubeJsonWriter;
+import com.atmotube.ble.AtmotubeSeries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON export of a series of {@value #READINGS} readings to a discarding writer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonExportBenchmark {
+
+    private static final int READINGS = 10000;
+
+    private final AtmotubeSeries mSeries = new AtmotubeSeries(AdvertisementCorpus.MAC, READINGS);
+    private final Writer mNull = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        AtmotubeData data = new AtmotubeData();
+        byte[][] records = AdvertisementCorpus.getRecords(AdvertisementCorpus.GEN_PRO);
+        for (int i = 0; i < READINGS; i++) {
+            AtmotubeDecoders.decode(AdvertisementCorpus.getName(AdvertisementCorpus.GEN_PRO), AdvertisementCorpus.MAC,
+                    records[i % records.length], -60, data);
+            data.setTime(1600000000L + i * 2);
+            mSeries.append(data);
+        }
+    }
+
+    @Benchmark
+    public void series() throws IOException {
+        AtmotubeJsonWriter writer = new AtmotubeJsonWriter(mNull);
+        writer.write(mSeries, 0, mSeries.size());
+        writer.finish();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble.benchmark;
+
+import com.atmotube.ble.AtmotubeData;
+import com.atmotube.ble.AtmotubeDecoders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization and the binary form of decoded data for every raw data mode
+ * <p>
+ * Parcel and {@code getJSONArray} need Android classes and are not measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"" + AtmotubeData.RAW_MODE_STRING, "" + AtmotubeData.RAW_MODE_BYTES, "" + AtmotubeData.RAW_MODE_NONE})
+    public int rawMode;
+
+    private final AtmotubeData mData = new AtmotubeData();
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(1024);
+    private final DataOutputStream mDataOut = new DataOutputStream(mOut);
+    private final AtmotubeData mTarget = new AtmotubeData();
+    private byte[] mSerialized;
+    private byte[] mBinary;
+
+    @Setup
+    public void setup() throws IOException {
+        mData.setRawMode(rawMode);
+        byte[] record = AdvertisementCorpus.getRecords(AdvertisementCorpus.GEN_PRO)[0];
+        AtmotubeDecoders.decode(AdvertisementCorpus.getName(AdvertisementCorpus.GEN_PRO), AdvertisementCorpus.MAC, record, -60, mData);
+        mSerialized = serialize();
+        mBinary = writeTo();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        mOut.reset();
+        ObjectOutputStream out = new ObjectOutputStream(mOut);
+        out.writeObject(mData);
+        out.close();
+        return mOut.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(mSerialized));
+        return in.readObject();
+    }
+
+    @Benchmark
+    public byte[] writeTo() throws IOException {
+        mOut.reset();
+        mData.writeTo(mDataOut);
+        return mOut.toByteArray();
+    }
+
+    @Benchmark
+    public AtmotubeData readFrom() throws IOException {
+        mTarget.readFrom(new DataInputStream(new ByteArrayInputStream(mBinary)));
+        return mTarget;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.nio.charset.Charset;
+
+/**
+ * Allocation free lookups in raw BLE advertising data (length, type, data structures)
+ */
+final class AdvertisingData {
+
+    static final int TYPE_UUID128_INCOMPLETE = 0x06;
+    static final int TYPE_UUID128_COMPLETE = 0x07;
+    static final int TYPE_NAME_SHORT = 0x08;
+    static final int TYPE_NAME_COMPLETE = 0x09;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private AdvertisingData() {
+    }
+
+    /**
+     * Check if advertised local name equals to the name ignoring ASCII case
+     *
+     * @param record raw advertising data
+     * @param name   ASCII name
+     * @return true if short or complete local name matches
+     */
+    static boolean hasLocalName(byte[] record, String name) {
+        int i = 0;
+        while (i < record.length) {
+            int len = record[i] & 0xFF;
+            if (len == 0 || i + len >= record.length) {
+                return false;
+            }
+            int type = record[i + 1] & 0xFF;
+            if ((type == TYPE_NAME_SHORT || type == TYPE_NAME_COMPLETE) && len - 1 == name.length()) {
+                boolean equal = true;
+                for (int k = 0; k < name.length() && equal; k++) {
+                    equal = toLowerAscii(record[i + 2 + k]) == toLowerAscii((byte) name.charAt(k));
+                }
+                if (equal) {
+                    return true;
+                }
+            }
+            i += len + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Get advertised local name
+     *
+     * @param record raw advertising data
+     * @return complete or short local name, null if not advertised
+     */
+    static String getLocalName(byte[] record) {
+        int i = 0;
+        while (i < record.length) {
+            int len = record[i] & 0xFF;
+            if (len == 0 || i + len >= record.length) {
+                return null;
+            }
+            int type = record[i + 1] & 0xFF;
+            if (type == TYPE_NAME_SHORT || type == TYPE_NAME_COMPLETE) {
+                return new String(record, i + 2, len - 1, UTF_8);
+            }
+            i += len + 1;
+        }
+        return null;
+    }
+
+    static long readLongLE(byte[] b, int off) {
+        long v = 0;
+        for (int i = 7; i >= 0; i--) {
+            v = v << 8 | (b[off + i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static int toLowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+}
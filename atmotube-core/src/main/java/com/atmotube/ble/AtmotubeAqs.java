@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+/**
+ * Air Quality Score (AQS) calculation for VOC and PM readings
+ * <p>
+ * PM sensors report whole ug/m3 in most cases, so PM scores for integer readings up to the last
+ * level are taken from tables precomputed with the same formula. Nothing is allocated per reading.
+ */
+public final class AtmotubeAqs {
+
+    public static final int[] PM1_LEVELS = new int[]{
+            14, 34, 61, 95, 100
+    };
+
+    public static final int[] PM25_LEVELS = new int[]{
+            20, 50, 90, 140, 170
+    };
+
+    public static final int[] PM10_LEVELS = new int[]{
+            30, 75, 125, 200, 250
+    };
+
+    // PM AQS for integer readings 0..last level, index is the reading
+    private static final int[] PM1_TABLE = buildTable(PM1_LEVELS);
+    private static final int[] PM25_TABLE = buildTable(PM25_LEVELS);
+    private static final int[] PM10_TABLE = buildTable(PM10_LEVELS);
+
+    private AtmotubeAqs() {
+    }
+
+    /**
+     * Return Air Quality Score (AQS) for ppm value
+     *
+     * @param voc VOC ppm
+     * @return AQS 0 to 100
+     */
+    public static int getAQS(float voc) {
+        if (voc < 0.5) {
+            return (int) (100 - 60 * voc);
+        } else if (voc < 2) {
+            return (int) ((118 - 26 * voc) / 1.5f);
+        } else {
+            int aqs = (int) ((374 - 44 * voc) / 6.5f);
+            return aqs < 0 ? 0 : aqs;
+        }
+    }
+
+    public static int getAQS(AtmotubeData data) {
+        if (data.getPm25() != AtmotubeData.UNKNOWN) {
+            return getAQS(data.getVOC(), data.getPm1(), data.getPm25(), data.getPm10());
+        } else {
+            return getAQS(data.getVOC());
+        }
+    }
+
+    private static int[] buildTable(int[] levels) {
+        int[] table = new int[levels[levels.length - 1] + 1];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = calculatePmAQS(i, levels);
+        }
+        return table;
+    }
+
+    private static int getPmAQS(float pm, int[] levels, int[] table) {
+        int index = (int) pm;
+        if (index == pm && index >= 0 && index < table.length) {
+            return table[index];
+        }
+        return calculatePmAQS(pm, levels);
+    }
+
+    private static int calculatePmAQS(float pm, int[] levels) {
+        int index = 0;
+        while (index < levels.length && !(pm <= levels[index])) {
+            index++;
+        }
+        if (index > levels.length - 1) {
+            index = levels.length - 1;
+        }
+        int range = index > 0 ? levels[index] - levels[index - 1] : levels[index];
+        float pm2 = index > 0 ? pm - levels[index - 1] : pm;
+        int aqs = (int) (100 - 20 * index - 20 * (pm2 / range));
+        if (aqs < 0) {
+            aqs = 0;
+        }
+        return aqs;
+    }
+
+    public static int getAQS(float voc, float pm1, float pm25, float pm10) {
+        if (pm1 != AtmotubeData.UNKNOWN && pm25 != AtmotubeData.UNKNOWN && pm10 != AtmotubeData.UNKNOWN) {
+            int aqs = Math.min(getAQS(voc), getPmAQS(pm1, PM1_LEVELS, PM1_TABLE));
+            aqs = Math.min(aqs, getPmAQS(pm25, PM25_LEVELS, PM25_TABLE));
+            return Math.min(aqs, getPmAQS(pm10, PM10_LEVELS, PM10_TABLE));
+        } else {
+            return getAQS(voc);
+        }
+    }
+
+    /**
+     * Calculate Air Quality Score (AQS) for a series of readings
+     * <p>
+     * Each point is scored as {@link #getAQS(float, float, float, float)} does. PM arrays
+     * may be null for devices without PM sensor, then only VOC is scored.
+     *
+     * @param voc  VOC ppm
+     * @param pm1  PM1 readings or null
+     * @param pm25 PM2.5 readings or null
+     * @param pm10 PM10 readings or null
+     * @param out  AQS output, at least {@code voc.length} long
+     */
+    public static void getAQS(float[] voc, float[] pm1, float[] pm25, float[] pm10, int[] out) {
+        int count = voc.length;
+        if (out.length < count) {
+            throw new IllegalArgumentException("Output is shorter than input: " + out.length + " < " + count);
+        }
+        if (pm1 == null || pm25 == null || pm10 == null) {
+            for (int i = 0; i < count; i++) {
+                out[i] = getAQS(voc[i]);
+            }
+            return;
+        }
+        if (pm1.length < count || pm25.length < count || pm10.length < count) {
+            throw new IllegalArgumentException("PM series are shorter than VOC series");
+        }
+        for (int i = 0; i < count; i++) {
+            out[i] = getAQS(voc[i], pm1[i], pm25[i], pm10[i]);
+        }
+    }
+}
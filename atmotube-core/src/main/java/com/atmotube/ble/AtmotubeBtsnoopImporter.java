@@ -0,0 +1,484 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes Atmotube advertisements from btsnoop captures (Android HCI snoop log, btmon)
+ * <p>
+ * The file is read through memory-mapped windows in one pass. LE advertising reports are extracted
+ * from HCI events and a scannable advertisement is joined with the following scan response of the
+ * same device into the 62 byte scan record Android reports, so the usual decoders apply unchanged.
+ * Scan records are decoded in batches by worker threads while the file is being parsed; a fixed number
+ * of batches and a fixed table of advertisements waiting for scan response keep memory bounded
+ * for captures of any size.
+ * <p>
+ * Captures have no device names, so the name the decoders select a layout by is taken from the local name
+ * in the scan record or, for PLUS and PRO that do not advertise one, from a registered service UUID.
+ */
+public class AtmotubeBtsnoopImporter implements Closeable {
+
+    public interface Listener {
+        /**
+         * Called for every decoded reading from worker threads, possibly concurrently
+         *
+         * @param data reading with capture time, the holder is reused after return
+         */
+        void onReading(AtmotubeData data);
+    }
+
+    public static final int DATALINK_H1 = 1001;
+    public static final int DATALINK_H4 = 1002;
+    public static final int DATALINK_MONITOR = 2001;
+
+    static final byte[] MAGIC = {'b', 't', 's', 'n', 'o', 'o', 'p', 0};
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 24;
+    // btsnoop timestamps are microseconds since 0000-01-01
+    static final long EPOCH_OFFSET_MICROS = 0x00dcddb30f2f8000L;
+
+    // scan record length of pre-Oreo Android: 31 bytes advertisement and 31 bytes scan response
+    static final int SCAN_RECORD_SIZE = 62;
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int BATCH_SIZE = 1024;
+    private static final int PENDING_SIZE = 4096;
+
+    private static final int HCI_EVENT_PACKET = 0x04;
+    private static final int EVENT_LE_META = 0x3E;
+    private static final int SUBEVENT_ADVERTISING_REPORT = 0x02;
+    private static final int SUBEVENT_EXTENDED_ADVERTISING_REPORT = 0x0D;
+
+    // legacy advertising report event types
+    private static final int ADV_IND = 0x00;
+    private static final int ADV_SCAN_IND = 0x02;
+    private static final int SCAN_RSP = 0x04;
+
+    // extended advertising report event type bits
+    private static final int EXT_SCANNABLE = 0x02;
+    private static final int EXT_SCAN_RESPONSE = 0x08;
+
+    private static final int KIND_FINAL = 0;
+    private static final int KIND_SCANNABLE = 1;
+    private static final int KIND_SCAN_RESPONSE = 2;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mSize;
+    private final int mDatalink;
+
+    private ByteBuffer mWindow;
+    private long mWindowStart;
+    private int mWindowSize;
+
+    // advertisements waiting for scan response, direct mapped by address
+    private final long[] mPendingAddress = new long[PENDING_SIZE];
+    private final long[] mPendingTime = new long[PENDING_SIZE];
+    private final int[] mPendingRssi = new int[PENDING_SIZE];
+    private final int[] mPendingLength = new int[PENDING_SIZE];
+    private final byte[][] mPendingData = new byte[PENDING_SIZE][];
+    private final byte[] mReport = new byte[255];
+
+    private BlockingQueue<Batch> mFree;
+    private Batch mBatch;
+    private ExecutorService mExecutor;
+    private Listener mListener;
+
+    private long mPackets;
+    private long mReports;
+    private final AtomicLong mDecoded = new AtomicLong();
+    // first exception thrown on a worker thread, rethrown by run
+    private final AtomicReference<Throwable> mError = new AtomicReference<>();
+
+    /**
+     * Open capture and check header
+     *
+     * @param file btsnoop file
+     * @throws IOException if the file is not a btsnoop capture or has unsupported datalink
+     */
+    public AtmotubeBtsnoopImporter(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            mChannel = mFile.getChannel();
+            mSize = mChannel.size();
+            if (mSize < HEADER_SIZE) {
+                throw new IOException("Not a btsnoop file");
+            }
+            map(0);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (mWindow.get(i) != MAGIC[i]) {
+                    throw new IOException("Not a btsnoop file");
+                }
+            }
+            int version = mWindow.getInt(8);
+            if (version != 1) {
+                throw new IOException("Unsupported btsnoop version " + version);
+            }
+            mDatalink = mWindow.getInt(12);
+            if (mDatalink != DATALINK_H1 && mDatalink != DATALINK_H4 && mDatalink != DATALINK_MONITOR) {
+                throw new IOException("Unsupported btsnoop datalink " + mDatalink);
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public int getDatalink() {
+        return mDatalink;
+    }
+
+    /**
+     * @return captured packets read by the last {@link #run(Listener, int)}
+     */
+    public long getPackets() {
+        return mPackets;
+    }
+
+    /**
+     * @return advertising reports and scan responses read by the last {@link #run(Listener, int)}
+     */
+    public long getReports() {
+        return mReports;
+    }
+
+    /**
+     * @return readings decoded by the last {@link #run(Listener, int)}
+     */
+    public long getDecoded() {
+        return mDecoded.get();
+    }
+
+    /**
+     * Read the whole capture and decode Atmotube advertisements
+     * <p>
+     * Readings of one device may be delivered out of capture order when there is more than one thread.
+     * A record truncated at the end of file, as written by an interrupted capture, ends the import.
+     * An exception thrown by the listener stops the import and is rethrown once all workers are done.
+     *
+     * @param listener receiver of decoded readings
+     * @param threads  number of decoding threads
+     * @return number of decoded readings
+     */
+    public long run(Listener listener, int threads) throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid threads " + threads);
+        }
+        mListener = listener;
+        mPackets = 0;
+        mReports = 0;
+        mDecoded.set(0);
+        mError.set(null);
+        Arrays.fill(mPendingLength, -1);
+        mFree = new ArrayBlockingQueue<>(threads * 2);
+        for (int i = 0; i < threads * 2; i++) {
+            mFree.add(new Batch());
+        }
+        mExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AtmotubeBtsnoopImporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            mBatch = mFree.take();
+            parse();
+            for (int i = 0; i < PENDING_SIZE; i++) {
+                if (mPendingLength[i] >= 0) {
+                    flushPending(i);
+                }
+            }
+            submit();
+            // all batches are back when all workers are done
+            for (int i = 0; i < threads * 2; i++) {
+                mFree.take();
+            }
+            Throwable error = mError.get();
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error != null) {
+                throw (Error) error;
+            }
+        } finally {
+            mExecutor.shutdownNow();
+            mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            mExecutor = null;
+            mBatch = null;
+            mFree = null;
+            mListener = null;
+        }
+        return mDecoded.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWindow = null;
+        mFile.close();
+    }
+
+    private void parse() throws IOException, InterruptedException {
+        long pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= mSize && mError.get() == null) {
+            ensure(pos, RECORD_HEADER_SIZE);
+            int off = (int) (pos - mWindowStart);
+            long length = mWindow.getInt(off + 4) & 0xFFFFFFFFL;
+            int flags = mWindow.getInt(off + 8);
+            long timestamp = mWindow.getLong(off + 16);
+            if (length > WINDOW_SIZE - RECORD_HEADER_SIZE) {
+                throw new IOException("Corrupted btsnoop record at " + pos);
+            }
+            if (pos + RECORD_HEADER_SIZE + length > mSize) {
+                break;
+            }
+            ensure(pos, RECORD_HEADER_SIZE + (int) length);
+            mPackets++;
+            off = (int) (pos - mWindowStart) + RECORD_HEADER_SIZE;
+            int end = off + (int) length;
+            if (mDatalink == DATALINK_H4) {
+                if (length > 0 && mWindow.get(off) == HCI_EVENT_PACKET) {
+                    parseEvent(off + 1, end, (timestamp - EPOCH_OFFSET_MICROS) / 1000);
+                }
+            } else if (mDatalink == DATALINK_H1) {
+                if ((flags & 3) == 3) {
+                    parseEvent(off, end, (timestamp - EPOCH_OFFSET_MICROS) / 1000);
+                }
+            } else if ((flags & 0xFFFF) == 3) {
+                // monitor event packet opcode
+                parseEvent(off, end, (timestamp - EPOCH_OFFSET_MICROS) / 1000);
+            }
+            pos += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    private void parseEvent(int off, int end, long time) throws InterruptedException {
+        if (end - off < 4 || (mWindow.get(off) & 0xFF) != EVENT_LE_META) {
+            return;
+        }
+        end = Math.min(end, off + 2 + (mWindow.get(off + 1) & 0xFF));
+        int subevent = mWindow.get(off + 2) & 0xFF;
+        int count = mWindow.get(off + 3) & 0xFF;
+        int p = off + 4;
+        if (subevent == SUBEVENT_ADVERTISING_REPORT) {
+            for (int i = 0; i < count && p + 10 <= end; i++) {
+                int type = mWindow.get(p) & 0xFF;
+                int length = mWindow.get(p + 8) & 0xFF;
+                if (p + 10 + length > end) {
+                    return;
+                }
+                int kind = type == SCAN_RSP ? KIND_SCAN_RESPONSE
+                        : type == ADV_IND || type == ADV_SCAN_IND ? KIND_SCANNABLE : KIND_FINAL;
+                report(getAddress(p + 2), time, mWindow.get(p + 9 + length), p + 9, length, kind);
+                p += 10 + length;
+            }
+        } else if (subevent == SUBEVENT_EXTENDED_ADVERTISING_REPORT) {
+            for (int i = 0; i < count && p + 24 <= end; i++) {
+                int type = (mWindow.get(p) & 0xFF) | (mWindow.get(p + 1) & 0xFF) << 8;
+                int length = mWindow.get(p + 23) & 0xFF;
+                if (p + 24 + length > end) {
+                    return;
+                }
+                // skip fragments, data status other than complete
+                if ((type >> 5 & 3) == 0) {
+                    int kind = (type & EXT_SCAN_RESPONSE) != 0 ? KIND_SCAN_RESPONSE
+                            : (type & EXT_SCANNABLE) != 0 ? KIND_SCANNABLE : KIND_FINAL;
+                    report(getAddress(p + 3), time, mWindow.get(p + 13), p + 24, length, kind);
+                }
+                p += 24 + length;
+            }
+        }
+    }
+
+    private long getAddress(int off) {
+        long address = 0;
+        for (int i = 5; i >= 0; i--) {
+            address = address << 8 | (mWindow.get(off + i) & 0xFF);
+        }
+        return address;
+    }
+
+    private void report(long address, long time, int rssi, int off, int length, int kind)
+            throws InterruptedException {
+        mReports++;
+        int slot = (int) ((address ^ address >>> 17 ^ address >>> 31) & (PENDING_SIZE - 1));
+        boolean same = mPendingLength[slot] >= 0 && mPendingAddress[slot] == address;
+        if (kind == KIND_SCAN_RESPONSE) {
+            if (same) {
+                mWindow.position(off);
+                mWindow.get(mReport, 0, length);
+                emit(address, mPendingTime[slot], mPendingRssi[slot], mPendingData[slot], mPendingLength[slot],
+                        mReport, length);
+                mPendingLength[slot] = -1;
+            }
+            // scan response without advertisement has no Atmotube readings
+            return;
+        }
+        if (mPendingLength[slot] >= 0) {
+            // no scan response came for the previous advertisement or slot is taken by another device
+            flushPending(slot);
+        }
+        if (kind == KIND_SCANNABLE) {
+            if (mPendingData[slot] == null) {
+                mPendingData[slot] = new byte[255];
+            }
+            mWindow.position(off);
+            mWindow.get(mPendingData[slot], 0, length);
+            mPendingAddress[slot] = address;
+            mPendingTime[slot] = time;
+            mPendingRssi[slot] = rssi;
+            mPendingLength[slot] = length;
+        } else {
+            mWindow.position(off);
+            mWindow.get(mReport, 0, length);
+            emit(address, time, rssi, mReport, length, null, 0);
+        }
+    }
+
+    private void flushPending(int slot) throws InterruptedException {
+        emit(mPendingAddress[slot], mPendingTime[slot], mPendingRssi[slot], mPendingData[slot], mPendingLength[slot],
+                null, 0);
+        mPendingLength[slot] = -1;
+    }
+
+    private void emit(long address, long time, int rssi, byte[] adv, int advLength, byte[] rsp, int rspLength)
+            throws InterruptedException {
+        Batch batch = mBatch;
+        int i = batch.mCount;
+        int length = Math.max(SCAN_RECORD_SIZE, advLength + rspLength);
+        byte[] record = batch.mRecords[i];
+        if (record == null || record.length != length) {
+            record = new byte[length];
+            batch.mRecords[i] = record;
+        }
+        System.arraycopy(adv, 0, record, 0, advLength);
+        if (rspLength > 0) {
+            System.arraycopy(rsp, 0, record, advLength, rspLength);
+        }
+        Arrays.fill(record, advLength + rspLength, length, (byte) 0);
+        batch.mAddresses[i] = address;
+        batch.mTimes[i] = time;
+        batch.mRssi[i] = rssi;
+        batch.mCount = i + 1;
+        if (batch.mCount == BATCH_SIZE) {
+            submit();
+            mBatch = mFree.take();
+        }
+    }
+
+    private void submit() {
+        final Batch batch = mBatch;
+        mBatch = null;
+        final Listener listener = mListener;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (mError.get() == null) {
+                        batch.decode(listener, mDecoded);
+                    }
+                } catch (RuntimeException | Error e) {
+                    mError.compareAndSet(null, e);
+                } finally {
+                    batch.mCount = 0;
+                    mFree.add(batch);
+                }
+            }
+        });
+    }
+
+    private void ensure(long pos, int length) throws IOException {
+        if (pos < mWindowStart || pos + length > mWindowStart + mWindowSize) {
+            map(pos);
+        }
+    }
+
+    private void map(long pos) throws IOException {
+        mWindowStart = pos;
+        mWindowSize = (int) Math.min(WINDOW_SIZE, mSize - pos);
+        mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, pos, mWindowSize);
+    }
+
+    static String getMac(long address) {
+        char[] mac = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (address >>> (40 - i * 8)) & 0xFF;
+            mac[i * 3] = Character.toUpperCase(Character.forDigit(b >> 4, 16));
+            mac[i * 3 + 1] = Character.toUpperCase(Character.forDigit(b & 0xF, 16));
+            if (i < 5) {
+                mac[i * 3 + 2] = ':';
+            }
+        }
+        return new String(mac);
+    }
+
+    /**
+     * Name Android would report, only names that select a decoder are resolved. Without a local name,
+     * a registered service UUID selects the service decoder; PLUS and PRO in factory mode without a local
+     * name fall back to the legacy decoder and are not decoded.
+     */
+    private static String getName(byte[] record) {
+        if (AdvertisingData.hasLocalName(record, AtmotubeConstants.ATMOTEST_NAME_PLUS_PRO)) {
+            return AtmotubeConstants.ATMOTEST_NAME_PLUS_PRO;
+        } else if (AdvertisingData.hasLocalName(record, AtmotubeConstants.ATMOTUBE_NAME)
+                || AtmotubeDecoders.findServiceDecoder(record) != null) {
+            return AtmotubeConstants.ATMOTUBE_NAME;
+        }
+        return null;
+    }
+
+    private static class Batch {
+        private int mCount;
+        private final long[] mAddresses = new long[BATCH_SIZE];
+        private final long[] mTimes = new long[BATCH_SIZE];
+        private final int[] mRssi = new int[BATCH_SIZE];
+        private final byte[][] mRecords = new byte[BATCH_SIZE][];
+        private final AtmotubeData mData = new AtmotubeData();
+
+        private void decode(Listener listener, AtomicLong decoded) {
+            int count = 0;
+            for (int i = 0; i < mCount; i++) {
+                byte[] record = mRecords[i];
+                if (!AtmotubeDecoders.isCandidate(record)) {
+                    continue;
+                }
+                String mac = getMac(mAddresses[i]);
+                if (AtmotubeDecoders.decode(getName(record), mac, record, mRssi[i], mData) == AtmotubeDecoder.DECODE_OK) {
+                    mData.setTime(mTimes[i] / 1000);
+                    listener.onReading(mData);
+                    count++;
+                }
+            }
+            decoded.addAndGet(count);
+        }
+    }
+}
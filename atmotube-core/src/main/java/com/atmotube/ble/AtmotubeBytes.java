@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Big-endian field readers for Atmotube packets
+ * <p>
+ * All readers work directly on the packet bytes and do not allocate. Out of range offsets
+ * throw {@link ArrayIndexOutOfBoundsException} exactly like plain array access does.
+ */
+public final class AtmotubeBytes {
+
+    private static final char[] HEX_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    // firmware version strings are shared between packets, see getFwVersion
+    private static final int FW_CACHE_SIZE = 64;
+    private static final FwEntry[] FW_CACHE = new FwEntry[FW_CACHE_SIZE];
+
+    private AtmotubeBytes() {
+    }
+
+    /**
+     * Read unsigned byte
+     *
+     * @param b   packet bytes
+     * @param off field offset
+     * @return value 0 to 255
+     */
+    public static int uint8(byte[] b, int off) {
+        return b[off] & 0xFF;
+    }
+
+    /**
+     * Read big-endian unsigned 16-bit value
+     *
+     * @param b   packet bytes
+     * @param off field offset
+     * @return value 0 to 65535
+     */
+    public static int uint16(byte[] b, int off) {
+        return (b[off] & 0xFF) << 8 | (b[off + 1] & 0xFF);
+    }
+
+    /**
+     * Read big-endian unsigned 24-bit value
+     *
+     * @param b   packet bytes
+     * @param off field offset
+     * @return value 0 to 0xFFFFFF
+     */
+    public static int uint24(byte[] b, int off) {
+        return (b[off] & 0xFF) << 16 | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF);
+    }
+
+    /**
+     * Read big-endian 32-bit value
+     *
+     * @param b   packet bytes
+     * @param off field offset
+     * @return raw 32 bits, negative if the highest bit is set
+     */
+    public static int int32(byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * Read big-endian value of 1 to 4 bytes
+     *
+     * @param b   packet bytes
+     * @param off field offset
+     * @param len field length
+     * @return value, negative for 4 bytes with the highest bit set
+     * @throws IllegalArgumentException if length is not 1 to 4
+     */
+    public static int uint(byte[] b, int off, int len) {
+        if (len < 1 || len > 4) {
+            throw new IllegalArgumentException("Invalid field length " + len);
+        }
+        int value = 0;
+        for (int i = 0; i < len; i++) {
+            value = value << 8 | (b[off + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Read big-endian unsigned 16-bit value at absolute buffer position
+     *
+     * @param b   packet buffer
+     * @param off field offset
+     * @return value 0 to 65535
+     */
+    public static int uint16(ByteBuffer b, int off) {
+        return (b.get(off) & 0xFF) << 8 | (b.get(off + 1) & 0xFF);
+    }
+
+    /**
+     * Read big-endian 32-bit value at absolute buffer position
+     *
+     * @param b   packet buffer
+     * @param off field offset
+     * @return raw 32 bits, negative if the highest bit is set
+     */
+    public static int int32(ByteBuffer b, int off) {
+        return (b.get(off) & 0xFF) << 24 | (b.get(off + 1) & 0xFF) << 16 | (b.get(off + 2) & 0xFF) << 8 | (b.get(off + 3) & 0xFF);
+    }
+
+    /**
+     * Get hex nibble of packet bytes, nibble 0 is the high half of the first byte
+     *
+     * @param b      packet bytes
+     * @param nibble nibble index
+     * @return value 0 to 15
+     */
+    public static int nibble(byte[] b, int nibble) {
+        int v = b[nibble >> 1];
+        return (nibble & 1) == 0 ? (v >> 4) & 0xF : v & 0xF;
+    }
+
+    /**
+     * Find first run of 'f' hex digits in the hex form of packet bytes
+     * <p>
+     * Same result as {@code toHexString(b).indexOf("fff...", fromNibble)} without building the string
+     *
+     * @param b          packet bytes
+     * @param fromNibble start nibble index
+     * @param count      run length in nibbles
+     * @return nibble index of the run start or -1
+     */
+    public static int indexOfNibbleRun(byte[] b, int fromNibble, int count) {
+        int run = 0;
+        for (int i = Math.max(fromNibble, 0); i < b.length * 2; i++) {
+            if (nibble(b, i) == 0xF) {
+                if (++run == count) {
+                    return i - count + 1;
+                }
+            } else {
+                run = 0;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get firmware version string for 3 bytes at offset (e.g. "740105")
+     * <p>
+     * Only a handful of firmware versions exist in a fleet, so the strings are cached and
+     * shared between packets.
+     *
+     * @param b   packet bytes
+     * @param off field offset
+     * @return lowercase hex firmware version
+     */
+    public static String getFwVersion(byte[] b, int off) {
+        int fw = uint24(b, off);
+        int slot = (fw ^ (fw >>> 8) ^ (fw >>> 16)) & (FW_CACHE_SIZE - 1);
+        FwEntry entry = FW_CACHE[slot];
+        if (entry != null && entry.mFw == fw) {
+            return entry.mStr;
+        }
+        entry = new FwEntry(fw, toHexString(b, off, 3));
+        FW_CACHE[slot] = entry;
+        return entry.mStr;
+    }
+
+    /**
+     * Prints bytes array to hex string
+     *
+     * @param b bytes array
+     * @return hex string
+     */
+    public static String toHexString(byte[] b) {
+        return toHexString(b, 0, b.length);
+    }
+
+    /**
+     * Prints part of bytes array to hex string
+     *
+     * @param b   bytes array
+     * @param off first byte
+     * @param len bytes count
+     * @return hex string
+     */
+    public static String toHexString(byte[] b, int off, int len) {
+        char[] chars = new char[len * 2];
+        for (int i = 0; i < len; i++) {
+            byte aB = b[off + i];
+            // look up high nibble char
+            chars[i * 2] = HEX_CHARS[(aB & 0xf0) >>> 4];
+            // look up low nibble char
+            chars[i * 2 + 1] = HEX_CHARS[aB & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse hex string to bytes array
+     *
+     * @param s hex string, lowercase or uppercase
+     * @return bytes array
+     */
+    public static byte[] fromHexString(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) (Character.digit(s.charAt(i * 2), 16) << 4 | Character.digit(s.charAt(i * 2 + 1), 16));
+        }
+        return b;
+    }
+
+    private static final class FwEntry {
+        final int mFw;
+        final String mStr;
+
+        FwEntry(int fw, String str) {
+            mFw = fw;
+            mStr = str;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader for advertisements written by {@link AtmotubeCaptureWriter}
+ */
+public class AtmotubeCaptureReader implements Closeable {
+
+    private final DataInputStream mIn;
+    private long mTime;
+    private String mMac;
+    private String mName;
+    private int mRssi;
+    private byte[] mRecord;
+
+    /**
+     * Read stream header
+     *
+     * @param in input, buffered input is recommended
+     * @throws IOException if stream is not an Atmotube capture
+     */
+    public AtmotubeCaptureReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(in);
+        if (mIn.readInt() != AtmotubeCaptureWriter.MAGIC) {
+            throw new IOException("Not an Atmotube capture stream");
+        }
+    }
+
+    /**
+     * Read next advertisement, values are available with getters
+     *
+     * @return false at the end of stream
+     * @throws EOFException if the stream ends inside an advertisement
+     */
+    public boolean next() throws IOException {
+        int first = mIn.read();
+        if (first < 0) {
+            return false;
+        }
+        // time high byte was read to detect the end
+        long time = (long) first << 56;
+        for (int i = 6; i >= 0; i--) {
+            time |= (long) mIn.readUnsignedByte() << (i * 8);
+        }
+        mTime = time;
+        mMac = mIn.readUTF();
+        mName = mIn.readBoolean() ? mIn.readUTF() : null;
+        mRssi = mIn.readShort();
+        mRecord = new byte[mIn.readUnsignedShort()];
+        mIn.readFully(mRecord);
+        return true;
+    }
+
+    /**
+     * @return receive time in milliseconds
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    public String getMac() {
+        return mMac;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getRssi() {
+        return mRssi;
+    }
+
+    /**
+     * @return raw scan record, a new array for every advertisement
+     */
+    public byte[] getRecord() {
+        return mRecord;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Recorder of raw advertisements for {@link AtmotubeReplay}, read back with {@link AtmotubeCaptureReader}
+ * <p>
+ * Every advertisement is stored as receive time in milliseconds, MAC address, device name, RSSI and raw
+ * scan record. Readings decoded earlier can be converted with {@link #write(AtmotubeData)} if they kept raw data.
+ */
+public class AtmotubeCaptureWriter implements Closeable {
+
+    static final int MAGIC = 0x41544331; // "ATC1"
+
+    private final DataOutputStream mOut;
+
+    /**
+     * Write stream header
+     *
+     * @param out output, buffered output is recommended
+     */
+    public AtmotubeCaptureWriter(OutputStream out) throws IOException {
+        mOut = new DataOutputStream(out);
+        mOut.writeInt(MAGIC);
+    }
+
+    /**
+     * Write advertisement
+     *
+     * @param timeMillis receive time in milliseconds
+     * @param mac        device MAC address
+     * @param name       device name or null
+     * @param rssi       RSSI
+     * @param record     raw scan record bytes
+     */
+    public void write(long timeMillis, String mac, String name, int rssi, byte[] record) throws IOException {
+        if (record.length > 0xFFFF) {
+            throw new IllegalArgumentException("Record is too long: " + record.length);
+        }
+        mOut.writeLong(timeMillis);
+        mOut.writeUTF(mac);
+        mOut.writeBoolean(name != null);
+        if (name != null) {
+            mOut.writeUTF(name);
+        }
+        mOut.writeShort(rssi);
+        mOut.writeShort(record.length);
+        mOut.write(record);
+    }
+
+    /**
+     * Write advertisement of a decoded reading, time has second resolution
+     *
+     * @param data reading with raw data in any raw mode
+     * @return false if reading has no raw data or MAC address
+     */
+    public boolean write(AtmotubeData data) throws IOException {
+        byte[] record = data.getRawBytes();
+        if (record == null) {
+            String raw = data.getRaw();
+            if (raw == null) {
+                return false;
+            }
+            record = AtmotubeBytes.fromHexString(raw);
+        }
+        if (data.getMac() == null) {
+            return false;
+        }
+        write(data.getTime() * 1000, data.getMac(), data.getName(), data.getRssi(), record);
+        return true;
+    }
+
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOut.close();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.UUID;
+
+/**
+ * Decoding of Atmotube GATT characteristic values in connected mode
+ * <p>
+ * Every characteristic updates only its own fields of the target holder, so one holder per connected
+ * device collects all notifications. Values are read with shifts and nothing is allocated.
+ * <p>
+ * Value lengths are the ones listed in {@link AtmotubeConstants}, a value of any other length is rejected.
+ * Layouts (big-endian, as in advertisements):
+ * <pre>
+ * VOC V2          2 bytes  VOC ppm * 100
+ * humidity V2     1 byte   humidity %
+ * temperature V2  1 byte   signed temperature C
+ * status V2       1 byte   info byte
+ * VOC V3/V4       4 bytes  VOC ppb (first 2 bytes), the rest is not decoded
+ * BME280 V3/V4    6 bytes  humidity %, signed temperature C, pressure mbar * 100 (4 bytes)
+ * status V3/V4    2 bytes  info byte, battery %
+ * PM V4           8 bytes  PM1, PM2.5, PM10 ug/m3 (2 bytes each), the rest is not decoded
+ *                 12 bytes PM1, PM2.5, PM10 ug/m3 * 100 (3 bytes each, as read by the former
+ *                          getPMFromBytesFloat), the rest is not decoded
+ * </pre>
+ */
+public final class AtmotubeCharacteristics {
+
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_VOC_V2 = 1;
+    public static final int TYPE_HUMIDITY_V2 = 2;
+    public static final int TYPE_TEMPERATURE_V2 = 3;
+    public static final int TYPE_STATUS_V2 = 4;
+    public static final int TYPE_VOC_V3 = 5;
+    public static final int TYPE_BME280_V3 = 6;
+    public static final int TYPE_STATUS_V3 = 7;
+    public static final int TYPE_VOC_V4 = 8;
+    public static final int TYPE_BME280_V4 = 9;
+    public static final int TYPE_STATUS_V4 = 10;
+    public static final int TYPE_PM_V4 = 11;
+
+    // indexed by type
+    private static final UUID[] UUIDS = {
+            null,
+            AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V2,
+            AtmotubeConstants.HUMIDITY_CHARACTERISTIC_UUID_V2,
+            AtmotubeConstants.TEMPERATURE_CHARACTERISTIC_UUID_V2,
+            AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V2,
+            AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V3,
+            AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V3,
+            AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V3,
+            AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4,
+            AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V4,
+            AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V4,
+            AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4
+    };
+
+    private static final int[] LENGTHS = {0, 2, 1, 1, 1, 4, 6, 2, 4, 6, 2, 8};
+    private static final int PM_FLOAT_LENGTH = 12;
+
+    private static final long[] MSB = new long[UUIDS.length];
+    private static final long[] LSB = new long[UUIDS.length];
+
+    static {
+        for (int i = 1; i < UUIDS.length; i++) {
+            MSB[i] = UUIDS[i].getMostSignificantBits();
+            LSB[i] = UUIDS[i].getLeastSignificantBits();
+        }
+    }
+
+    private AtmotubeCharacteristics() {
+    }
+
+    /**
+     * Get characteristic type, callers may keep it per characteristic and use {@link #decode(int, byte[], AtmotubeData)}
+     *
+     * @param characteristic characteristic UUID
+     * @return one of TYPE_* constants
+     */
+    public static int getType(UUID characteristic) {
+        if (characteristic == null) {
+            return TYPE_UNKNOWN;
+        }
+        long msb = characteristic.getMostSignificantBits();
+        long lsb = characteristic.getLeastSignificantBits();
+        for (int i = 1; i < MSB.length; i++) {
+            if (MSB[i] == msb && LSB[i] == lsb) {
+                return i;
+            }
+        }
+        return TYPE_UNKNOWN;
+    }
+
+    /**
+     * @param type one of TYPE_* constants
+     * @return value length in bytes, PM V4 values may also be 12 bytes long
+     */
+    public static int getLength(int type) {
+        return type > TYPE_UNKNOWN && type < LENGTHS.length ? LENGTHS[type] : 0;
+    }
+
+    /**
+     * Decode characteristic value into holder
+     *
+     * @see #decode(int, byte[], AtmotubeData)
+     */
+    public static int decode(UUID characteristic, byte[] value, AtmotubeData target) {
+        return decode(getType(characteristic), value, target);
+    }
+
+    /**
+     * Decode characteristic value into holder
+     * <p>
+     * Only fields of the characteristic and the time are updated. Hardware version is set if it is unknown.
+     * Info byte layout depends on firmware version, so the holder should already have it for status values.
+     *
+     * @param type   one of TYPE_* constants
+     * @param value  characteristic value
+     * @param target holder to update
+     * @return {@link AtmotubeDecoder#DECODE_OK}, {@link AtmotubeDecoder#DECODE_NO_DATA} for null value,
+     * {@link AtmotubeDecoder#DECODE_NOT_ATMOTUBE} for unknown type or {@link AtmotubeDecoder#DECODE_CORRUPTED}
+     * if value length does not match the characteristic or value is out of range, the holder is not changed then
+     */
+    public static int decode(int type, byte[] value, AtmotubeData target) {
+        if (value == null) {
+            return AtmotubeDecoder.DECODE_NO_DATA;
+        }
+        int length = getLength(type);
+        if (length == 0) {
+            return AtmotubeDecoder.DECODE_NOT_ATMOTUBE;
+        }
+        if (value.length != length && !(type == TYPE_PM_V4 && value.length == PM_FLOAT_LENGTH)) {
+            return AtmotubeDecoder.DECODE_CORRUPTED;
+        }
+        int hwVer;
+        switch (type) {
+            case TYPE_VOC_V2:
+                target.mVOC = (float) AtmotubeBytes.uint16(value, 0) / 100;
+                hwVer = AtmotubeData.HW_VER_2_0;
+                break;
+            case TYPE_HUMIDITY_V2:
+                target.mHumidity = AtmotubeDecoders.getHumidity(value[0]);
+                hwVer = AtmotubeData.HW_VER_2_0;
+                break;
+            case TYPE_TEMPERATURE_V2:
+                target.mTemperature = AtmotubeDecoders.getTemperature(value[0]);
+                hwVer = AtmotubeData.HW_VER_2_0;
+                break;
+            case TYPE_STATUS_V2:
+                target.setInfo((int) value[0]);
+                hwVer = AtmotubeData.HW_VER_2_0;
+                break;
+            case TYPE_VOC_V3:
+            case TYPE_VOC_V4:
+                target.mVOC = (float) AtmotubeBytes.uint16(value, 0) / 1000;
+                hwVer = type == TYPE_VOC_V3 ? AtmotubeData.HW_VER_PLUS : AtmotubeData.HW_VER_PRO;
+                break;
+            case TYPE_BME280_V3:
+            case TYPE_BME280_V4:
+                int p = AtmotubeBytes.int32(value, 2);
+                if (p < 0) {
+                    // out of int range
+                    return AtmotubeDecoder.DECODE_CORRUPTED;
+                }
+                target.mHumidity = AtmotubeDecoders.getHumidity(value[0]);
+                target.mTemperature = AtmotubeDecoders.getTemperature(value[1]);
+                target.mPressure = (float) p / 100;
+                hwVer = type == TYPE_BME280_V3 ? AtmotubeData.HW_VER_PLUS : AtmotubeData.HW_VER_PRO;
+                break;
+            case TYPE_STATUS_V3:
+            case TYPE_STATUS_V4:
+                target.setInfo((int) value[0]);
+                target.mBatteryPercentage = value[1];
+                hwVer = type == TYPE_STATUS_V3 ? AtmotubeData.HW_VER_PLUS : AtmotubeData.HW_VER_PRO;
+                break;
+            default:
+                if (value.length == PM_FLOAT_LENGTH) {
+                    target.setPm(AtmotubeBytes.uint24(value, 0) / 100f, AtmotubeBytes.uint24(value, 3) / 100f,
+                            AtmotubeBytes.uint24(value, 6) / 100f);
+                } else {
+                    target.setPm(AtmotubeBytes.uint16(value, 0), AtmotubeBytes.uint16(value, 2),
+                            AtmotubeBytes.uint16(value, 4));
+                }
+                hwVer = AtmotubeData.HW_VER_PRO;
+                break;
+        }
+        if (target.mHwVer == AtmotubeData.HW_VER_UNKNOWN) {
+            target.mHwVer = hwVer;
+        }
+        target.mTime = System.currentTimeMillis() / 1000;
+        return AtmotubeDecoder.DECODE_OK;
+    }
+}
@@ -27,6 +27,11 @@ public interface AtmotubeConstants {
     UUID STATUS_CHARACTERISTIC_UUID_V4 = UUID.fromString("db450004-8e9a-4818-add7-6ed94a328ab4");      // 	2 bytes
     UUID PM_CHARACTERISTIC_UUID_V4 = UUID.fromString("db450005-8e9a-4818-add7-6ed94a328ab4");          // 	8 bytes
 
+    // advertised device names
+    String ATMOTUBE_NAME = "atmotube";
+    String ATMOTEST_NAME = "ATMOTEST";              // Atmotube 1.0/2.0 factory mode
+    String ATMOTEST_NAME_PLUS_PRO = "atmotest3";    // Atmotube PLUS/PRO factory mode
+
     String DFU_NAME_1_0 = "DfuMode";
     String DFU_NAME_2_0 = "DfuAtmo";
     String DFU_NAME_PLUS = "DfuAtmoPlus";
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Atmotube packet information without Android dependencies
+ * <p>
+ * Decoders fill this class, UpdateDataHolder of the Android library adds Parcelable and JSON support on top of it.
+ * <p>
+ * The Serializable form is not compatible with UpdateDataHolder of library 0.5.3 and earlier,
+ * which kept all fields itself and had no fixed serialVersionUID, holders serialized by those versions
+ * can not be read. Use {@link #writeTo(DataOutput)} for stored readings, its form is versioned.
+ */
+public class AtmotubeData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int HW_VER_UNKNOWN = 0;
+    public static final int HW_VER_1_0 = 1;
+    public static final int HW_VER_2_0 = 2;
+    public static final int HW_VER_PLUS = 3;
+    public static final int HW_VER_PRO = 4;
+
+    public static final int UNKNOWN = -1000;
+    public static final int PM_OFF = 0xFFFF;
+    public static final float PM_OFF_FLOAT = 167772.15f; // 0xFFFFFF
+
+    // raw packet storage modes for Parcel and Serializable forms
+    public static final int RAW_MODE_STRING = 0;
+    public static final int RAW_MODE_BYTES = 1;
+    public static final int RAW_MODE_NONE = 2;
+
+    // binary form version and optional field presence bits, see writeTo
+    public static final int FORMAT_VERSION = 1;
+    private static final int HAS_NAME = 0x01;
+    private static final int HAS_FW_VER = 0x02;
+    private static final int HAS_MAC = 0x04;
+    private static final int HAS_INFO = 0x08;
+    private static final int HAS_LOCATION = 0x10;
+    private static final int HAS_PM = 0x20;
+    private static final int HAS_DEVICE_CRC = 0x40;
+    private static final int HAS_RAW = 0x80;
+
+    protected float mVOC = UNKNOWN;
+    protected float mTemperature = UNKNOWN;
+    protected float mHumidity = UNKNOWN;
+    protected float mPressure = UNKNOWN;
+
+    protected long mTime;
+    protected double mLat = UNKNOWN;
+    protected double mLon = UNKNOWN;
+
+    protected int mADC;
+    protected String mFwVer;
+    // hex form of the packet, built from mRawBytes on demand
+    protected transient String mRaw;
+    protected transient byte[] mRawBytes;
+    // how this holder writes raw data, a write option and not a part of the reading
+    private transient int mRawMode = RAW_MODE_STRING;
+    protected String mName;
+    protected int mHwVer;
+    protected String mMac;
+    protected int mRssi;
+    protected int mErrorCode;
+    protected int mBatteryVoltage;
+    protected int mBatteryPercentage = UNKNOWN;
+
+    protected float mPm1 = UNKNOWN;
+    protected float mPm25 = UNKNOWN;
+    protected float mPm10 = UNKNOWN;
+
+    protected int mDeviceCRC = UNKNOWN;
+
+    protected AtmotubeInfo mInfo;
+
+    public AtmotubeData() {
+    }
+
+    public boolean isValid() {
+        return mVOC != UNKNOWN;
+    }
+
+    public boolean isFullPacket() {
+        // on some devices packet data may be incomplete
+        return mFwVer != null && mFwVer.length() > 0;
+    }
+
+    public boolean isValidAllData() {
+        boolean isGeneralDataOK = mVOC != UNKNOWN && mTemperature != UNKNOWN && mHumidity != UNKNOWN && mInfo != null;
+        if (isHw3()) {
+            return isGeneralDataOK && mPressure != UNKNOWN;
+        } else if (isHw4()) {
+            return isGeneralDataOK && (!isPmIsOn() || (mPressure != UNKNOWN && mPm1 != UNKNOWN && mPm10 != UNKNOWN && mPm25 != UNKNOWN));
+        }
+        return isGeneralDataOK;
+    }
+
+    /**
+     * Fill holder with decoded packet values, same as the full UpdateDataHolder constructor does
+     * <p>
+     * Raw packet bytes are referenced, not copied. Hex form is built only on {@link #getRaw()}.
+     */
+    protected void set(String name,
+                       long time,
+                       float voc,
+                       float temperature,
+                       float humidity,
+                       float pressure,
+                       Integer info,
+                       int adc,
+                       String fwVer,
+                       byte[] raw,
+                       int hwVer,
+                       String mac,
+                       int rssi,
+                       int batteryVoltage,
+                       int batteryPercentage,
+                       int errorCode) {
+        mName = name;
+        mTime = time;
+        mVOC = voc;
+        mTemperature = temperature;
+        mHumidity = humidity;
+        mPressure = pressure;
+        mADC = adc;
+        mFwVer = fwVer;
+        mRaw = null;
+        mRawBytes = raw;
+        mHwVer = hwVer;
+        mMac = mac;
+        mRssi = rssi;
+        mBatteryVoltage = batteryVoltage;
+        mErrorCode = errorCode;
+        setInfo(info);
+        if (mInfo != null && mInfo.mHasError) {
+            mBatteryVoltage = 0;
+            mErrorCode = mBatteryVoltage;
+        }
+        if (isHw3() || isHw4()) {
+            mBatteryPercentage = batteryPercentage;
+        }
+    }
+
+    /**
+     * Copy all values from another holder, raw packet data is shared
+     *
+     * @param other holder to copy
+     */
+    public void copyFrom(AtmotubeData other) {
+        mRawMode = other.mRawMode;
+        mVOC = other.mVOC;
+        mTemperature = other.mTemperature;
+        mHumidity = other.mHumidity;
+        mPressure = other.mPressure;
+        mTime = other.mTime;
+        mLat = other.mLat;
+        mLon = other.mLon;
+        mADC = other.mADC;
+        mFwVer = other.mFwVer;
+        mRaw = other.mRaw;
+        mRawBytes = other.mRawBytes;
+        mName = other.mName;
+        mHwVer = other.mHwVer;
+        mMac = other.mMac;
+        mRssi = other.mRssi;
+        mErrorCode = other.mErrorCode;
+        mBatteryVoltage = other.mBatteryVoltage;
+        mBatteryPercentage = other.mBatteryPercentage;
+        mPm1 = other.mPm1;
+        mPm25 = other.mPm25;
+        mPm10 = other.mPm10;
+        mDeviceCRC = other.mDeviceCRC;
+        mInfo = other.mInfo;
+    }
+
+    /**
+     * Reset holder to the state of a newly created empty holder, so it can be reused as decode target
+     */
+    public void reset() {
+        mVOC = UNKNOWN;
+        mTemperature = UNKNOWN;
+        mHumidity = UNKNOWN;
+        mPressure = UNKNOWN;
+        mTime = 0;
+        mLat = UNKNOWN;
+        mLon = UNKNOWN;
+        mADC = 0;
+        mFwVer = null;
+        mRaw = null;
+        mRawBytes = null;
+        mName = null;
+        mHwVer = HW_VER_UNKNOWN;
+        mMac = null;
+        mRssi = 0;
+        mErrorCode = 0;
+        mBatteryVoltage = 0;
+        mBatteryPercentage = UNKNOWN;
+        mPm1 = UNKNOWN;
+        mPm25 = UNKNOWN;
+        mPm10 = UNKNOWN;
+        mDeviceCRC = UNKNOWN;
+        mInfo = null;
+    }
+
+    public void setInfo(Integer info) {
+        if (info != null) {
+            mInfo = AtmotubeInfo.valueOf(info, mFwVer);
+        }
+    }
+
+    public void setVOC(float VOC) {
+        mVOC = VOC;
+        mTime = System.currentTimeMillis() / 1000;
+    }
+
+    public void setTemperature(float temperature) {
+        mTemperature = temperature;
+        mTime = System.currentTimeMillis() / 1000;
+    }
+
+    public void setHumidity(float humidity) {
+        mHumidity = humidity;
+        mTime = System.currentTimeMillis() / 1000;
+    }
+
+    public void updateData(AtmotubeData holder) {
+        if (holder != null) {
+            mTime = System.currentTimeMillis() / 1000;
+            if (holder.mVOC != UNKNOWN) {
+                mVOC = holder.mVOC;
+            }
+            if (holder.mHumidity != UNKNOWN) {
+                mHumidity = holder.mHumidity;
+            }
+            if (holder.mTemperature != UNKNOWN) {
+                mTemperature = holder.mTemperature;
+            }
+            mLat = holder.mLat;
+            mLon = holder.mLon;
+            if (holder.mInfo != null) {
+                mInfo = holder.mInfo;
+            }
+        }
+    }
+
+    public String getFwVer() {
+        return mFwVer != null ? mFwVer.toUpperCase() : null;
+    }
+
+    public void setCurrentFwVersion(String fwVer) {
+        mFwVer = fwVer;
+    }
+
+    public boolean isActivated() {
+        return mInfo != null && mInfo.mIsActivated;
+    }
+
+    public boolean hasFwVer() {
+        return mFwVer == null || mFwVer.length() == 0;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public boolean isCharging() {
+        return mInfo != null && mInfo.mIsCharging;
+    }
+
+    public boolean isChargingTimeout() {
+        return mInfo != null && mInfo.mIsChargingTimeout;
+    }
+
+    public boolean isCalibrating() {
+        return mInfo != null && mInfo.mIsCalibrating;
+    }
+
+    public int getBattery() {
+        if (mBatteryPercentage != UNKNOWN) {
+            return mBatteryPercentage;
+        }
+        return mInfo != null ? mInfo.mBattery : 0;
+    }
+
+    public float getVOC() {
+        return mVOC;
+    }
+
+    public float getTemperature() {
+        return mTemperature;
+    }
+
+    public float getHumidity() {
+        return mHumidity;
+    }
+
+    public float getPressure() {
+        return mPressure;
+    }
+
+    public int getADC() {
+        return mADC;
+    }
+
+    public Integer getInfoByte() {
+        return mInfo != null ? mInfo.getInfoByte() : null;
+    }
+
+    public String getMac() {
+        return mMac;
+    }
+
+    public int getErrorCode() {
+        return mErrorCode;
+    }
+
+    public int getBatteryVoltage() {
+        return mBatteryVoltage;
+    }
+
+    public float getBatteryVoltageFloat() {
+        return (float) mBatteryVoltage / 100;
+    }
+
+    public double getLat() {
+        return mLat;
+    }
+
+    public void setLat(double lat) {
+        mLat = lat;
+    }
+
+    public double getLon() {
+        return mLon;
+    }
+
+    public void setLon(double lon) {
+        mLon = lon;
+    }
+
+    public void setPressure(float mPressure) {
+        this.mPressure = mPressure;
+    }
+
+    public void setTime(long mTime) {
+        this.mTime = mTime;
+    }
+
+    public void setMac(String mMac) {
+        this.mMac = mMac;
+    }
+
+    public void setADC(int ADC) {
+        mADC = ADC;
+    }
+
+    public void setFwVer(String fwVer) {
+        mFwVer = fwVer;
+    }
+
+    /**
+     * Get raw packet data in hex form
+     *
+     * @return hex string or null if raw data is not available
+     */
+    public String getRaw() {
+        if (mRaw == null && mRawBytes != null) {
+            mRaw = AtmotubeBytes.toHexString(mRawBytes);
+        }
+        return mRaw;
+    }
+
+    public void setRaw(String raw) {
+        mRaw = raw;
+        mRawBytes = null;
+    }
+
+    /**
+     * Get raw packet data
+     *
+     * @return packet bytes (not a copy) or null if raw data is not available
+     */
+    public byte[] getRawBytes() {
+        if (mRawBytes == null && mRaw != null) {
+            mRawBytes = AtmotubeBytes.fromHexString(mRaw);
+        }
+        return mRawBytes;
+    }
+
+    public void setRawBytes(byte[] raw) {
+        mRawBytes = raw;
+        mRaw = null;
+    }
+
+    /**
+     * Set how this holder writes raw packet data to Parcel, Serializable and binary forms
+     * <p>
+     * The mode is kept by {@link #reset()} and copied by {@link #copyFrom(AtmotubeData)}, so it can be set once
+     * on a reused decode target. It is not written, readers get the mode from the form.
+     *
+     * @param mode {@link #RAW_MODE_STRING} (hex string, default), {@link #RAW_MODE_BYTES} or {@link #RAW_MODE_NONE} (dropped)
+     */
+    public void setRawMode(int mode) {
+        if (mode != RAW_MODE_STRING && mode != RAW_MODE_BYTES && mode != RAW_MODE_NONE) {
+            throw new IllegalArgumentException("Invalid raw mode " + mode);
+        }
+        mRawMode = mode;
+    }
+
+    public int getRawMode() {
+        return mRawMode;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int mode = mRawMode;
+        out.writeInt(mode);
+        if (mode == RAW_MODE_STRING) {
+            out.writeObject(getRaw());
+        } else if (mode == RAW_MODE_BYTES) {
+            out.writeObject(getRawBytes());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int mode = in.readInt();
+        if (mode == RAW_MODE_STRING) {
+            mRaw = (String) in.readObject();
+        } else if (mode == RAW_MODE_BYTES) {
+            mRawBytes = (byte[]) in.readObject();
+        }
+    }
+
+    /**
+     * Write holder in compact binary form, read back with {@link #readFrom(DataInput)}
+     * <p>
+     * The form starts with {@link #FORMAT_VERSION} and presence bits of optional values, absent
+     * values take no space. Raw packet data is written as bytes unless raw mode is
+     * {@link #RAW_MODE_NONE}. New library versions read all older versions of the form.
+     *
+     * @param out output
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        byte[] raw = mRawMode != RAW_MODE_NONE ? getRawBytes() : null;
+        if (raw != null && raw.length > 0xFFFF) {
+            throw new IOException("Raw data is too long: " + raw.length);
+        }
+        int flags = 0;
+        if (mName != null) {
+            flags |= HAS_NAME;
+        }
+        if (mFwVer != null) {
+            flags |= HAS_FW_VER;
+        }
+        if (mMac != null) {
+            flags |= HAS_MAC;
+        }
+        if (mInfo != null) {
+            flags |= HAS_INFO;
+        }
+        if (mLat != UNKNOWN || mLon != UNKNOWN) {
+            flags |= HAS_LOCATION;
+        }
+        if (mPm1 != UNKNOWN || mPm25 != UNKNOWN || mPm10 != UNKNOWN) {
+            flags |= HAS_PM;
+        }
+        if (mDeviceCRC != UNKNOWN) {
+            flags |= HAS_DEVICE_CRC;
+        }
+        if (raw != null) {
+            flags |= HAS_RAW;
+        }
+        out.writeByte(FORMAT_VERSION);
+        out.writeShort(flags);
+        out.writeLong(mTime);
+        out.writeFloat(mVOC);
+        out.writeFloat(mTemperature);
+        out.writeFloat(mHumidity);
+        out.writeFloat(mPressure);
+        out.writeInt(mADC);
+        out.writeByte(mHwVer);
+        out.writeShort(mRssi);
+        out.writeInt(mErrorCode);
+        out.writeInt(mBatteryVoltage);
+        out.writeInt(mBatteryPercentage);
+        if (mName != null) {
+            out.writeUTF(mName);
+        }
+        if (mFwVer != null) {
+            out.writeUTF(mFwVer);
+        }
+        if (mMac != null) {
+            out.writeUTF(mMac);
+        }
+        if (mInfo != null) {
+            out.writeInt(mInfo.getInfoByte());
+        }
+        if (mLat != UNKNOWN || mLon != UNKNOWN) {
+            out.writeDouble(mLat);
+            out.writeDouble(mLon);
+        }
+        if (mPm1 != UNKNOWN || mPm25 != UNKNOWN || mPm10 != UNKNOWN) {
+            out.writeFloat(mPm1);
+            out.writeFloat(mPm25);
+            out.writeFloat(mPm10);
+        }
+        if (mDeviceCRC != UNKNOWN) {
+            out.writeInt(mDeviceCRC);
+        }
+        if (raw != null) {
+            out.writeShort(raw.length);
+            out.write(raw);
+        }
+    }
+
+    /**
+     * Read holder written by {@link #writeTo(DataOutput)}, absent values are reset to defaults
+     *
+     * @param in input
+     * @throws IOException if the form is written by a newer library version
+     */
+    public void readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported AtmotubeData format version " + version);
+        }
+        reset();
+        int flags = in.readUnsignedShort();
+        mTime = in.readLong();
+        mVOC = in.readFloat();
+        mTemperature = in.readFloat();
+        mHumidity = in.readFloat();
+        mPressure = in.readFloat();
+        mADC = in.readInt();
+        mHwVer = in.readByte();
+        mRssi = in.readShort();
+        mErrorCode = in.readInt();
+        mBatteryVoltage = in.readInt();
+        mBatteryPercentage = in.readInt();
+        if ((flags & HAS_NAME) != 0) {
+            mName = in.readUTF();
+        }
+        if ((flags & HAS_FW_VER) != 0) {
+            mFwVer = in.readUTF();
+        }
+        if ((flags & HAS_MAC) != 0) {
+            mMac = in.readUTF();
+        }
+        if ((flags & HAS_INFO) != 0) {
+            mInfo = AtmotubeInfo.valueOf(in.readInt(), mFwVer);
+        }
+        if ((flags & HAS_LOCATION) != 0) {
+            mLat = in.readDouble();
+            mLon = in.readDouble();
+        }
+        if ((flags & HAS_PM) != 0) {
+            mPm1 = in.readFloat();
+            mPm25 = in.readFloat();
+            mPm10 = in.readFloat();
+        }
+        if ((flags & HAS_DEVICE_CRC) != 0) {
+            mDeviceCRC = in.readInt();
+        }
+        if ((flags & HAS_RAW) != 0) {
+            byte[] raw = new byte[in.readUnsignedShort()];
+            in.readFully(raw);
+            mRawBytes = raw;
+        }
+    }
+
+    public void setHwVer(int hwVer) {
+        mHwVer = hwVer;
+    }
+
+    public int getRssi() {
+        return mRssi;
+    }
+
+    public void setRssi(int rssi) {
+        mRssi = rssi;
+    }
+
+    public void setErrorCode(int errorCode) {
+        mErrorCode = errorCode;
+    }
+
+    public void setBatteryVoltage(int batteryVoltage) {
+        mBatteryVoltage = batteryVoltage;
+    }
+
+    public void setBatteryPercentage(int batteryPercentage) {
+        mBatteryPercentage = batteryPercentage;
+    }
+
+    public AtmotubeInfo getInfo() {
+        return mInfo;
+    }
+
+    public void setInfo(AtmotubeInfo info) {
+        mInfo = info;
+    }
+
+    public int getHwVer() {
+        return mHwVer;
+    }
+
+    public boolean isHw2() {
+        return mHwVer == HW_VER_2_0;
+    }
+
+    public boolean isHw3() {
+        return mHwVer == HW_VER_PLUS;
+    }
+
+    public boolean isHw4() {
+        return mHwVer == HW_VER_PRO;
+    }
+
+    public void setName(String name) {
+        mName = name;
+    }
+
+    public void setPm(int pm1, int pm25, int pm10) {
+        if (pm1 == PM_OFF || pm25 == PM_OFF || pm10 == PM_OFF) {
+            mPm1 = UNKNOWN;
+            mPm25 = UNKNOWN;
+            mPm10 = UNKNOWN;
+            return;
+        }
+        mPm1 = pm1;
+        mPm25 = pm25;
+        mPm10 = pm10;
+    }
+
+    public void setPm(float pm1, float pm25, float pm10) {
+        if (pm1 == PM_OFF_FLOAT || pm25 == PM_OFF_FLOAT || pm10 == PM_OFF_FLOAT) {
+            mPm1 = UNKNOWN;
+            mPm25 = UNKNOWN;
+            mPm10 = UNKNOWN;
+            return;
+        }
+        mPm1 = pm1;
+        mPm25 = pm25;
+        mPm10 = pm10;
+    }
+
+    public float getPm1() {
+        return mPm1;
+    }
+
+    public float getPm25() {
+        return mPm25;
+    }
+
+    public float getPm10() {
+        return mPm10;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getDeviceCRC() {
+        return mDeviceCRC;
+    }
+
+    public void setDeviceCRC(int deviceCRC) {
+        mDeviceCRC = deviceCRC;
+    }
+
+    public boolean isBonded() {
+        return mInfo != null && mInfo.mIsBonded;
+    }
+
+    public boolean isPmIsOn() {
+        return mInfo != null && mInfo.mIsPmOn;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atmotube.ble;
+
+/**
+ * Decoder for one Atmotube packet layout
+ * <p>
+ * Decoders are registered per advertised service UUID in {@link AtmotubeDecoders}, so new hardware
+ * generations are added without changing the common decoding path.
+ */
+public interface AtmotubeDecoder {
+
+    int DECODE_OK = 0;
+    // scan result has no record, device name or address
+    int DECODE_NO_DATA = 1;
+    int DECODE_NOT_ATMOTUBE = 2;
+    int DECODE_CORRUPTED = 3;
+
+    /**
+     * Decode packet into holder
+     * <p>
+     * Holder is already reset by caller. Decoders may throw on truncated packets, the caller
+     * treats it as {@link #DECODE_CORRUPTED}.
+     *
+     * @param name   device name
+     * @param mac    device MAC address
+     * @param record raw scan record bytes
+     * @param rssi   rssi level
+     * @param target holder to fill
+     * @return {@link #DECODE_OK}, {@link #DECODE_NOT_ATMOTUBE} or {@link #DECODE_CORRUPTED}
+     */
+    int decode(String name, String mac, byte[] record, int rssi, AtmotubeData target);
+
+    /**
+     * Implemented by decoders of layouts with a device CRC, {@link AtmotubeDeduplicator} keys their
+     * records by the CRC and the measurement bytes instead of the whole record
+     */
+    interface DeviceCrcLayout {
+
+        /**
+         * @return offset of uint16 device CRC in scan record
+         */
+        int getDeviceCrcOffset();
+
+        /**
+         * @return measurement byte ranges in scan record as {@code from, to} pairs, {@code to} exclusive;
+         * the array is shared and must not be modified
+         */
+        int[] getMeasurementRanges();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atmotube.ble;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Atmotube packet decoding from raw advertising data and registry of decoders keyed by advertised service UUID
+ * <p>
+ * UUIDs are matched on their 64-bit halves, lookups are lock free and do not allocate.
+ * Atmotube PLUS and Atmotube PRO decoders are registered by default.
+ */
+public final class AtmotubeDecoders {
+
+    private static final AtmotubeDecoder LEGACY_DECODER = new AtmotubeLegacyDecoder();
+    private static final AtmotubeDecoder FACTORY_DECODER = new AtmotubeFactoryDecoder();
+
+    private static final Object LOCK = new Object();
+    private static volatile Entry[] sEntries = new Entry[0];
+
+    static {
+        register(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V3, new AtmotubePlusDecoder());
+        register(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4, new AtmotubeProDecoder());
+    }
+
+    private AtmotubeDecoders() {
+    }
+
+    /**
+     * Parse Atmotube packet data into existing holder
+     * <p>
+     * The holder is reset first. If the result is not {@link AtmotubeDecoder#DECODE_OK} the holder stays in reset state.
+     *
+     * @param name   device name, may be null if only raw advertising data is known (see {@link #getLocalName(byte[])})
+     * @param mac    device MAC address
+     * @param record raw scan record bytes
+     * @param rssi   rssi level
+     * @param target holder to fill
+     * @return {@link AtmotubeDecoder#DECODE_OK}, {@link AtmotubeDecoder#DECODE_NO_DATA},
+     * {@link AtmotubeDecoder#DECODE_NOT_ATMOTUBE} or {@link AtmotubeDecoder#DECODE_CORRUPTED}
+     */
+    public static int decode(String name, String mac, byte[] record, int rssi, AtmotubeData target) {
+        target.reset();
+        if (record == null) {
+            return AtmotubeDecoder.DECODE_NO_DATA;
+        }
+        try {
+            int result;
+            if (AtmotubeConstants.ATMOTEST_NAME_PLUS_PRO.equalsIgnoreCase(name)) {
+                result = FACTORY_DECODER.decode(name, mac, record, rssi, target);
+            } else {
+                AtmotubeDecoder decoder = null;
+                if (AtmotubeConstants.ATMOTUBE_NAME.equalsIgnoreCase(name)) {
+                    decoder = findServiceDecoder(record);
+                }
+                if (decoder == null) {
+                    // atmotube v1 or v2
+                    decoder = LEGACY_DECODER;
+                }
+                result = decoder.decode(name, mac, record, rssi, target);
+            }
+            if (result != AtmotubeDecoder.DECODE_OK) {
+                target.reset();
+            }
+            return result;
+        } catch (Exception ignore) {
+            // safeguard - ignore corrupted messages
+            target.reset();
+            return AtmotubeDecoder.DECODE_CORRUPTED;
+        }
+    }
+
+    /**
+     * Fast check if raw advertising data may come from Atmotube
+     * <p>
+     * Only raw bytes are inspected and nothing is allocated, so it is cheap enough to drop
+     * unrelated beacons before decoding. A false result means the record is not Atmotube;
+     * a true result still has to be decoded.
+     *
+     * @param record raw scan record bytes
+     * @return true if record has Atmotube service, name or identifier
+     */
+    public static boolean isCandidate(byte[] record) {
+        if (record == null) {
+            return false;
+        }
+        return findServiceDecoder(record) != null
+                || PacketSignature.getPacketVersion(record) != PacketSignature.ATMOTUBE_UNKNOWN
+                || AdvertisingData.hasLocalName(record, AtmotubeConstants.ATMOTUBE_NAME)
+                || AdvertisingData.hasLocalName(record, AtmotubeConstants.ATMOTEST_NAME_PLUS_PRO);
+    }
+
+    /**
+     * Get local name from raw advertising data
+     *
+     * @param record raw scan record bytes
+     * @return complete or short local name, null if not advertised
+     */
+    public static String getLocalName(byte[] record) {
+        return AdvertisingData.getLocalName(record);
+    }
+
+    /**
+     * Get all service UUIDs advertised by Atmotube devices: registered decoders and Atmotube 1.0/2.0 identifiers
+     *
+     * @return service UUIDs
+     */
+    public static List<UUID> getServiceUuids() {
+        List<UUID> uuids = new ArrayList<>();
+        for (Entry entry : sEntries) {
+            uuids.add(new UUID(entry.mMsb, entry.mLsb));
+        }
+        uuids.addAll(Arrays.asList(PacketSignature.getServiceUuids()));
+        return uuids;
+    }
+
+    /**
+     * Register decoder for service UUID, replaces decoder registered before for this UUID
+     *
+     * @param serviceUuid advertised service UUID
+     * @param decoder     packet decoder
+     */
+    public static void register(UUID serviceUuid, AtmotubeDecoder decoder) {
+        long msb = serviceUuid.getMostSignificantBits();
+        long lsb = serviceUuid.getLeastSignificantBits();
+        synchronized (LOCK) {
+            Entry[] entries = sEntries;
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].mMsb == msb && entries[i].mLsb == lsb) {
+                    Entry[] copy = entries.clone();
+                    copy[i] = new Entry(msb, lsb, decoder);
+                    sEntries = copy;
+                    return;
+                }
+            }
+            Entry[] copy = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, copy, 0, entries.length);
+            copy[entries.length] = new Entry(msb, lsb, decoder);
+            sEntries = copy;
+        }
+    }
+
+    /**
+     * Get decoder for service UUID
+     *
+     * @param msb most significant bits of service UUID
+     * @param lsb least significant bits of service UUID
+     * @return decoder or null if service is not registered
+     */
+    public static AtmotubeDecoder get(long msb, long lsb) {
+        for (Entry entry : sEntries) {
+            if (entry.mMsb == msb && entry.mLsb == lsb) {
+                return entry.mDecoder;
+            }
+        }
+        return null;
+    }
+
+    public static AtmotubeDecoder get(UUID serviceUuid) {
+        return get(serviceUuid.getMostSignificantBits(), serviceUuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Find decoder for the first advertised 128-bit service UUID that has one
+     *
+     * @param record raw advertising data
+     * @return decoder or null
+     */
+    static AtmotubeDecoder findServiceDecoder(byte[] record) {
+        int i = 0;
+        while (i < record.length) {
+            int len = record[i] & 0xFF;
+            if (len == 0 || i + len >= record.length) {
+                return null;
+            }
+            int type = record[i + 1] & 0xFF;
+            if (type == AdvertisingData.TYPE_UUID128_INCOMPLETE || type == AdvertisingData.TYPE_UUID128_COMPLETE) {
+                for (int off = i + 2; off + 16 <= i + 1 + len; off += 16) {
+                    // UUIDs are transmitted little-endian
+                    AtmotubeDecoder decoder = get(AdvertisingData.readLongLE(record, off + 8), AdvertisingData.readLongLE(record, off));
+                    if (decoder != null) {
+                        return decoder;
+                    }
+                }
+            }
+            i += len + 1;
+        }
+        return null;
+    }
+
+    static int getHumidity(byte b) {
+        return (int) b & 0xFF;
+    }
+
+    static int getTemperature(byte b) {
+        return b;
+    }
+
+    static int getHardwareVer(String fwVer, int hwVer) {
+        if (hwVer == 0x0000 || hwVer == 0x0100) {
+            return AtmotubeData.HW_VER_1_0;
+        } else if (hwVer == 0x0102) {
+            return AtmotubeData.HW_VER_2_0;
+        } else if (hwVer == 0x0103) {
+            return AtmotubeData.HW_VER_2_0;
+        }
+        if (fwVer != null) {
+            if (fwVer.startsWith("70")) {
+                return AtmotubeData.HW_VER_1_0;
+            } else if (fwVer.startsWith("72")) {
+                return AtmotubeData.HW_VER_2_0;
+            } else if (fwVer.startsWith("73")) {
+                return AtmotubeData.HW_VER_PLUS;
+            } else if (fwVer.startsWith("74")) {
+                return AtmotubeData.HW_VER_PRO;
+            }
+        }
+        return AtmotubeData.HW_VER_UNKNOWN;
+    }
+
+    private static final class Entry {
+        final long mMsb;
+        final long mLsb;
+        final AtmotubeDecoder mDecoder;
+
+        Entry(long msb, long lsb, AtmotubeDecoder decoder) {
+            mMsb = msb;
+            mLsb = lsb;
+            mDecoder = decoder;
+        }
+    }
+}
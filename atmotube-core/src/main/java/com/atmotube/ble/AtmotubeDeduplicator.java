@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.Arrays;
+
+/**
+ * Drops repeated advertisements of the same measurement before they are decoded
+ * <p>
+ * Every advertisement is reduced to a 64-bit key. For decoders with {@link AtmotubeDecoder.DeviceCrcLayout},
+ * e.g. PLUS and PRO, it is the device CRC combined with the measurement bytes the decoder reads, so the key
+ * changes with every new reading. Older generations and factory mode use a hash of the whole record. The last keys of each device are
+ * remembered and an advertisement with a remembered key is a duplicate. Several keys are kept,
+ * because Android alternates records with and without scan response data. A device in a stable
+ * environment repeats the same measurement, so a remembered key is accepted again once it is older
+ * than the max age and the device keeps showing up as live.
+ * <p>
+ * Memory is fixed: devices are kept in a set-associative table and the least recently seen
+ * device of a set is evicted when the set is full.
+ */
+public class AtmotubeDeduplicator {
+
+    public static final int DEFAULT_MAX_DEVICES = 256;
+    public static final int DEFAULT_HISTORY = 4;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 10000;
+
+    // slots searched for a device, a device never leaves its set
+    private static final int SET_SIZE = 8;
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final long EMPTY = 0;
+    private static final long MAC_PRESENT = 1L << 48;
+
+    private final int mHistory;
+    private final long mMaxAgeMillis;
+    private final int mSetMask;
+    private final long[] mMacs;
+    private final long[] mLastSeen;
+    private final long[] mKeys;
+    // time a key was last accepted
+    private final long[] mKeyTimes;
+    private final int[] mKeyCount;
+    private final int[] mNextKey;
+    private long mTick;
+
+    private long mAccepted;
+    private long mDuplicates;
+    private long mEvictions;
+
+    public AtmotubeDeduplicator() {
+        this(DEFAULT_MAX_DEVICES, DEFAULT_HISTORY);
+    }
+
+    /**
+     * @param maxDevices devices to remember, rounded up to a power of two
+     * @param history    keys remembered per device
+     */
+    public AtmotubeDeduplicator(int maxDevices, int history) {
+        this(maxDevices, history, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * @param maxDevices   devices to remember, rounded up to a power of two
+     * @param history      keys remembered per device
+     * @param maxAgeMillis repeated advertisement is accepted again after this time
+     */
+    public AtmotubeDeduplicator(int maxDevices, int history, long maxAgeMillis) {
+        if (maxDevices <= 0 || history <= 0) {
+            throw new IllegalArgumentException("maxDevices and history must be positive");
+        }
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("maxAgeMillis must not be negative");
+        }
+        int capacity = SET_SIZE;
+        while (capacity < maxDevices) {
+            capacity <<= 1;
+        }
+        mHistory = history;
+        mMaxAgeMillis = maxAgeMillis;
+        mSetMask = capacity / SET_SIZE - 1;
+        mMacs = new long[capacity];
+        mLastSeen = new long[capacity];
+        mKeys = new long[capacity * history];
+        mKeyTimes = new long[capacity * history];
+        mKeyCount = new int[capacity];
+        mNextKey = new int[capacity];
+    }
+
+    /**
+     * Check raw advertisement received now and remember it
+     *
+     * @see #isDuplicate(String, byte[], long)
+     */
+    public boolean isDuplicate(String mac, byte[] record) {
+        return isDuplicate(mac, record, System.currentTimeMillis());
+    }
+
+    /**
+     * Check raw advertisement and remember it
+     *
+     * @param mac        device MAC address
+     * @param record     raw scan record bytes
+     * @param timeMillis time the advertisement was received
+     * @return true if the same measurement of this device was accepted within the max age
+     */
+    public synchronized boolean isDuplicate(String mac, byte[] record, long timeMillis) {
+        long macValue = AtmotubeRegistry.parseMac(mac);
+        if (macValue == AtmotubeRegistry.INVALID_MAC || record == null) {
+            mAccepted++;
+            return false;
+        }
+        long key = getKey(record);
+        int slot = findSlot(macValue | MAC_PRESENT);
+        mLastSeen[slot] = ++mTick;
+        int base = slot * mHistory;
+        for (int i = 0; i < mKeyCount[slot]; i++) {
+            if (mKeys[base + i] == key) {
+                if (timeMillis - mKeyTimes[base + i] <= mMaxAgeMillis) {
+                    mDuplicates++;
+                    return true;
+                }
+                mKeyTimes[base + i] = timeMillis;
+                mAccepted++;
+                return false;
+            }
+        }
+        mKeys[base + mNextKey[slot]] = key;
+        mKeyTimes[base + mNextKey[slot]] = timeMillis;
+        mNextKey[slot] = (mNextKey[slot] + 1) % mHistory;
+        if (mKeyCount[slot] < mHistory) {
+            mKeyCount[slot]++;
+        }
+        mAccepted++;
+        return false;
+    }
+
+    private int findSlot(long mac) {
+        int set = (int) ((mac * 0x9E3779B97F4A7C15L) >>> 32) & mSetMask;
+        int from = set * SET_SIZE;
+        int victim = from;
+        for (int slot = from; slot < from + SET_SIZE; slot++) {
+            if (mMacs[slot] == mac) {
+                return slot;
+            }
+            if (mLastSeen[slot] < mLastSeen[victim]) {
+                victim = slot;
+            }
+        }
+        if (mMacs[victim] != EMPTY) {
+            mEvictions++;
+        }
+        mMacs[victim] = mac;
+        mKeyCount[victim] = 0;
+        mNextKey[victim] = 0;
+        return victim;
+    }
+
+    /**
+     * Get deduplication key of raw advertisement
+     *
+     * @param record raw scan record bytes
+     * @return 64-bit key
+     */
+    static long getKey(byte[] record) {
+        AtmotubeDecoder decoder = AtmotubeDecoders.findServiceDecoder(record);
+        if (decoder instanceof AtmotubeDecoder.DeviceCrcLayout) {
+            AtmotubeDecoder.DeviceCrcLayout layout = (AtmotubeDecoder.DeviceCrcLayout) decoder;
+            int[] ranges = layout.getMeasurementRanges();
+            int crcOffset = layout.getDeviceCrcOffset();
+            if (record.length >= ranges[ranges.length - 1] && record.length >= crcOffset + 2) {
+                long hash = HASH_SEED;
+                for (int i = 0; i < ranges.length; i += 2) {
+                    hash = hash(hash, record, ranges[i], ranges[i + 1]);
+                }
+                return (long) AtmotubeBytes.uint16(record, crcOffset) << 48 ^ hash;
+            }
+        }
+        return hash(HASH_SEED, record, 0, record.length);
+    }
+
+    // multiply-xorshift over 8 byte words, then remaining bytes
+    private static long hash(long hash, byte[] b, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            hash = (hash ^ AdvertisingData.readLongLE(b, i)) * HASH_MULTIPLIER;
+            hash ^= hash >>> 29;
+        }
+        for (; i < to; i++) {
+            hash = (hash ^ (b[i] & 0xFF)) * HASH_MULTIPLIER;
+        }
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * Forget all devices, counters are kept
+     */
+    public synchronized void clear() {
+        Arrays.fill(mMacs, EMPTY);
+        Arrays.fill(mLastSeen, 0);
+        Arrays.fill(mKeyCount, 0);
+        Arrays.fill(mNextKey, 0);
+    }
+
+    /**
+     * @return number of advertisements that were not duplicates
+     */
+    public synchronized long getAccepted() {
+        return mAccepted;
+    }
+
+    /**
+     * @return number of dropped duplicates
+     */
+    public synchronized long getDuplicates() {
+        return mDuplicates;
+    }
+
+    /**
+     * @return number of devices forgotten to make room for new ones
+     */
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    public synchronized void resetCounters() {
+        mAccepted = 0;
+        mDuplicates = 0;
+        mEvictions = 0;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reduces the rate of decoded readings per device
+ * <p>
+ * Interval modes ({@link #MODE_LAST}, {@link #MODE_MEAN}, {@link #MODE_MIN}, {@link #MODE_MAX}) split
+ * time into intervals and emit one reading per device and interval, when the first reading of the
+ * next interval arrives or on {@link #flush}. {@link #MODE_CHANGE} emits a reading as soon as a value
+ * moved by its threshold since the last emitted reading, or when the interval passed without emission.
+ * <p>
+ * {@link AtmotubeData#UNKNOWN} and PM off values are skipped, a value stays unknown only if it was
+ * unknown for the whole interval. PM1, PM2.5 and PM10 are one unit: a reading adds PM only if all three
+ * are known, and {@link #MODE_MIN}/{@link #MODE_MAX} emit the PM values of the reading with the
+ * minimal/maximal PM2.5. Every device keeps a fixed size state.
+ */
+public class AtmotubeDownsampler {
+
+    // emit the last known value of every field
+    public static final int MODE_LAST = 0;
+    // emit the mean of every field
+    public static final int MODE_MEAN = 1;
+    // emit the minimum of every field
+    public static final int MODE_MIN = 2;
+    // emit the maximum of every field
+    public static final int MODE_MAX = 3;
+    // emit readings that changed by threshold
+    public static final int MODE_CHANGE = 4;
+
+    public static final int FIELD_VOC = 0;
+    public static final int FIELD_TEMPERATURE = 1;
+    public static final int FIELD_HUMIDITY = 2;
+    public static final int FIELD_PRESSURE = 3;
+    public static final int FIELD_PM1 = 4;
+    public static final int FIELD_PM25 = 5;
+    public static final int FIELD_PM10 = 6;
+    private static final int FIELDS = 7;
+
+    private static class State {
+        // interval of aggregated readings
+        long mInterval;
+        int mReadings;
+        long mLastTime;
+        // last reading, holds device fields of the emitted reading
+        final AtmotubeData mLast = new AtmotubeData();
+        final int[] mCount = new int[FIELDS];
+        final double[] mSum = new double[FIELDS];
+        final float[] mMin = new float[FIELDS];
+        final float[] mMax = new float[FIELDS];
+        final float[] mValue = new float[FIELDS];
+        // MODE_CHANGE: last emitted values and time
+        final float[] mEmitted = new float[FIELDS];
+        long mEmittedTime;
+    }
+
+    private final int mMode;
+    private final long mIntervalSeconds;
+    private final float[] mThresholds = new float[FIELDS];
+    private final Map<String, State> mStates = new HashMap<>();
+
+    /**
+     * @param mode            one of MODE_* constants
+     * @param intervalSeconds interval length, for {@link #MODE_CHANGE} the maximal time without emission or 0
+     */
+    public AtmotubeDownsampler(int mode, long intervalSeconds) {
+        if (mode < MODE_LAST || mode > MODE_CHANGE) {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        if (intervalSeconds < 0 || (intervalSeconds == 0 && mode != MODE_CHANGE)) {
+            throw new IllegalArgumentException("Invalid interval " + intervalSeconds);
+        }
+        mMode = mode;
+        mIntervalSeconds = intervalSeconds;
+        for (int i = 0; i < FIELDS; i++) {
+            mThresholds[i] = Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Set change threshold for {@link #MODE_CHANGE}, fields without threshold do not trigger emission
+     *
+     * @param field one of FIELD_* constants
+     * @param delta minimal absolute change
+     */
+    public synchronized void setThreshold(int field, float delta) {
+        if (delta < 0 || delta != delta) {
+            throw new IllegalArgumentException("Invalid threshold " + delta);
+        }
+        mThresholds[field] = delta;
+    }
+
+    /**
+     * Add decoded reading
+     *
+     * @param data reading, not modified
+     * @param out  holder for the emitted reading
+     * @return true if a reading was emitted into out
+     */
+    public synchronized boolean add(AtmotubeData data, AtmotubeData out) {
+        String mac = data.getMac();
+        State state = mStates.get(mac);
+        if (state == null) {
+            state = new State();
+            mStates.put(mac, state);
+        }
+        state.mLastTime = data.getTime();
+        if (mMode == MODE_CHANGE) {
+            return addChange(state, data, out);
+        }
+        long time = data.getTime();
+        long interval = time >= 0 ? time / mIntervalSeconds : (time + 1) / mIntervalSeconds - 1;
+        boolean emitted = false;
+        if (state.mReadings > 0 && interval != state.mInterval) {
+            emit(state, out);
+            emitted = true;
+        }
+        if (state.mReadings == 0) {
+            state.mInterval = interval;
+            for (int i = 0; i < FIELDS; i++) {
+                state.mCount[i] = 0;
+                state.mSum[i] = 0;
+            }
+        }
+        state.mReadings++;
+        state.mLast.copyFrom(data);
+        for (int i = 0; i < FIELD_PM1; i++) {
+            float value = get(data, i);
+            if (!isKnown(value)) {
+                continue;
+            }
+            if (state.mCount[i] == 0) {
+                state.mMin[i] = value;
+                state.mMax[i] = value;
+            } else {
+                state.mMin[i] = Math.min(state.mMin[i], value);
+                state.mMax[i] = Math.max(state.mMax[i], value);
+            }
+            state.mCount[i]++;
+            state.mSum[i] += value;
+            state.mValue[i] = value;
+        }
+        if (isPmKnown(data)) {
+            boolean first = state.mCount[FIELD_PM25] == 0;
+            boolean min = first || data.mPm25 < state.mMin[FIELD_PM25];
+            boolean max = first || data.mPm25 > state.mMax[FIELD_PM25];
+            for (int i = FIELD_PM1; i < FIELDS; i++) {
+                float value = get(data, i);
+                if (min) {
+                    state.mMin[i] = value;
+                }
+                if (max) {
+                    state.mMax[i] = value;
+                }
+                state.mCount[i]++;
+                state.mSum[i] += value;
+                state.mValue[i] = value;
+            }
+        }
+        return emitted;
+    }
+
+    private boolean addChange(State state, AtmotubeData data, AtmotubeData out) {
+        boolean emit = state.mReadings == 0
+                || (mIntervalSeconds > 0 && data.getTime() - state.mEmittedTime >= mIntervalSeconds);
+        boolean pmKnown = isPmKnown(data);
+        for (int i = 0; i < FIELDS && !emit; i++) {
+            float value = i < FIELD_PM1 || pmKnown ? get(data, i) : AtmotubeData.UNKNOWN;
+            float emitted = state.mEmitted[i];
+            if (isKnown(value) != isKnown(emitted)) {
+                emit = mThresholds[i] != Float.POSITIVE_INFINITY;
+            } else if (isKnown(value)) {
+                emit = Math.abs(value - emitted) >= mThresholds[i];
+            }
+        }
+        if (!emit) {
+            return false;
+        }
+        state.mReadings = 1;
+        state.mEmittedTime = data.getTime();
+        for (int i = 0; i < FIELDS; i++) {
+            float value = i < FIELD_PM1 || pmKnown ? get(data, i) : AtmotubeData.UNKNOWN;
+            state.mEmitted[i] = isKnown(value) ? value : AtmotubeData.UNKNOWN;
+        }
+        out.copyFrom(data);
+        if (!pmKnown) {
+            out.mPm1 = AtmotubeData.UNKNOWN;
+            out.mPm25 = AtmotubeData.UNKNOWN;
+            out.mPm10 = AtmotubeData.UNKNOWN;
+        }
+        return true;
+    }
+
+    /**
+     * Emit the pending interval of a device, does nothing in {@link #MODE_CHANGE}
+     *
+     * @param mac device MAC address
+     * @param out holder for the emitted reading
+     * @return true if a reading was emitted into out
+     */
+    public synchronized boolean flush(String mac, AtmotubeData out) {
+        State state = mStates.get(mac);
+        if (state == null || state.mReadings == 0 || mMode == MODE_CHANGE) {
+            return false;
+        }
+        emit(state, out);
+        return true;
+    }
+
+    /**
+     * Forget devices without readings since time, their pending intervals are dropped
+     *
+     * @param time time in seconds
+     * @return number of removed devices
+     */
+    public synchronized int removeOlderThan(long time) {
+        int removed = 0;
+        for (Iterator<State> it = mStates.values().iterator(); it.hasNext(); ) {
+            if (it.next().mLastTime < time) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized void clear() {
+        mStates.clear();
+    }
+
+    /**
+     * @return number of tracked devices
+     */
+    public synchronized int size() {
+        return mStates.size();
+    }
+
+    private void emit(State state, AtmotubeData out) {
+        out.copyFrom(state.mLast);
+        for (int i = 0; i < FIELDS; i++) {
+            float value = AtmotubeData.UNKNOWN;
+            if (state.mCount[i] > 0) {
+                switch (mMode) {
+                    case MODE_MEAN:
+                        value = (float) (state.mSum[i] / state.mCount[i]);
+                        break;
+                    case MODE_MIN:
+                        value = state.mMin[i];
+                        break;
+                    case MODE_MAX:
+                        value = state.mMax[i];
+                        break;
+                    default:
+                        value = state.mValue[i];
+                        break;
+                }
+            }
+            set(out, i, value);
+        }
+        if (mMode != MODE_LAST) {
+            // aggregates describe the whole interval
+            out.mTime = state.mInterval * mIntervalSeconds;
+        }
+        state.mReadings = 0;
+    }
+
+    private static boolean isKnown(float value) {
+        return value != AtmotubeData.UNKNOWN && value != AtmotubeData.PM_OFF
+                && value != AtmotubeData.PM_OFF_FLOAT && value == value;
+    }
+
+    private static boolean isPmKnown(AtmotubeData data) {
+        return isKnown(data.mPm1) && isKnown(data.mPm25) && isKnown(data.mPm10);
+    }
+
+    private static float get(AtmotubeData data, int field) {
+        switch (field) {
+            case FIELD_VOC:
+                return data.mVOC;
+            case FIELD_TEMPERATURE:
+                return data.mTemperature;
+            case FIELD_HUMIDITY:
+                return data.mHumidity;
+            case FIELD_PRESSURE:
+                return data.mPressure;
+            case FIELD_PM1:
+                return data.mPm1;
+            case FIELD_PM25:
+                return data.mPm25;
+            default:
+                return data.mPm10;
+        }
+    }
+
+    private static void set(AtmotubeData data, int field, float value) {
+        switch (field) {
+            case FIELD_VOC:
+                data.mVOC = value;
+                break;
+            case FIELD_TEMPERATURE:
+                data.mTemperature = value;
+                break;
+            case FIELD_HUMIDITY:
+                data.mHumidity = value;
+                break;
+            case FIELD_PRESSURE:
+                data.mPressure = value;
+                break;
+            case FIELD_PM1:
+                data.mPm1 = value;
+                break;
+            case FIELD_PM25:
+                data.mPm25 = value;
+                break;
+            default:
+                data.mPm10 = value;
+                break;
+        }
+    }
+}
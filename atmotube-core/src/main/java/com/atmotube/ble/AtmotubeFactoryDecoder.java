@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atmotube.ble;
+
+/**
+ * Atmotube PLUS and Atmotube PRO factory mode ("atmotest3") packet decoder
+ */
+final class AtmotubeFactoryDecoder implements AtmotubeDecoder {
+
+    @Override
+    public int decode(String name, String mac, byte[] bytes, int rssi, AtmotubeData target) {
+        int shift = 7;
+        int voc = AtmotubeBytes.uint16(bytes, shift);
+        shift += 2;
+        float vocF = (float) voc / 1000;
+        int batteryPercentage = (int) bytes[shift++];
+        int info = 0x20;
+        int batteryVoltage = AtmotubeBytes.uint16(bytes, shift);
+        shift += 2;
+        String fwVer = AtmotubeBytes.getFwVersion(bytes, shift);
+        shift += 3;
+        int errorCode = (int) bytes[shift++];
+        int baseline = AtmotubeBytes.uint16(bytes, shift);
+        shift += 2;
+        int hum = AtmotubeDecoders.getHumidity(bytes[shift++]);
+        int temp = AtmotubeDecoders.getTemperature(bytes[shift]);
+        float pressure = 0;
+        int pm25Tech = 0;
+
+        // manufacturer specific data marker (0xff 0xffff) in hex notation
+        int mfIndex = AtmotubeBytes.indexOfNibbleRun(bytes, 14, 6);
+        if (mfIndex != -1) {
+            shift = mfIndex / 2 + 3;
+            int p = AtmotubeBytes.int32(bytes, shift);
+            if (p < 0) {
+                // out of int range
+                return DECODE_CORRUPTED;
+            }
+            shift += 4;
+            pressure = (float) p / 100;
+            info = (int) bytes[shift++];
+            pm25Tech = AtmotubeBytes.uint16(bytes, shift);
+        }
+        target.set(name, System.currentTimeMillis() / 1000, vocF, temp, hum, pressure, info, baseline, fwVer, bytes,
+                AtmotubeDecoders.getHardwareVer(fwVer, AtmotubeLegacyDecoder.HW_ID_NONE), mac, rssi, batteryVoltage, batteryPercentage, errorCode);
+        if (pm25Tech > 0) {
+            target.setPm(0, pm25Tech, 0);
+        }
+        return DECODE_OK;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Connected-mode sessions with many Atmotube devices
+ * <p>
+ * Every device has its own {@link AtmotubeGattSession} with its own operation queue, only the timeout
+ * scheduler is shared.
+ */
+public class AtmotubeGattManager {
+
+    private final AtmotubeGattSession.Listener mListener;
+    private final ScheduledExecutorService mScheduler;
+    private final Map<String, AtmotubeGattSession> mSessions = new HashMap<>();
+    private volatile long mTimeoutMillis = AtmotubeGattSession.DEFAULT_TIMEOUT_MILLIS;
+
+    public AtmotubeGattManager(AtmotubeGattSession.Listener listener) {
+        mListener = listener;
+        mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            private final ThreadFactory mDefault = Executors.defaultThreadFactory();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = mDefault.newThread(r);
+                thread.setName("AtmotubeGattTimeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set operation timeout for new sessions
+     */
+    public void setTimeout(long timeoutMillis) {
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Connect to device, an existing session for the device is reused
+     *
+     * @param mac       device MAC address
+     * @param transport connection to the device, ignored if session exists
+     * @param data      holder for merged values, ignored if session exists
+     * @return session
+     */
+    public AtmotubeGattSession connect(String mac, AtmotubeGattTransport transport, AtmotubeData data) {
+        AtmotubeGattSession session;
+        synchronized (this) {
+            session = mSessions.get(mac);
+            if (session == null || session.getState() == AtmotubeGattSession.STATE_CLOSED) {
+                session = new AtmotubeGattSession(mac, transport, data, mListener, mScheduler, mTimeoutMillis);
+                mSessions.put(mac, session);
+            }
+        }
+        // outside of manager lock, listeners may call the manager
+        session.connect();
+        return session;
+    }
+
+    public synchronized AtmotubeGattSession get(String mac) {
+        return mSessions.get(mac);
+    }
+
+    public synchronized List<AtmotubeGattSession> getSessions() {
+        return new ArrayList<>(mSessions.values());
+    }
+
+    /**
+     * Close and forget device session
+     */
+    public void disconnect(String mac) {
+        AtmotubeGattSession session;
+        synchronized (this) {
+            session = mSessions.remove(mac);
+        }
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * Close all sessions and stop timeout scheduler
+     */
+    public void close() {
+        List<AtmotubeGattSession> sessions;
+        synchronized (this) {
+            sessions = new ArrayList<>(mSessions.values());
+            mSessions.clear();
+        }
+        for (AtmotubeGattSession session : sessions) {
+            session.close();
+        }
+        mScheduler.shutdownNow();
+    }
+}
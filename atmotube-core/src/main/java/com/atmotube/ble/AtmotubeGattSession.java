@@ -0,0 +1,484 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connected-mode session with one Atmotube
+ * <p>
+ * The session connects, requests a larger MTU, discovers services, enables notifications on all sensor characteristics of the
+ * device generation (and UART TX if present) and reads them once. Sensor values are merged into one
+ * holder, which is reported after every update once each sensor characteristic reported at least once.
+ * <p>
+ * GATT operations run one at a time from a queue and every operation has a timeout. A timeout or a failed
+ * setup closes the connection. Sessions do not share locks, so a slow device does not stall other sessions.
+ */
+public class AtmotubeGattSession {
+
+    public static final int STATE_DISCONNECTED = 0;
+    public static final int STATE_CONNECTING = 1;
+    // discovering services and enabling notifications
+    public static final int STATE_SETUP = 2;
+    public static final int STATE_READY = 3;
+    public static final int STATE_CLOSED = 4;
+
+    // operation did not complete in time, connection is closed
+    public static final int ERROR_TIMEOUT = 1;
+    // operation completed with GATT error status
+    public static final int ERROR_GATT = 2;
+    // transport refused to start operation
+    public static final int ERROR_REJECTED = 3;
+    // device has no Atmotube service, connection is closed
+    public static final int ERROR_NOT_ATMOTUBE = 4;
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    // default ATT MTU and the MTU requested on connection, larger MTU speeds up UART transfers
+    public static final int DEFAULT_MTU = 23;
+    public static final int REQUESTED_MTU = 247;
+
+    /**
+     * Session events, called on transport or timeout threads while the session is locked
+     */
+    public interface Listener {
+
+        void onStateChanged(AtmotubeGattSession session, int state);
+
+        /**
+         * @param data session holder, copy it to keep the values
+         */
+        void onUpdate(AtmotubeGattSession session, AtmotubeData data);
+
+        /**
+         * UART TX notification
+         *
+         * @param value characteristic value, may be reused by transport after return
+         */
+        void onUartData(AtmotubeGattSession session, byte[] value);
+
+        void onError(AtmotubeGattSession session, int error);
+    }
+
+    private static final int OP_CONNECT = 0;
+    private static final int OP_DISCOVER = 1;
+    private static final int OP_NOTIFY = 2;
+    private static final int OP_READ = 3;
+    private static final int OP_WRITE = 4;
+    private static final int OP_MTU = 5;
+
+    private static final UUID[] SERVICES = {
+            AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4,
+            AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V3,
+            AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V2
+    };
+
+    private static final int[] HW_VERSIONS = {
+            AtmotubeData.HW_VER_PRO,
+            AtmotubeData.HW_VER_PLUS,
+            AtmotubeData.HW_VER_2_0
+    };
+
+    private static final UUID[][] CHARACTERISTICS = {
+            {AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4, AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V4,
+                    AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V4, AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4},
+            {AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V3, AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V3,
+                    AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V3},
+            {AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V2, AtmotubeConstants.HUMIDITY_CHARACTERISTIC_UUID_V2,
+                    AtmotubeConstants.TEMPERATURE_CHARACTERISTIC_UUID_V2, AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V2}
+    };
+
+    private static final class Operation {
+        final int mType;
+        final UUID mService;
+        final UUID mCharacteristic;
+        final byte[] mValue;
+
+        Operation(int type, UUID service, UUID characteristic, byte[] value) {
+            mType = type;
+            mService = service;
+            mCharacteristic = characteristic;
+            mValue = value;
+        }
+    }
+
+    private final String mMac;
+    private final AtmotubeGattTransport mTransport;
+    private final AtmotubeData mData;
+    private final Listener mListener;
+    private final ScheduledExecutorService mScheduler;
+    private final long mTimeoutMillis;
+
+    private final ArrayDeque<Operation> mQueue = new ArrayDeque<>();
+    private Operation mCurrent;
+    private ScheduledFuture<?> mTimeout;
+    // incremented for every started operation, stale timeouts are ignored
+    private int mGeneration;
+    private int mState = STATE_DISCONNECTED;
+    private int mMtu = DEFAULT_MTU;
+
+    private UUID mService;
+    private UUID[] mCharacteristics;
+    private int mReported;
+
+    private final AtmotubeGattTransport.Callback mCallback = new AtmotubeGattTransport.Callback() {
+        @Override
+        public void onConnectionStateChanged(boolean connected, int status) {
+            connectionStateChanged(connected, status);
+        }
+
+        @Override
+        public void onServicesDiscovered(int status) {
+            servicesDiscovered(status);
+        }
+
+        @Override
+        public void onMtuChanged(int mtu, int status) {
+            mtuChanged(mtu, status);
+        }
+
+        @Override
+        public void onCharacteristicRead(UUID characteristic, byte[] value, int status) {
+            characteristicRead(characteristic, value, status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(UUID characteristic, int status) {
+            operationCompleted(OP_WRITE, characteristic, status);
+        }
+
+        @Override
+        public void onNotificationsEnabled(UUID characteristic, int status) {
+            operationCompleted(OP_NOTIFY, characteristic, status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(UUID characteristic, byte[] value) {
+            characteristicChanged(characteristic, value);
+        }
+    };
+
+    /**
+     * @param mac           device MAC address
+     * @param transport     connection to the device
+     * @param data          holder for merged values, may contain the last advertisement, its firmware
+     *                      version selects the status byte layout
+     * @param listener      session events
+     * @param scheduler     scheduler for operation timeouts, may be shared by sessions
+     * @param timeoutMillis operation timeout
+     */
+    public AtmotubeGattSession(String mac, AtmotubeGattTransport transport, AtmotubeData data, Listener listener,
+                               ScheduledExecutorService scheduler, long timeoutMillis) {
+        mMac = mac;
+        mTransport = transport;
+        mData = data;
+        mListener = listener;
+        mScheduler = scheduler;
+        mTimeoutMillis = timeoutMillis;
+        mData.setMac(mac);
+    }
+
+    public String getMac() {
+        return mMac;
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * @return negotiated ATT MTU, UART writes and notifications carry up to MTU - 3 bytes
+     */
+    public synchronized int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * Copy merged values
+     *
+     * @param target holder to fill
+     */
+    public synchronized void getData(AtmotubeData target) {
+        target.copyFrom(mData);
+    }
+
+    /**
+     * Connect if disconnected
+     */
+    public synchronized void connect() {
+        if (mState != STATE_DISCONNECTED) {
+            return;
+        }
+        mReported = 0;
+        setState(STATE_CONNECTING);
+        mQueue.add(new Operation(OP_CONNECT, null, null, null));
+        next();
+    }
+
+    /**
+     * Close connection, the session can not be used afterwards
+     */
+    public synchronized void close() {
+        if (mState == STATE_CLOSED) {
+            return;
+        }
+        reset();
+        setState(STATE_CLOSED);
+    }
+
+    /**
+     * Queue characteristic write, allowed after connection is established
+     *
+     * @return false if session is not connected
+     */
+    public synchronized boolean write(UUID service, UUID characteristic, byte[] value) {
+        if (mState != STATE_SETUP && mState != STATE_READY) {
+            return false;
+        }
+        mQueue.add(new Operation(OP_WRITE, service, characteristic, value.clone()));
+        next();
+        return true;
+    }
+
+    /**
+     * Queue write to UART RX characteristic
+     *
+     * @return false if session is not connected
+     */
+    public boolean writeUart(byte[] value) {
+        return write(AtmotubeConstants.UART_SERVICE_UUID, AtmotubeConstants.UART_RX_CHARACTERISTIC_UUID, value);
+    }
+
+    private void next() {
+        while (mCurrent == null && !mQueue.isEmpty()) {
+            final Operation op = mQueue.poll();
+            mCurrent = op;
+            final int generation = ++mGeneration;
+            // scheduled first, transport may complete the operation before it returns
+            mTimeout = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timeout(generation);
+                }
+            }, mTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!start(op) && mCurrent == op) {
+                finishCurrent();
+                if (op.mType == OP_MTU) {
+                    // not supported by platform, keep default MTU
+                    continue;
+                }
+                mListener.onError(this, ERROR_REJECTED);
+                if (op.mType == OP_CONNECT || op.mType == OP_DISCOVER) {
+                    disconnect();
+                    return;
+                }
+            }
+        }
+        if (mCurrent == null && mState == STATE_SETUP && mService != null) {
+            setState(STATE_READY);
+        }
+    }
+
+    private boolean start(Operation op) {
+        switch (op.mType) {
+            case OP_CONNECT:
+                return mTransport.connect(mCallback);
+            case OP_DISCOVER:
+                return mTransport.discoverServices();
+            case OP_MTU:
+                return mTransport.requestMtu(REQUESTED_MTU);
+            case OP_NOTIFY:
+                return mTransport.enableNotifications(op.mService, op.mCharacteristic);
+            case OP_READ:
+                return mTransport.readCharacteristic(op.mService, op.mCharacteristic);
+            default:
+                return mTransport.writeCharacteristic(op.mService, op.mCharacteristic, op.mValue);
+        }
+    }
+
+    // true if current operation matches, it is finished then
+    private boolean complete(int type, UUID characteristic) {
+        Operation op = mCurrent;
+        if (op == null || op.mType != type || (op.mCharacteristic != null && !op.mCharacteristic.equals(characteristic))) {
+            return false;
+        }
+        finishCurrent();
+        return true;
+    }
+
+    private void finishCurrent() {
+        mCurrent = null;
+        if (mTimeout != null) {
+            mTimeout.cancel(false);
+            mTimeout = null;
+        }
+    }
+
+    private synchronized void timeout(int generation) {
+        if (generation != mGeneration || mCurrent == null) {
+            return;
+        }
+        finishCurrent();
+        mListener.onError(this, ERROR_TIMEOUT);
+        disconnect();
+    }
+
+    private synchronized void connectionStateChanged(boolean connected, int status) {
+        if (mState == STATE_CLOSED) {
+            return;
+        }
+        if (connected && status == AtmotubeGattTransport.GATT_SUCCESS) {
+            if (complete(OP_CONNECT, null)) {
+                mService = null;
+                mMtu = DEFAULT_MTU;
+                setState(STATE_SETUP);
+                mQueue.add(new Operation(OP_MTU, null, null, null));
+                mQueue.add(new Operation(OP_DISCOVER, null, null, null));
+                next();
+            }
+            return;
+        }
+        if (status != AtmotubeGattTransport.GATT_SUCCESS) {
+            mListener.onError(this, ERROR_GATT);
+        }
+        disconnect();
+    }
+
+    private synchronized void mtuChanged(int mtu, int status) {
+        if (!complete(OP_MTU, null)) {
+            return;
+        }
+        // failed exchange keeps the default MTU and is not an error
+        if (status == AtmotubeGattTransport.GATT_SUCCESS) {
+            mMtu = mtu;
+        }
+        next();
+    }
+
+    private synchronized void servicesDiscovered(int status) {
+        if (!complete(OP_DISCOVER, null)) {
+            return;
+        }
+        if (status != AtmotubeGattTransport.GATT_SUCCESS) {
+            mListener.onError(this, ERROR_GATT);
+            disconnect();
+            return;
+        }
+        for (int i = 0; i < SERVICES.length; i++) {
+            if (mTransport.hasService(SERVICES[i])) {
+                mService = SERVICES[i];
+                mCharacteristics = CHARACTERISTICS[i];
+                if (mData.getHwVer() == AtmotubeData.HW_VER_UNKNOWN) {
+                    mData.setHwVer(HW_VERSIONS[i]);
+                }
+                break;
+            }
+        }
+        if (mService == null) {
+            mListener.onError(this, ERROR_NOT_ATMOTUBE);
+            disconnect();
+            return;
+        }
+        for (UUID characteristic : mCharacteristics) {
+            mQueue.add(new Operation(OP_NOTIFY, mService, characteristic, null));
+        }
+        if (mTransport.hasService(AtmotubeConstants.UART_SERVICE_UUID)) {
+            mQueue.add(new Operation(OP_NOTIFY, AtmotubeConstants.UART_SERVICE_UUID,
+                    AtmotubeConstants.UART_TX_CHARACTERISTIC_UUID, null));
+        }
+        // notifications may come only on change, read current values
+        for (UUID characteristic : mCharacteristics) {
+            mQueue.add(new Operation(OP_READ, mService, characteristic, null));
+        }
+        next();
+    }
+
+    private synchronized void characteristicRead(UUID characteristic, byte[] value, int status) {
+        if (!complete(OP_READ, characteristic)) {
+            return;
+        }
+        if (status == AtmotubeGattTransport.GATT_SUCCESS) {
+            update(characteristic, value);
+        } else {
+            mListener.onError(this, ERROR_GATT);
+        }
+        next();
+    }
+
+    private synchronized void operationCompleted(int type, UUID characteristic, int status) {
+        if (!complete(type, characteristic)) {
+            return;
+        }
+        if (status != AtmotubeGattTransport.GATT_SUCCESS) {
+            mListener.onError(this, ERROR_GATT);
+        }
+        next();
+    }
+
+    private synchronized void characteristicChanged(UUID characteristic, byte[] value) {
+        if (mState != STATE_SETUP && mState != STATE_READY) {
+            return;
+        }
+        if (AtmotubeConstants.UART_TX_CHARACTERISTIC_UUID.equals(characteristic)) {
+            mListener.onUartData(this, value);
+        } else {
+            update(characteristic, value);
+        }
+    }
+
+    private void update(UUID characteristic, byte[] value) {
+        UUID[] characteristics = mCharacteristics;
+        if (characteristics == null) {
+            return;
+        }
+        for (int i = 0; i < characteristics.length; i++) {
+            if (characteristics[i].equals(characteristic)) {
+                if (AtmotubeCharacteristics.decode(characteristic, value, mData) == AtmotubeDecoder.DECODE_OK) {
+                    mReported |= 1 << i;
+                    if (mReported == (1 << characteristics.length) - 1) {
+                        mListener.onUpdate(this, mData);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private void reset() {
+        mQueue.clear();
+        finishCurrent();
+        mTransport.close();
+        mService = null;
+        mCharacteristics = null;
+    }
+
+    private void disconnect() {
+        reset();
+        setState(STATE_DISCONNECTED);
+    }
+
+    private void setState(int state) {
+        if (mState != state) {
+            mState = state;
+            mListener.onStateChanged(this, state);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.UUID;
+
+/**
+ * GATT connection to one device, used by {@link AtmotubeGattSession}
+ * <p>
+ * Implementations wrap the platform Bluetooth stack. Every started operation must complete with the
+ * matching {@link Callback} method, callbacks may come from any thread. Operations are never
+ * overlapped by the session.
+ */
+public interface AtmotubeGattTransport {
+
+    int GATT_SUCCESS = 0;
+
+    interface Callback {
+
+        /**
+         * @param connected true if connected, false if disconnected or connection failed
+         * @param status    {@link #GATT_SUCCESS} or platform status
+         */
+        void onConnectionStateChanged(boolean connected, int status);
+
+        void onServicesDiscovered(int status);
+
+        /**
+         * @param mtu negotiated ATT MTU
+         */
+        void onMtuChanged(int mtu, int status);
+
+        void onCharacteristicRead(UUID characteristic, byte[] value, int status);
+
+        void onCharacteristicWrite(UUID characteristic, int status);
+
+        /**
+         * Client characteristic configuration was written, see {@link #enableNotifications}
+         */
+        void onNotificationsEnabled(UUID characteristic, int status);
+
+        void onCharacteristicChanged(UUID characteristic, byte[] value);
+    }
+
+    /**
+     * Start connection, result is reported with {@link Callback#onConnectionStateChanged}
+     *
+     * @return false if connection could not be started
+     */
+    boolean connect(Callback callback);
+
+    /**
+     * Disconnect and release the connection, no callbacks are expected afterwards
+     */
+    void close();
+
+    boolean discoverServices();
+
+    /**
+     * Request ATT MTU, result is reported with {@link Callback#onMtuChanged}
+     *
+     * @return false if the platform does not support MTU exchange
+     */
+    boolean requestMtu(int mtu);
+
+    /**
+     * @return true if discovered services contain the service
+     */
+    boolean hasService(UUID service);
+
+    boolean readCharacteristic(UUID service, UUID characteristic);
+
+    boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value);
+
+    boolean enableNotifications(UUID service, UUID characteristic);
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Download of readings stored on Atmotube PLUS/PRO over the UART service
+ * <p>
+ * Records are decoded while notifications stream in and are appended straight to an {@link AtmotubeSeries},
+ * no object is created per record. Every frame is acknowledged with the time of its last record.
+ * After a disconnect, {@link #start(AtmotubeGattSession)} requests records after the last acknowledged time,
+ * records which are already in the series are skipped.
+ * <p>
+ * The UART history protocol is not documented in this library, the commands and frames are provided by
+ * a {@link Codec} for the firmware in use. There is no default codec.
+ * <p>
+ * Forward {@link AtmotubeGattSession.Listener#onUartData} to {@link #onUartData(byte[])}.
+ * <p>
+ * Commands are written to the session after the sync lock is released, the session calls
+ * {@link #onUartData(byte[])} with its own lock held.
+ */
+public class AtmotubeHistorySync {
+
+    /**
+     * Commands and frames of the device's UART history protocol
+     * <p>
+     * Called with the sync lock held.
+     */
+    public interface Codec {
+
+        /**
+         * @param fromTime records after this time are requested, seconds
+         * @return command written to UART RX
+         */
+        byte[] request(long fromTime);
+
+        /**
+         * @param time time of the last received record
+         * @return command written to UART RX, null if the protocol has no acknowledgment
+         */
+        byte[] ack(long time);
+
+        /**
+         * Drop partially received frames, called on every start
+         */
+        void reset();
+
+        /**
+         * Decode UART TX notification, frames may be split between notifications in any place.
+         * Nothing is passed to the sink after {@link Sink#onEnd()}.
+         *
+         * @param value notification value
+         * @param sink  receiver of records and frame boundaries
+         * @return false if the value is malformed, sync is stopped
+         */
+        boolean parse(byte[] value, Sink sink);
+    }
+
+    /**
+     * Receiver of decoded history, see {@link Codec#parse(byte[], Sink)}
+     */
+    public interface Sink {
+
+        /**
+         * Stored reading, {@link AtmotubeData#UNKNOWN} for missing values
+         *
+         * @param time seconds
+         * @param info info byte, {@link AtmotubeSeries#INFO_UNKNOWN} if missing
+         */
+        void onRecord(long time, float voc, float temperature, float humidity, float pressure,
+                      float pm1, float pm25, float pm10, int info);
+
+        /**
+         * Frame is complete, it is acknowledged
+         */
+        void onFrameEnd();
+
+        /**
+         * All records are sent
+         */
+        void onEnd();
+    }
+
+    public interface Listener {
+
+        /**
+         * Frame was received and acknowledged
+         *
+         * @param records number of records added since start
+         */
+        void onProgress(AtmotubeHistorySync sync, int records);
+
+        void onComplete(AtmotubeHistorySync sync, int records);
+
+        /**
+         * Device sent an unknown or malformed frame, sync is stopped
+         */
+        void onError(AtmotubeHistorySync sync);
+    }
+
+    private final AtmotubeSeries mSeries;
+    private final Codec mCodec;
+    private final Listener mListener;
+
+    private AtmotubeGattSession mSession;
+    private boolean mRunning;
+    private long mAckedTime;
+    private long mLastTime;
+    private int mRecords;
+
+    // acks of completed frames, written after the lock is released
+    private final List<byte[]> mAcks = new ArrayList<>();
+
+    private final Sink mSink = new Sink() {
+        @Override
+        public void onRecord(long time, float voc, float temperature, float humidity, float pressure,
+                             float pm1, float pm25, float pm10, int info) {
+            if (!mRunning || time <= mLastTime) {
+                // already stored before reconnection
+                return;
+            }
+            mSeries.append(time, voc, temperature, humidity, pressure, pm1, pm25, pm10, info);
+            mLastTime = time;
+            mRecords++;
+        }
+
+        @Override
+        public void onFrameEnd() {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastTime > mAckedTime) {
+                mAckedTime = mLastTime;
+            }
+            byte[] ack = mCodec.ack(mAckedTime);
+            if (ack != null) {
+                mAcks.add(ack);
+            }
+            mListener.onProgress(AtmotubeHistorySync.this, mRecords);
+        }
+
+        @Override
+        public void onEnd() {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            mListener.onComplete(AtmotubeHistorySync.this, mRecords);
+        }
+    };
+
+    /**
+     * @param series   series of the device, records after its last reading are downloaded
+     * @param codec    UART history protocol of the device
+     * @param listener sync events
+     */
+    public AtmotubeHistorySync(AtmotubeSeries series, Codec codec, Listener listener) {
+        mSeries = series;
+        mCodec = codec;
+        mListener = listener;
+        mAckedTime = series.isEmpty() ? 0 : series.getTime(series.size() - 1);
+        mLastTime = mAckedTime;
+    }
+
+    /**
+     * Request records after the last acknowledged time, call again to resume after reconnection
+     *
+     * @param session connected session
+     * @return false if the request could not be queued
+     */
+    public boolean start(AtmotubeGattSession session) {
+        byte[] request;
+        synchronized (this) {
+            mSession = session;
+            mCodec.reset();
+            mRecords = 0;
+            mAcks.clear();
+            mRunning = true;
+            request = mCodec.request(mAckedTime);
+        }
+        if (session.writeUart(request)) {
+            return true;
+        }
+        synchronized (this) {
+            if (mSession == session) {
+                mRunning = false;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return time of the last acknowledged record
+     */
+    public synchronized long getAckedTime() {
+        return mAckedTime;
+    }
+
+    /**
+     * Handle UART TX notification
+     *
+     * @param value notification value
+     */
+    public void onUartData(byte[] value) {
+        AtmotubeGattSession session;
+        byte[][] acks;
+        synchronized (this) {
+            if (!mRunning) {
+                return;
+            }
+            if (!mCodec.parse(value, mSink) && mRunning) {
+                mRunning = false;
+                mListener.onError(this);
+            }
+            if (mAcks.isEmpty()) {
+                return;
+            }
+            session = mSession;
+            acks = mAcks.toArray(new byte[mAcks.size()][]);
+            mAcks.clear();
+        }
+        for (byte[] ack : acks) {
+            session.writeUart(ack);
+        }
+    }
+}
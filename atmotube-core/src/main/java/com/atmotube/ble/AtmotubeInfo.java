@@ -16,12 +16,18 @@
 
 package com.atmotube.ble;
 
-import android.text.TextUtils;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 public class AtmotubeInfo implements Serializable {
 
+    private static final long serialVersionUID = 1L;
+
+    // binary form version, see writeTo
+    public static final int FORMAT_VERSION = 1;
+
     public static final int MODE_V10_CONSTANT = 0;
     public static final int MODE_V20_10SECONDS = 0;
 
@@ -41,12 +47,60 @@ public class AtmotubeInfo implements Serializable {
     public final boolean mIsBonded;
     public final boolean mIsPmOn;
 
-    private int mInfoByte;
+    private final int mInfoByte;
+    private final int mFwFamily;
+
+    // firmware families with different info byte layout
+    private static final int FW_FAMILY_DEFAULT = 0;
+    private static final int FW_FAMILY_700305 = 1;
+    private static final int FW_FAMILY_PLUS_PRO = 2;
+
+    // shared instances for all info bytes, signed (as decoded from packets) and unsigned
+    private static final int CACHE_MIN = Byte.MIN_VALUE;
+    private static final int CACHE_MAX = 0xFF;
+    private static final AtmotubeInfo[][] CACHE = new AtmotubeInfo[3][CACHE_MAX - CACHE_MIN + 1];
+
+    // firmware version representing each family
+    private static final String[] FAMILY_FW = {null, "700305", "74"};
+
+    static {
+        for (int family = 0; family < FAMILY_FW.length; family++) {
+            for (int info = CACHE_MIN; info <= CACHE_MAX; info++) {
+                CACHE[family][info - CACHE_MIN] = new AtmotubeInfo(info, FAMILY_FW[family]);
+            }
+        }
+    }
+
+    /**
+     * Get shared info instance, instances are immutable and depend only on info byte and firmware family
+     *
+     * @param info  info byte
+     * @param fwVer firmware version
+     * @return cached {@link AtmotubeInfo}
+     */
+    public static AtmotubeInfo valueOf(int info, String fwVer) {
+        if (info < CACHE_MIN || info > CACHE_MAX) {
+            return new AtmotubeInfo(info, fwVer);
+        }
+        return CACHE[getFwFamily(fwVer)][info - CACHE_MIN];
+    }
+
+    private static int getFwFamily(String fwVer) {
+        if (fwVer == null) {
+            return FW_FAMILY_DEFAULT;
+        } else if (fwVer.startsWith("73") || fwVer.startsWith("74")) {
+            return FW_FAMILY_PLUS_PRO;
+        } else if (fwVer.equals("700305")) {
+            return FW_FAMILY_700305;
+        }
+        return FW_FAMILY_DEFAULT;
+    }
 
     public AtmotubeInfo(int info, String fwVer) {
         mInfoByte = info;
+        mFwFamily = getFwFamily(fwVer);
         mIsActivated = AtmotubeInfo.isActivated(info);
-        if (TextUtils.equals(fwVer, "700305")) {
+        if ("700305".equals(fwVer)) {
             mIsCalibrating = false;
         } else {
             if (!mIsActivated) {
@@ -74,6 +128,37 @@ public class AtmotubeInfo implements Serializable {
         return mInfoByte;
     }
 
+    /**
+     * Write info in compact binary form: format version, info byte and firmware family
+     *
+     * @param out output
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(mInfoByte);
+        out.writeByte(mFwFamily);
+    }
+
+    /**
+     * Read info written by {@link #writeTo(DataOutput)}
+     *
+     * @param in input
+     * @return shared info instance
+     * @throws IOException if the form is written by a newer library version or is corrupted
+     */
+    public static AtmotubeInfo readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported AtmotubeInfo format version " + version);
+        }
+        int info = in.readInt();
+        int family = in.readUnsignedByte();
+        if (family >= FAMILY_FW.length) {
+            throw new IOException("Unknown firmware family " + family);
+        }
+        return valueOf(info, FAMILY_FW[family]);
+    }
+
     public static boolean isBonded(int info) {
         return (info & 0x4) == 0x4;
     }
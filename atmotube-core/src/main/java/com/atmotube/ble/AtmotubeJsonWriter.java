@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming JSON exporter for readings
+ * <p>
+ * Writes a JSON array of rows in {@code UpdateDataHolder.getJSONArray()} layout
+ * {@code [lat, lon, aqs, voc, temp, hum, time]} with the same number formatting, without
+ * building JSON objects. Rows are formatted into a reused buffer and written out in chunks,
+ * so memory use does not depend on the number of readings.
+ * <p>
+ * Not thread safe.
+ */
+public class AtmotubeJsonWriter implements Closeable, Flushable {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0d);
+
+    private final Writer mOut;
+    private final char[] mChunk = new char[CHUNK_SIZE];
+    private final StringBuilder mRow = new StringBuilder(128);
+    private int mChunkLength;
+    private boolean mStarted;
+    private boolean mFinished;
+
+    public AtmotubeJsonWriter(Writer out) {
+        mOut = out;
+    }
+
+    /**
+     * @param out output, JSON is written in UTF-8
+     */
+    public AtmotubeJsonWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, Charset.forName("UTF-8")), CHUNK_SIZE));
+    }
+
+    /**
+     * Write reading row
+     *
+     * @param data reading
+     * @throws IllegalArgumentException if a value is NaN or infinite, as JSON has no such numbers
+     */
+    public void write(AtmotubeData data) throws IOException {
+        write(data.getLat(), data.getLon(), data.getVOC(), data.getTemperature(), data.getHumidity(),
+                data.getPm1(), data.getPm25(), data.getPm10(), data.getTime());
+    }
+
+    /**
+     * Write rows for readings {@code from..to-1} of the series, series has no location so it is written as unknown
+     */
+    public void write(AtmotubeSeries series, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            write(AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, series.getVOC(i), series.getTemperature(i), series.getHumidity(i),
+                    series.getPm1(i), series.getPm25(i), series.getPm10(i), series.getTime(i));
+        }
+    }
+
+    /**
+     * Write reading row, AQS is calculated from VOC and PM values
+     */
+    public void write(double lat, double lon, float voc, float temperature, float humidity,
+                      float pm1, float pm25, float pm10, long time) throws IOException {
+        if (mFinished) {
+            throw new IOException("Export is finished");
+        }
+        StringBuilder row = mRow;
+        row.setLength(0);
+        row.append(mStarted ? ',' : '[');
+        mStarted = true;
+        row.append('[');
+        appendNumber(row, lat);
+        row.append(',');
+        appendNumber(row, lon);
+        row.append(',');
+        row.append(AtmotubeAqs.getAQS(voc, pm1, pm25, pm10));
+        row.append(',');
+        appendNumber(row, Math.round(voc * 100.0) / 100.0);
+        row.append(',');
+        appendNumber(row, temperature);
+        row.append(',');
+        appendNumber(row, humidity);
+        row.append(',');
+        row.append(time);
+        row.append(']');
+        appendRow();
+    }
+
+    /**
+     * Append number as org.json does: integral values without fraction, others in shortest form
+     */
+    static void appendNumber(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON does not allow non-finite numbers: " + value);
+        }
+        if (Double.doubleToRawLongBits(value) == NEGATIVE_ZERO_BITS) {
+            out.append("-0");
+            return;
+        }
+        long longValue = (long) value;
+        if (value == (double) longValue) {
+            out.append(longValue);
+        } else {
+            out.append(value);
+        }
+    }
+
+    private void appendRow() throws IOException {
+        int length = mRow.length();
+        if (mChunkLength + length > CHUNK_SIZE) {
+            flushChunk();
+        }
+        mRow.getChars(0, length, mChunk, mChunkLength);
+        mChunkLength += length;
+    }
+
+    private void flushChunk() throws IOException {
+        if (mChunkLength > 0) {
+            mOut.write(mChunk, 0, mChunkLength);
+            mChunkLength = 0;
+        }
+    }
+
+    /**
+     * Write buffered rows to the output
+     */
+    @Override
+    public void flush() throws IOException {
+        flushChunk();
+        mOut.flush();
+    }
+
+    /**
+     * Close JSON array and flush, underlying output stays open
+     */
+    public void finish() throws IOException {
+        if (!mFinished) {
+            mRow.setLength(0);
+            mRow.append(mStarted ? "]" : "[]");
+            appendRow();
+            mFinished = true;
+            flush();
+        }
+    }
+
+    /**
+     * Finish and close underlying output
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            mOut.close();
+        }
+    }
+}
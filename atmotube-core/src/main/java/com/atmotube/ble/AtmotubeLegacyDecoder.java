@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atmotube.ble;
+
+/**
+ * Atmotube 1.0 and Atmotube 2.0 packet decoder, packets are recognized by {@link PacketSignature}
+ */
+final class AtmotubeLegacyDecoder implements AtmotubeDecoder {
+
+    // hardware id is not present in the packet
+    static final int HW_ID_NONE = -1;
+
+    @Override
+    public int decode(String name, String mac, byte[] scanRecord, int rssi, AtmotubeData target) {
+        int packet = PacketSignature.classify(scanRecord);
+        int type = packet & PacketSignature.VERSION_MASK;
+        if (type == PacketSignature.ATMOTUBE_UNKNOWN) {
+            // not possible
+            return DECODE_NOT_ATMOTUBE;
+        }
+        int shift = type == PacketSignature.ATMOTUBE_PACKET_V1 ? PacketSignature.ATMOTUBE_ID_VER_1_0_V1.length
+                : type == PacketSignature.ATMOTUBE_PACKET_V2 ? PacketSignature.ATMOTUBE_ID_VER_1_0_V2.length : PacketSignature.ATMOTUBE_ID_VER_1_0_V3.length;
+        int voc = AtmotubeBytes.uint16(scanRecord, shift + 4);
+        float vocF = (float) voc / 100;
+        int hum = AtmotubeDecoders.getHumidity(scanRecord[shift + 6]);
+        int temp = AtmotubeDecoders.getTemperature(scanRecord[shift + 7]);
+        int info = (int) scanRecord[shift + 8];
+        int shift2 = type == PacketSignature.ATMOTUBE_PACKET_V1 || type == PacketSignature.ATMOTUBE_PACKET_V2 ? shift : shift + 14;
+        char char1 = (char) (scanRecord[shift2 + 15] & 0xFF);
+        char char2 = (char) (scanRecord[shift2 + 16] & 0xFF);
+        String fwVer = null;
+        try {
+            if (scanRecord[shift2 + 17] > 0) {
+                fwVer = AtmotubeBytes.getFwVersion(scanRecord, shift2 + 17);
+            }
+        } catch (Exception ignore) {
+            // safeguard
+        }
+        if (fwVer == null) {
+            fwVer = new String(new char[]{char1, char2});
+        }
+        int adc = 0;
+        int hw = HW_ID_NONE;
+        boolean isActivated = true;
+        if ((packet & PacketSignature.FLAG_FACTORY) != 0) {
+            isActivated = false;
+            try {
+                fwVer = AtmotubeBytes.getFwVersion(scanRecord, shift2 + 9);
+                hw = AtmotubeBytes.uint16(scanRecord, shift + 12);
+            } catch (Exception ignore) {
+                // safeguard
+            }
+        }
+        if (!isActivated) {
+            adc = voc;
+        } else {
+            try {
+                adc = AtmotubeBytes.uint16(scanRecord, shift + 34);
+                hw = AtmotubeBytes.uint16(scanRecord, shift + 36);
+            } catch (Exception ignore) {
+                // safeguard
+            }
+        }
+        target.set(name, System.currentTimeMillis() / 1000, vocF, temp, hum, 0, info, adc, fwVer, scanRecord,
+                AtmotubeDecoders.getHardwareVer(fwVer, hw), mac, rssi, 0, 0, 0);
+        return DECODE_OK;
+    }
+}
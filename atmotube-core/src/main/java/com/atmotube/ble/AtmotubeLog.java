@@ -0,0 +1,602 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of decoded readings in memory-mapped segment files
+ * <p>
+ * Every reading is a fixed-size record with the values {@code UpdateDataHolder} writes to Parcel,
+ * so appending is a copy into the mapped segment. MAC and firmware version strings are stored
+ * once per device in a separate file and records refer to them by id. Each record carries
+ * a CRC32; on open, only the last segment is scanned and the log is truncated at the first
+ * record that does not pass the check, so a reading torn by a killed process is dropped.
+ * A new device entry is synced before the first record that refers to it, ids that were lost
+ * with a damaged devices file are never given to another device and their records are not read.
+ * <p>
+ * Only the segment being written is mapped all the time, older segments are mapped one at a time
+ * when read, so address space does not grow with the log.
+ * <p>
+ * Records have stable indexes, segment {@code n} holds indexes from {@code n * recordsPerSegment}.
+ * Records are in OS page cache as soon as they are appended, {@link #sync()} forces them to storage.
+ */
+public class AtmotubeLog implements Closeable {
+
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 64 * 1024;
+
+    static final int MAGIC = 0x41544c31; // "ATL1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // record layout
+    private static final int OFF_DEVICE = 0;
+    private static final int OFF_TIME = 4;
+    private static final int OFF_VOC = 12;
+    private static final int OFF_TEMPERATURE = 16;
+    private static final int OFF_HUMIDITY = 20;
+    private static final int OFF_PRESSURE = 24;
+    private static final int OFF_LAT = 28;
+    private static final int OFF_LON = 36;
+    private static final int OFF_ADC = 44;
+    private static final int OFF_HW_VER = 48;
+    private static final int OFF_INFO = 52;
+    private static final int OFF_BATTERY_VOLTAGE = 56;
+    private static final int OFF_ERROR_CODE = 60;
+    private static final int OFF_PM1 = 64;
+    private static final int OFF_PM25 = 68;
+    private static final int OFF_PM10 = 72;
+    private static final int OFF_DEVICE_CRC = 76;
+    private static final int OFF_BATTERY_PERCENTAGE = 80;
+    private static final int OFF_CHECKSUM = 84;
+    static final int RECORD_SIZE = 88;
+
+    // info byte is not known
+    private static final int NO_INFO = Integer.MIN_VALUE;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEVICES_FILE = "devices.dat";
+
+    private final File mDir;
+    private final int mRecordsPerSegment;
+    private final List<Segment> mSegments = new ArrayList<>();
+    private final byte[] mRecord = new byte[RECORD_SIZE];
+    private final ByteBuffer mRecordBuffer = ByteBuffer.wrap(mRecord);
+    private final CRC32 mCrc = new CRC32();
+
+    private final RandomAccessFile mDevicesFile;
+    private final List<Device> mDevices = new ArrayList<>();
+    private final HashMap<String, Device> mLastDevice = new HashMap<>();
+    private Device mLast;
+    // older segment mapped for reading
+    private Segment mReadSegment;
+
+    private long mNextIndex;
+    private boolean mClosed;
+
+    private static final class Segment {
+        final long mNumber;
+        final File mFile;
+        MappedByteBuffer mBuffer;
+
+        Segment(long number, File file) {
+            mNumber = number;
+            mFile = file;
+        }
+    }
+
+    private static final class Device {
+        final int mId;
+        final String mMac;
+        final String mFwVer;
+
+        Device(int id, String mac, String fwVer) {
+            mId = id;
+            mMac = mac;
+            mFwVer = fwVer;
+        }
+
+        boolean matches(String mac, String fwVer) {
+            return (mac == null ? mMac == null : mac.equals(mMac)) && (fwVer == null ? mFwVer == null : fwVer.equals(mFwVer));
+        }
+    }
+
+    public AtmotubeLog(File dir) throws IOException {
+        this(dir, DEFAULT_RECORDS_PER_SEGMENT);
+    }
+
+    /**
+     * Open existing log or create a new one, recovering from interrupted writes
+     *
+     * @param dir               log directory
+     * @param recordsPerSegment segment size for a new log, existing log keeps its own
+     */
+    public AtmotubeLog(File dir, int recordsPerSegment) throws IOException {
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("Records per segment must be positive: " + recordsPerSegment);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create log directory " + dir);
+        }
+        mDir = dir;
+        mDevicesFile = new RandomAccessFile(new File(dir, DEVICES_FILE), "rw");
+        boolean ok = false;
+        try {
+            boolean damaged = loadDevices();
+            mRecordsPerSegment = loadSegments(recordsPerSegment);
+            if (damaged) {
+                reserveLostIds();
+            }
+            ok = true;
+        } finally {
+            if (!ok) {
+                closeFiles();
+            }
+        }
+    }
+
+    private int loadSegments(int recordsPerSegment) throws IOException {
+        File[] files = mDir.listFiles();
+        List<Long> numbers = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException ignore) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        int perSegment = recordsPerSegment;
+        for (int i = 0; i < numbers.size(); i++) {
+            long number = numbers.get(i);
+            if (i > 0 && number != numbers.get(i - 1) + 1) {
+                throw new IOException("Segment " + numbers.get(i - 1) + " is followed by segment " + number);
+            }
+            Segment segment = new Segment(number, segmentFile(number));
+            // only the segment being written stays mapped
+            int segmentRecords = i == numbers.size() - 1 ? map(segment, 0) : readHeader(segment.mFile);
+            if (i == 0) {
+                perSegment = segmentRecords;
+            } else if (segmentRecords != perSegment) {
+                throw new IOException("Segment " + segment.mFile + " has " + segmentRecords + " records, expected " + perSegment);
+            }
+            mSegments.add(segment);
+        }
+        if (mSegments.isEmpty()) {
+            mNextIndex = 0;
+            return perSegment;
+        }
+        Segment last = mSegments.get(mSegments.size() - 1);
+        int count = 0;
+        while (count < perSegment && isValid(last.mBuffer, HEADER_SIZE + count * RECORD_SIZE)) {
+            count++;
+        }
+        if (count < perSegment) {
+            // drop torn record and everything after it, pages may have been written back out of order
+            // and older records behind the torn one must not reappear after new appends
+            last.mBuffer.position(HEADER_SIZE + count * RECORD_SIZE);
+            last.mBuffer.put(new byte[(perSegment - count) * RECORD_SIZE]);
+        }
+        mNextIndex = last.mNumber * perSegment + count;
+        return perSegment;
+    }
+
+    private File segmentFile(long number) {
+        return new File(mDir, String.format(Locale.US, "%012d", number) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Map segment file, creating it if records per segment is given
+     *
+     * @return records per segment from segment header
+     */
+    private int map(Segment segment, int createRecords) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment.mFile, "rw");
+        try {
+            if (createRecords > 0) {
+                file.setLength(HEADER_SIZE + (long) createRecords * RECORD_SIZE);
+            }
+            FileChannel channel = file.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Segment " + segment.mFile + " is too short");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (createRecords > 0) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, RECORD_SIZE);
+                buffer.putInt(12, createRecords);
+            }
+            checkHeader(segment.mFile, channel.size(), buffer.getInt(0), buffer.getInt(4), buffer.getInt(8),
+                    buffer.getInt(12));
+            segment.mBuffer = buffer;
+            return buffer.getInt(12);
+        } finally {
+            // mapping stays valid after the channel is closed
+            file.close();
+        }
+    }
+
+    /**
+     * Check segment header without mapping the segment
+     *
+     * @return records per segment from segment header
+     */
+    private static int readHeader(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if (in.length() < HEADER_SIZE) {
+                throw new IOException("Segment " + file + " is too short");
+            }
+            return checkHeader(file, in.length(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int checkHeader(File file, long size, int magic, int version, int recordSize, int records)
+            throws IOException {
+        if (magic != MAGIC || version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("Segment " + file + " is not a reading log segment");
+        }
+        if (records <= 0 || size < HEADER_SIZE + (long) records * RECORD_SIZE) {
+            throw new IOException("Segment " + file + " is truncated");
+        }
+        return records;
+    }
+
+    private MappedByteBuffer getReadBuffer(Segment segment) throws IOException {
+        if (segment.mBuffer == null) {
+            if (mReadSegment != null) {
+                mReadSegment.mBuffer = null;
+            }
+            map(segment, 0);
+            mReadSegment = segment;
+        }
+        return segment.mBuffer;
+    }
+
+    private boolean isValid(ByteBuffer segment, int offset) {
+        segment.position(offset);
+        segment.get(mRecord);
+        mCrc.reset();
+        mCrc.update(mRecord, 0, OFF_CHECKSUM);
+        return (int) mCrc.getValue() == mRecordBuffer.getInt(OFF_CHECKSUM);
+    }
+
+    /**
+     * Load device entries, an empty entry is an id lost with a damaged entry
+     *
+     * @return true if a damaged entry was dropped
+     */
+    private boolean loadDevices() throws IOException {
+        long valid = 0;
+        mDevicesFile.seek(0);
+        try {
+            while (true) {
+                int length = mDevicesFile.readInt();
+                if (length < 0 || length > mDevicesFile.length()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                mDevicesFile.readFully(payload);
+                int checksum = mDevicesFile.readInt();
+                mCrc.reset();
+                mCrc.update(payload, 0, length);
+                if ((int) mCrc.getValue() != checksum) {
+                    break;
+                }
+                if (length == 0) {
+                    mDevices.add(null);
+                    valid = mDevicesFile.getFilePointer();
+                    continue;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                String mac = in.readBoolean() ? in.readUTF() : null;
+                String fwVer = in.readBoolean() ? in.readUTF() : null;
+                Device device = new Device(mDevices.size(), mac, fwVer);
+                mDevices.add(device);
+                mLastDevice.put(mac, device);
+                valid = mDevicesFile.getFilePointer();
+            }
+        } catch (EOFException ignore) {
+            // torn entry at the end
+        }
+        boolean damaged = valid < mDevicesFile.length();
+        mDevicesFile.setLength(valid);
+        mDevicesFile.seek(valid);
+        return damaged;
+    }
+
+    /**
+     * Records written before a damaged devices entry may refer to ids that were lost with it,
+     * reserve ids up to the highest one found in records so that they are not given to new devices
+     */
+    private void reserveLostIds() throws IOException {
+        int max = -1;
+        for (Segment segment : mSegments) {
+            boolean mapped = segment.mBuffer != null;
+            if (!mapped) {
+                map(segment, 0);
+            }
+            for (int i = 0; i < mRecordsPerSegment; i++) {
+                if (isValid(segment.mBuffer, HEADER_SIZE + i * RECORD_SIZE)) {
+                    max = Math.max(max, mRecordBuffer.getInt(OFF_DEVICE));
+                }
+            }
+            if (!mapped) {
+                segment.mBuffer = null;
+            }
+        }
+        while (mDevices.size() <= max) {
+            writeDeviceEntry(new byte[0]);
+            mDevices.add(null);
+        }
+        mDevicesFile.getFD().sync();
+    }
+
+    private void writeDeviceEntry(byte[] payload) throws IOException {
+        mCrc.reset();
+        mCrc.update(payload, 0, payload.length);
+        mDevicesFile.writeInt(payload.length);
+        mDevicesFile.write(payload);
+        mDevicesFile.writeInt((int) mCrc.getValue());
+    }
+
+    private Device getDevice(String mac, String fwVer) throws IOException {
+        if (mLast != null && mLast.matches(mac, fwVer)) {
+            return mLast;
+        }
+        Device device = mLastDevice.get(mac);
+        if (device == null || !device.matches(mac, fwVer)) {
+            device = null;
+            for (Device d : mDevices) {
+                if (d != null && d.matches(mac, fwVer)) {
+                    device = d;
+                    break;
+                }
+            }
+        }
+        if (device == null) {
+            device = new Device(mDevices.size(), mac, fwVer);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeBoolean(mac != null);
+            if (mac != null) {
+                out.writeUTF(mac);
+            }
+            out.writeBoolean(fwVer != null);
+            if (fwVer != null) {
+                out.writeUTF(fwVer);
+            }
+            writeDeviceEntry(bytes.toByteArray());
+            // entry is on storage before any record refers to it, records may reach storage first otherwise
+            mDevicesFile.getFD().sync();
+            mDevices.add(device);
+        }
+        mLastDevice.put(mac, device);
+        mLast = device;
+        return device;
+    }
+
+    /**
+     * Append reading, raw packet data is not stored
+     *
+     * @param data reading
+     * @return record index
+     */
+    public synchronized long append(AtmotubeData data) throws IOException {
+        checkOpen();
+        Device device = getDevice(data.mMac, data.mFwVer);
+        ByteBuffer r = mRecordBuffer;
+        r.putInt(OFF_DEVICE, device.mId);
+        r.putLong(OFF_TIME, data.mTime);
+        r.putFloat(OFF_VOC, data.mVOC);
+        r.putFloat(OFF_TEMPERATURE, data.mTemperature);
+        r.putFloat(OFF_HUMIDITY, data.mHumidity);
+        r.putFloat(OFF_PRESSURE, data.mPressure);
+        r.putDouble(OFF_LAT, data.mLat);
+        r.putDouble(OFF_LON, data.mLon);
+        r.putInt(OFF_ADC, data.mADC);
+        r.putInt(OFF_HW_VER, data.mHwVer);
+        r.putInt(OFF_INFO, data.mInfo != null ? data.mInfo.getInfoByte() : NO_INFO);
+        r.putInt(OFF_BATTERY_VOLTAGE, data.mBatteryVoltage);
+        r.putInt(OFF_ERROR_CODE, data.mErrorCode);
+        r.putFloat(OFF_PM1, data.mPm1);
+        r.putFloat(OFF_PM25, data.mPm25);
+        r.putFloat(OFF_PM10, data.mPm10);
+        r.putInt(OFF_DEVICE_CRC, data.mDeviceCRC);
+        r.putInt(OFF_BATTERY_PERCENTAGE, data.mBatteryPercentage);
+        mCrc.reset();
+        mCrc.update(mRecord, 0, OFF_CHECKSUM);
+        r.putInt(OFF_CHECKSUM, (int) mCrc.getValue());
+
+        long index = mNextIndex;
+        Segment segment = getWriteSegment(index / mRecordsPerSegment);
+        segment.mBuffer.position(HEADER_SIZE + (int) (index % mRecordsPerSegment) * RECORD_SIZE);
+        segment.mBuffer.put(mRecord);
+        mNextIndex++;
+        return index;
+    }
+
+    private Segment getWriteSegment(long number) throws IOException {
+        if (!mSegments.isEmpty()) {
+            Segment last = mSegments.get(mSegments.size() - 1);
+            if (last.mNumber == number) {
+                return last;
+            }
+            // rollover, full segment goes to storage and is mapped again only when read
+            last.mBuffer.force();
+            last.mBuffer = null;
+        }
+        Segment segment = new Segment(number, segmentFile(number));
+        map(segment, mRecordsPerSegment);
+        mSegments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Read record
+     *
+     * @param index  record index from {@link #getFirstIndex()} to {@link #getNextIndex()} exclusive
+     * @param target holder to fill, it is reset first
+     * @return false if record is damaged or refers to a lost device entry, target stays in reset state
+     */
+    public synchronized boolean read(long index, AtmotubeData target) throws IOException {
+        checkOpen();
+        if (index < getFirstIndex() || index >= mNextIndex) {
+            throw new IndexOutOfBoundsException("Index " + index + ", log " + getFirstIndex() + ".." + mNextIndex);
+        }
+        target.reset();
+        long number = index / mRecordsPerSegment;
+        Segment segment = mSegments.get((int) (number - mSegments.get(0).mNumber));
+        if (!isValid(getReadBuffer(segment), HEADER_SIZE + (int) (index % mRecordsPerSegment) * RECORD_SIZE)) {
+            return false;
+        }
+        ByteBuffer r = mRecordBuffer;
+        int deviceId = r.getInt(OFF_DEVICE);
+        if (deviceId < 0 || deviceId >= mDevices.size()) {
+            return false;
+        }
+        Device device = mDevices.get(deviceId);
+        if (device == null) {
+            return false;
+        }
+        target.mMac = device.mMac;
+        target.mFwVer = device.mFwVer;
+        target.mTime = r.getLong(OFF_TIME);
+        target.mVOC = r.getFloat(OFF_VOC);
+        target.mTemperature = r.getFloat(OFF_TEMPERATURE);
+        target.mHumidity = r.getFloat(OFF_HUMIDITY);
+        target.mPressure = r.getFloat(OFF_PRESSURE);
+        target.mLat = r.getDouble(OFF_LAT);
+        target.mLon = r.getDouble(OFF_LON);
+        target.mADC = r.getInt(OFF_ADC);
+        target.mHwVer = r.getInt(OFF_HW_VER);
+        int info = r.getInt(OFF_INFO);
+        target.mInfo = info == NO_INFO ? null : AtmotubeInfo.valueOf(info, device.mFwVer);
+        target.mBatteryVoltage = r.getInt(OFF_BATTERY_VOLTAGE);
+        target.mErrorCode = r.getInt(OFF_ERROR_CODE);
+        target.mPm1 = r.getFloat(OFF_PM1);
+        target.mPm25 = r.getFloat(OFF_PM25);
+        target.mPm10 = r.getFloat(OFF_PM10);
+        target.mDeviceCRC = r.getInt(OFF_DEVICE_CRC);
+        target.mBatteryPercentage = r.getInt(OFF_BATTERY_PERCENTAGE);
+        return true;
+    }
+
+    /**
+     * @return index of the oldest record in the log
+     */
+    public synchronized long getFirstIndex() {
+        return mSegments.isEmpty() ? mNextIndex : Math.min(mSegments.get(0).mNumber * mRecordsPerSegment, mNextIndex);
+    }
+
+    /**
+     * @return index the next appended record gets
+     */
+    public synchronized long getNextIndex() {
+        return mNextIndex;
+    }
+
+    public int getRecordsPerSegment() {
+        return mRecordsPerSegment;
+    }
+
+    /**
+     * Delete whole segments with records before the index, e.g. after upload
+     *
+     * @param index first record to keep
+     * @return number of deleted records
+     */
+    public synchronized long deleteBefore(long index) throws IOException {
+        checkOpen();
+        long first = getFirstIndex();
+        // the segment being written is kept
+        while (mSegments.size() > 1 && (mSegments.get(0).mNumber + 1) * mRecordsPerSegment <= index) {
+            Segment segment = mSegments.remove(0);
+            segment.mBuffer = null;
+            if (segment == mReadSegment) {
+                mReadSegment = null;
+            }
+            if (!segment.mFile.delete()) {
+                throw new IOException("Can not delete segment " + segment.mFile);
+            }
+        }
+        return getFirstIndex() - first;
+    }
+
+    /**
+     * Force appended records and device entries to storage
+     */
+    public synchronized void sync() throws IOException {
+        checkOpen();
+        if (!mSegments.isEmpty()) {
+            mSegments.get(mSegments.size() - 1).mBuffer.force();
+        }
+        mDevicesFile.getFD().sync();
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Log is closed");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!mClosed) {
+            try {
+                sync();
+            } finally {
+                mClosed = true;
+                closeFiles();
+            }
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        for (Segment segment : mSegments) {
+            segment.mBuffer = null;
+        }
+        mSegments.clear();
+        mReadSegment = null;
+        mDevicesFile.close();
+    }
+}
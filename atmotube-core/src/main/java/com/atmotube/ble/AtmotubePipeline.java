@@ -0,0 +1,308 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves raw advertisements from the scan callback to a worker thread that decodes them in batches
+ * <p>
+ * {@link #offer} copies record bytes into a preallocated ring buffer slot and returns, so the
+ * Bluetooth callback thread is never held by decoding or consumers. The worker decodes up to
+ * batch size records into reused holders and calls {@link Listener#onBatch} once per batch.
+ * A batch is delivered when it is full or when the oldest record waited for the latency bound.
+ * If the ring is full, new records are dropped and counted. An exception thrown by the listener
+ * is counted and kept, see {@link #getFailedBatches()}, and the worker goes on with the next batch.
+ * <p>
+ * {@link #offer} must be called from one thread at a time, e.g. the scan callback thread.
+ */
+public class AtmotubePipeline {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 200;
+
+    // legacy advertising and scan response data
+    private static final int RECORD_LENGTH = 62;
+
+    /**
+     * Receives decoded readings on the worker thread
+     */
+    public interface Listener {
+        /**
+         * Called for every batch of decoded readings
+         * <p>
+         * Holders are reused for the next batch, copy them with {@link AtmotubeData#copyFrom} or
+         * {@link AtmotubeRegistry#update} to keep them.
+         *
+         * @param data  decoded readings
+         * @param count number of readings in the array
+         */
+        void onBatch(AtmotubeData[] data, int count);
+    }
+
+    private final int mMask;
+    private final int mBatchSize;
+    private final long mMaxLatencyNanos;
+    private final Listener mListener;
+
+    // ring slots
+    private final byte[][] mRecords;
+    private final String[] mNames;
+    private final String[] mMacs;
+    private final int[] mRssi;
+    private final long[] mTimes;
+    private final long[] mEnqueued;
+
+    private final AtmotubeData[] mBatch;
+
+    // next sequence to write, written by producer only
+    private final AtomicLong mHead = new AtomicLong();
+    // next sequence to read, written by worker only
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mDecoded = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mFailedBatches = new AtomicLong();
+    private volatile RuntimeException mLastError;
+
+    private volatile AtmotubeDeduplicator mDeduplicator;
+    private volatile boolean mKeepRaw;
+    private volatile boolean mRunning;
+    private volatile Thread mWorker;
+
+    public AtmotubePipeline(Listener listener) {
+        this(listener, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_MAX_LATENCY_MILLIS);
+    }
+
+    /**
+     * @param listener          batch listener
+     * @param capacity          ring size, rounded up to a power of two
+     * @param batchSize         maximal readings per batch
+     * @param maxLatencyMillis  maximal time a record waits for a full batch
+     */
+    public AtmotubePipeline(Listener listener, int capacity, int batchSize, long maxLatencyMillis) {
+        if (capacity <= 0 || batchSize <= 0 || maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Invalid pipeline configuration");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mBatchSize = Math.min(batchSize, size);
+        mMaxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        mListener = listener;
+        mRecords = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            mRecords[i] = new byte[RECORD_LENGTH];
+        }
+        mNames = new String[size];
+        mMacs = new String[size];
+        mRssi = new int[size];
+        mTimes = new long[size];
+        mEnqueued = new long[size];
+        mBatch = new AtmotubeData[mBatchSize];
+        for (int i = 0; i < mBatchSize; i++) {
+            mBatch[i] = new AtmotubeData();
+        }
+    }
+
+    /**
+     * Set deduplicator that drops repeated advertisements on the worker before decoding
+     *
+     * @param deduplicator deduplicator or null
+     */
+    public void setDeduplicator(AtmotubeDeduplicator deduplicator) {
+        mDeduplicator = deduplicator;
+    }
+
+    /**
+     * Keep raw packet bytes in delivered holders, they are copied for every reading. Disabled by default.
+     */
+    public void setKeepRaw(boolean keepRaw) {
+        mKeepRaw = keepRaw;
+    }
+
+    /**
+     * Start worker thread
+     */
+    public synchronized void start() {
+        if (mWorker != null) {
+            return;
+        }
+        mRunning = true;
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "AtmotubePipeline");
+        mWorker.start();
+    }
+
+    /**
+     * Stop worker thread after delivering queued records
+     */
+    public synchronized void stop() throws InterruptedException {
+        Thread worker = mWorker;
+        if (worker == null) {
+            return;
+        }
+        mRunning = false;
+        LockSupport.unpark(worker);
+        worker.join();
+        mWorker = null;
+    }
+
+    /**
+     * Queue raw advertisement, only the producer thread may call it
+     *
+     * @param name       device name, used to detect factory mode
+     * @param mac        device MAC address
+     * @param record     raw scan record bytes, copied
+     * @param rssi       RSSI
+     * @param timeMillis time the advertisement was received, wall clock
+     * @return false if the ring is full and the record was dropped
+     */
+    public boolean offer(String name, String mac, byte[] record, int rssi, long timeMillis) {
+        long head = mHead.get();
+        long size = head - mTail.get();
+        if (size > mMask || record == null) {
+            mDropped.incrementAndGet();
+            return false;
+        }
+        int slot = (int) head & mMask;
+        byte[] copy = mRecords[slot];
+        if (copy.length != record.length) {
+            // records have the same length in practice, so this happens once per slot
+            copy = new byte[record.length];
+            mRecords[slot] = copy;
+        }
+        System.arraycopy(record, 0, copy, 0, record.length);
+        mNames[slot] = name;
+        mMacs[slot] = mac;
+        mRssi[slot] = rssi;
+        mTimes[slot] = timeMillis;
+        mEnqueued[slot] = System.nanoTime();
+        mHead.lazySet(head + 1);
+        if (size == 0 || size + 1 == mBatchSize) {
+            Thread worker = mWorker;
+            if (worker != null) {
+                LockSupport.unpark(worker);
+            }
+        }
+        return true;
+    }
+
+    private void work() {
+        while (true) {
+            long tail = mTail.get();
+            long available = mHead.get() - tail;
+            if (available == 0) {
+                if (!mRunning) {
+                    return;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            if (available < mBatchSize && mRunning) {
+                long remaining = mMaxLatencyNanos - (System.nanoTime() - mEnqueued[(int) tail & mMask]);
+                if (remaining > 0) {
+                    LockSupport.parkNanos(this, remaining);
+                    continue;
+                }
+            }
+            drain(tail, (int) Math.min(available, mBatchSize));
+        }
+    }
+
+    private void drain(long tail, int count) {
+        AtmotubeDeduplicator deduplicator = mDeduplicator;
+        boolean keepRaw = mKeepRaw;
+        int decoded = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (tail + i) & mMask;
+            byte[] record = mRecords[slot];
+            String name = mNames[slot];
+            String mac = mMacs[slot];
+            mNames[slot] = null;
+            mMacs[slot] = null;
+            if (deduplicator != null && deduplicator.isDuplicate(mac, record, mTimes[slot])) {
+                continue;
+            }
+            AtmotubeData target = mBatch[decoded];
+            if (AtmotubeDecoders.decode(name, mac, record, mRssi[slot], target) == AtmotubeDecoder.DECODE_OK) {
+                target.setTime(mTimes[slot] / 1000);
+                target.setRawBytes(keepRaw ? record.clone() : null);
+                decoded++;
+            } else {
+                mRejected.incrementAndGet();
+            }
+        }
+        // slots are free before listener runs, so a slow listener does not stall the producer
+        mTail.lazySet(tail + count);
+        mDecoded.addAndGet(decoded);
+        if (decoded > 0) {
+            try {
+                mListener.onBatch(mBatch, decoded);
+            } catch (RuntimeException e) {
+                // keep the worker alive, otherwise every later record is dropped
+                mLastError = e;
+                mFailedBatches.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return number of records dropped because the ring was full
+     */
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * @return number of delivered readings
+     */
+    public long getDecoded() {
+        return mDecoded.get();
+    }
+
+    /**
+     * @return number of records that were not Atmotube or were corrupted
+     */
+    public long getRejected() {
+        return mRejected.get();
+    }
+
+    /**
+     * @return number of batches for which the listener threw an exception
+     */
+    public long getFailedBatches() {
+        return mFailedBatches.get();
+    }
+
+    /**
+     * @return the last exception thrown by the listener, null if none
+     */
+    public RuntimeException getLastError() {
+        return mLastError;
+    }
+}
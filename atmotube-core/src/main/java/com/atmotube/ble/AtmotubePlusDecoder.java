@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atmotube.ble;
+
+/**
+ * Atmotube PLUS (service {@link AtmotubeConstants#ATMOTUBE_SERVICE_UUID_V3}) packet decoder
+ */
+final class AtmotubePlusDecoder implements AtmotubeDecoder, AtmotubeDecoder.DeviceCrcLayout {
+
+    // advertising and scan response manufacturer data
+    private static final int[] MEASUREMENT_RANGES = {7, 19, 51, 60};
+    private static final int DEVICE_CRC_OFFSET = 9;
+
+    @Override
+    public int getDeviceCrcOffset() {
+        return DEVICE_CRC_OFFSET;
+    }
+
+    @Override
+    public int[] getMeasurementRanges() {
+        return MEASUREMENT_RANGES;
+    }
+
+    @Override
+    public int decode(String name, String mac, byte[] bytes, int rssi, AtmotubeData target) {
+        int shift = 7;
+        int voc = AtmotubeBytes.uint16(bytes, shift);
+        shift += 2;
+        float vocF = (float) voc / 1000;
+        int deviceCRC = AtmotubeBytes.uint16(bytes, shift);
+        shift += 2;
+        int hum = AtmotubeDecoders.getHumidity(bytes[shift++]);
+        int temp = AtmotubeDecoders.getTemperature(bytes[shift++]);
+        int p = AtmotubeBytes.int32(bytes, shift);
+        if (p < 0) {
+            // out of int range
+            return DECODE_CORRUPTED;
+        }
+        shift += 4;
+        float pressure = (float) p / 100;
+        int info = (int) bytes[shift++];
+        int batteryPercentage = (int) bytes[shift];
+        shift = 51;
+        int baseline = AtmotubeBytes.uint16(bytes, shift);
+        int batteryVoltage = AtmotubeBytes.uint16(bytes, shift + 2);
+        shift = 57;
+        String fwVer = AtmotubeBytes.getFwVersion(bytes, shift);
+        target.set(name, System.currentTimeMillis() / 1000, vocF, temp, hum, pressure, info, baseline, fwVer, bytes,
+                AtmotubeData.HW_VER_PLUS, mac, rssi, batteryVoltage, batteryPercentage, 0);
+        target.setDeviceCRC(deviceCRC);
+        return DECODE_OK;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest state of every Atmotube in range, keyed by MAC address
+ * <p>
+ * MAC is parsed into a {@code long} key and looked up in an open-addressing table without locks.
+ * Each device keeps an immutable snapshot that is replaced with compare-and-set, so the scanner
+ * thread never blocks and readers always get a consistent reading. Only the first packet of a new
+ * device takes a lock to publish a larger copy of the table.
+ * <p>
+ * Devices are indexed in the order they were first seen, which fits list adapters.
+ * Snapshots must not be modified.
+ */
+public class AtmotubeRegistry {
+
+    public static final long INVALID_MAC = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // key stored in the table, MAC 00:00:00:00:00:00 must not look like an empty slot
+    private static final long KEY_PRESENT = 1L << 48;
+
+    // state of a removed entry, an update that finds it goes through insert
+    private static final AtmotubeData REMOVED = new AtmotubeData();
+
+    private volatile Table mTable;
+
+    private static final class Entry {
+        final long mKey;
+        final AtomicReference<AtmotubeData> mState;
+        // position in the current table order
+        volatile int mIndex;
+        // last state before removal, for readers of the previous table
+        AtmotubeData mRemovedState;
+
+        Entry(long key, AtmotubeData state) {
+            mKey = key;
+            mState = new AtomicReference<>(state);
+        }
+
+        AtmotubeData getState() {
+            AtmotubeData state = mState.get();
+            return state == REMOVED ? mRemovedState : state;
+        }
+
+        /**
+         * Replace the state with {@link #REMOVED} if it is older than the time
+         *
+         * @return true if removed
+         */
+        boolean removeOlderThan(long time) {
+            while (true) {
+                AtmotubeData state = mState.get();
+                if (state == REMOVED) {
+                    return true;
+                }
+                if (state.getTime() >= time) {
+                    return false;
+                }
+                mRemovedState = state;
+                if (mState.compareAndSet(state, REMOVED)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static final class Table {
+        // open-addressing slots, 0 is empty
+        final long[] mKeys;
+        final Entry[] mSlots;
+        // entries in the order devices were first seen
+        final Entry[] mOrder;
+
+        Table(int capacity, Entry[] order) {
+            mKeys = new long[capacity];
+            mSlots = new Entry[capacity];
+            mOrder = order;
+            for (int i = 0; i < order.length; i++) {
+                Entry entry = order[i];
+                entry.mIndex = i;
+                int slot = slot(entry.mKey, capacity);
+                while (mKeys[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                mKeys[slot] = entry.mKey;
+                mSlots[slot] = entry;
+            }
+        }
+
+        Entry find(long key) {
+            int mask = mKeys.length - 1;
+            int slot = slot(key, mKeys.length);
+            long k;
+            while ((k = mKeys[slot]) != 0) {
+                if (k == key) {
+                    return mSlots[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int slot(long key, int capacity) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (capacity - 1);
+        }
+    }
+
+    public AtmotubeRegistry() {
+        mTable = new Table(DEFAULT_CAPACITY, new Entry[0]);
+    }
+
+    /**
+     * Parse MAC address in {@code XX:XX:XX:XX:XX:XX} form without allocations
+     *
+     * @param mac MAC address, upper or lower case
+     * @return 48-bit MAC value or {@link #INVALID_MAC}
+     */
+    public static long parseMac(String mac) {
+        if (mac == null || mac.length() != 17) {
+            return INVALID_MAC;
+        }
+        long value = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = mac.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return INVALID_MAC;
+                }
+                continue;
+            }
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'A' && c <= 'F') {
+                digit = c - 'A' + 10;
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return INVALID_MAC;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Store reading as the latest state of its device
+     * <p>
+     * Values that are unknown in the reading (VOC, temperature, humidity, pressure, PM, info and firmware)
+     * are kept from the previous state, the same way {@link AtmotubeData#updateData(AtmotubeData)} keeps them.
+     * Location is always taken from the reading, PM is not kept when the info says PM is off.
+     * The reading itself is copied and can be reused by the caller.
+     *
+     * @param data decoded reading with MAC address
+     * @return device index
+     * @throws IllegalArgumentException if MAC address is missing or malformed
+     */
+    public int update(AtmotubeData data) {
+        long mac = parseMac(data.getMac());
+        if (mac == INVALID_MAC) {
+            throw new IllegalArgumentException("Invalid MAC address " + data.getMac());
+        }
+        AtmotubeData next = new AtmotubeData();
+        Entry entry = mTable.find(mac | KEY_PRESENT);
+        while (true) {
+            if (entry == null) {
+                next.copyFrom(data);
+                entry = insert(mac | KEY_PRESENT, next);
+                if (entry.mState.get() == next) {
+                    return entry.mIndex;
+                }
+            }
+            AtmotubeData previous = entry.mState.get();
+            if (previous == REMOVED) {
+                // entry was found in a table replaced by removeOlderThan, the device is added again
+                entry = null;
+                continue;
+            }
+            next.copyFrom(data);
+            merge(previous, next);
+            if (entry.mState.compareAndSet(previous, next)) {
+                return entry.mIndex;
+            }
+        }
+    }
+
+    private synchronized Entry insert(long key, AtmotubeData state) {
+        Table table = mTable;
+        Entry entry = table.find(key);
+        if (entry != null) {
+            // added by another thread
+            return entry;
+        }
+        entry = new Entry(key, state);
+        int size = table.mOrder.length + 1;
+        Entry[] order = new Entry[size];
+        System.arraycopy(table.mOrder, 0, order, 0, size - 1);
+        order[size - 1] = entry;
+        int capacity = table.mKeys.length;
+        while (size * 2 > capacity) {
+            capacity *= 2;
+        }
+        mTable = new Table(capacity, order);
+        return entry;
+    }
+
+    private static void merge(AtmotubeData previous, AtmotubeData next) {
+        if (next.mVOC == AtmotubeData.UNKNOWN) {
+            next.mVOC = previous.mVOC;
+        }
+        if (next.mTemperature == AtmotubeData.UNKNOWN) {
+            next.mTemperature = previous.mTemperature;
+        }
+        if (next.mHumidity == AtmotubeData.UNKNOWN) {
+            next.mHumidity = previous.mHumidity;
+        }
+        if (next.mPressure == AtmotubeData.UNKNOWN) {
+            next.mPressure = previous.mPressure;
+        }
+        if (next.mInfo == null) {
+            next.mInfo = previous.mInfo;
+        }
+        // PM switched off is not a missing value
+        if (next.mPm1 == AtmotubeData.UNKNOWN && next.mPm25 == AtmotubeData.UNKNOWN && next.mPm10 == AtmotubeData.UNKNOWN
+                && (next.mInfo == null || next.mInfo.mIsPmOn)) {
+            next.mPm1 = previous.mPm1;
+            next.mPm25 = previous.mPm25;
+            next.mPm10 = previous.mPm10;
+        }
+        if (next.mFwVer == null) {
+            next.mFwVer = previous.mFwVer;
+        }
+    }
+
+    /**
+     * @param mac MAC address
+     * @return latest state or null if device was not seen
+     */
+    public AtmotubeData get(String mac) {
+        long key = parseMac(mac);
+        return key == INVALID_MAC ? null : get(key);
+    }
+
+    /**
+     * @param mac MAC value from {@link #parseMac(String)}
+     * @return latest state or null if device was not seen
+     */
+    public AtmotubeData get(long mac) {
+        Entry entry = mTable.find(mac | KEY_PRESENT);
+        return entry != null ? entry.getState() : null;
+    }
+
+    /**
+     * @param index device index from 0 to {@link #size()} exclusive
+     * @return latest state
+     */
+    public AtmotubeData get(int index) {
+        return mTable.mOrder[index].getState();
+    }
+
+    public int size() {
+        return mTable.mOrder.length;
+    }
+
+    /**
+     * Get latest states of all devices, in the order devices were first seen
+     *
+     * @return new list of snapshots
+     */
+    public List<AtmotubeData> getAll() {
+        Entry[] order = mTable.mOrder;
+        List<AtmotubeData> list = new ArrayList<>(order.length);
+        for (Entry entry : order) {
+            list.add(entry.getState());
+        }
+        return list;
+    }
+
+    /**
+     * Remove devices not updated since the time, indexes of remaining devices shift
+     *
+     * @param time time in seconds, compared with {@link AtmotubeData#getTime()}
+     * @return number of removed devices
+     */
+    public synchronized int removeOlderThan(long time) {
+        Table table = mTable;
+        List<Entry> kept = new ArrayList<>(table.mOrder.length);
+        for (Entry entry : table.mOrder) {
+            // an update racing with removal either refreshes the entry first or sees it removed
+            if (!entry.removeOlderThan(time)) {
+                kept.add(entry);
+            }
+        }
+        int removed = table.mOrder.length - kept.size();
+        if (removed > 0) {
+            mTable = new Table(table.mKeys.length, kept.toArray(new Entry[0]));
+        }
+        return removed;
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : mTable.mOrder) {
+            entry.removeOlderThan(Long.MAX_VALUE);
+        }
+        mTable = new Table(DEFAULT_CAPACITY, new Entry[0]);
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays captured advertisements through deduplication, decoding and registry
+ * <p>
+ * The capture is loaded into memory first, so replay measures the processing path and not file reading.
+ * Advertisements are replayed at original speed, at a multiple of it or as fast as possible, on the calling
+ * thread. Every advertisement may be replayed for several synthetic devices to simulate a larger fleet.
+ */
+public class AtmotubeReplay {
+
+    // replay without pauses
+    public static final double SPEED_MAX = 0;
+
+    public static final int STAGE_DEDUP = 0;
+    public static final int STAGE_DECODE = 1;
+    public static final int STAGE_REGISTRY = 2;
+    private static final int STAGES = 3;
+
+    /**
+     * Replay statistics, latencies include about 20-30 ns of timer overhead
+     */
+    public static class Result {
+        private long mAdvertisements;
+        private long mDecoded;
+        private long mDuplicates;
+        private long mRejected;
+        private long mElapsedNanos;
+        private long mMaxLagNanos;
+        private final long[] mStageNanos = new long[STAGES];
+        private final long[] mStageMaxNanos = new long[STAGES];
+        private final long[] mStageCount = new long[STAGES];
+
+        public long getAdvertisements() {
+            return mAdvertisements;
+        }
+
+        public long getDecoded() {
+            return mDecoded;
+        }
+
+        public long getDuplicates() {
+            return mDuplicates;
+        }
+
+        /**
+         * @return advertisements that were not Atmotube or were corrupted
+         */
+        public long getRejected() {
+            return mRejected;
+        }
+
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * @return advertisements per second
+         */
+        public double getThroughput() {
+            return mElapsedNanos == 0 ? 0 : mAdvertisements * 1e9 / mElapsedNanos;
+        }
+
+        /**
+         * @return maximal delay behind the original timeline, 0 for {@link #SPEED_MAX}
+         */
+        public long getMaxLagNanos() {
+            return mMaxLagNanos;
+        }
+
+        /**
+         * @param stage one of STAGE_* constants
+         * @return mean stage latency or 0 if stage did not run
+         */
+        public double getMeanNanos(int stage) {
+            return mStageCount[stage] == 0 ? 0 : (double) mStageNanos[stage] / mStageCount[stage];
+        }
+
+        public long getMaxNanos(int stage) {
+            return mStageMaxNanos[stage];
+        }
+
+        private void add(int stage, long nanos) {
+            mStageNanos[stage] += nanos;
+            mStageCount[stage]++;
+            if (nanos > mStageMaxNanos[stage]) {
+                mStageMaxNanos[stage] = nanos;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d advertisements in %.1f ms (%.0f/s), decoded %d, duplicates %d, rejected %d, max lag %.1f ms, "
+                            + "dedup %.0f/%d ns, decode %.0f/%d ns, registry %.0f/%d ns (mean/max)",
+                    mAdvertisements, mElapsedNanos / 1e6, getThroughput(), mDecoded, mDuplicates, mRejected,
+                    mMaxLagNanos / 1e6,
+                    getMeanNanos(STAGE_DEDUP), mStageMaxNanos[STAGE_DEDUP],
+                    getMeanNanos(STAGE_DECODE), mStageMaxNanos[STAGE_DECODE],
+                    getMeanNanos(STAGE_REGISTRY), mStageMaxNanos[STAGE_REGISTRY]);
+        }
+    }
+
+    private final int mSize;
+    private final long[] mTimes;
+    private final int[] mRssi;
+    private final String[] mNames;
+    private final byte[][] mRecords;
+    // device addresses per advertisement and copy
+    private final String[][] mMacs;
+
+    private AtmotubeDeduplicator mDeduplicator;
+    private AtmotubeRegistry mRegistry;
+    private final AtmotubeData mData = new AtmotubeData();
+
+    public AtmotubeReplay(AtmotubeCaptureReader reader) throws IOException {
+        this(reader, 1);
+    }
+
+    /**
+     * Load capture
+     *
+     * @param reader capture to load, read to the end
+     * @param copies number of devices every captured device is replayed for, copies get distinct synthetic addresses
+     */
+    public AtmotubeReplay(AtmotubeCaptureReader reader, int copies) throws IOException {
+        if (copies < 1 || copies > 0x10000) {
+            throw new IllegalArgumentException("Invalid copies " + copies);
+        }
+        int capacity = 1024;
+        long[] times = new long[capacity];
+        int[] rssi = new int[capacity];
+        String[] names = new String[capacity];
+        byte[][] records = new byte[capacity][];
+        int[] deviceOf = new int[capacity];
+        Map<String, Integer> devices = new HashMap<>();
+        List<String> deviceMacs = new ArrayList<>();
+        Map<String, String> strings = new HashMap<>();
+        int size = 0;
+        while (reader.next()) {
+            if (size == capacity) {
+                capacity *= 2;
+                times = Arrays.copyOf(times, capacity);
+                rssi = Arrays.copyOf(rssi, capacity);
+                names = Arrays.copyOf(names, capacity);
+                records = Arrays.copyOf(records, capacity);
+                deviceOf = Arrays.copyOf(deviceOf, capacity);
+            }
+            String mac = reader.getMac();
+            Integer device = devices.get(mac);
+            if (device == null) {
+                device = deviceMacs.size();
+                devices.put(mac, device);
+                deviceMacs.add(mac);
+            }
+            String name = reader.getName();
+            if (name != null) {
+                String shared = strings.get(name);
+                if (shared == null) {
+                    strings.put(name, name);
+                } else {
+                    name = shared;
+                }
+            }
+            times[size] = reader.getTime();
+            rssi[size] = reader.getRssi();
+            names[size] = name;
+            records[size] = reader.getRecord();
+            deviceOf[size] = device;
+            size++;
+        }
+        String[][] deviceCopies = getCopies(deviceMacs, copies);
+        String[][] macs = new String[size][];
+        for (int i = 0; i < size; i++) {
+            macs[i] = deviceCopies[deviceOf[i]];
+        }
+        mSize = size;
+        mTimes = times;
+        mRssi = rssi;
+        mNames = names;
+        mRecords = records;
+        mMacs = macs;
+    }
+
+    /**
+     * Copy 0 is the device itself, other copies replace the first two address bytes. Prefixes that give
+     * an address of a captured device or of another copy are skipped, so every copy is a distinct device.
+     */
+    private static String[][] getCopies(List<String> deviceMacs, int copies) {
+        Set<String> used = new HashSet<>();
+        for (String mac : deviceMacs) {
+            used.add(mac.toUpperCase(Locale.US));
+        }
+        String[][] result = new String[deviceMacs.size()][];
+        for (int d = 0; d < result.length; d++) {
+            String mac = deviceMacs.get(d);
+            String suffix = mac.length() > 5 ? mac.substring(5) : "";
+            String[] copiesOfMac = new String[copies];
+            copiesOfMac[0] = mac;
+            int prefix = 0;
+            for (int i = 1; i < copies; i++) {
+                String copy;
+                do {
+                    if (++prefix > 0xFFFF) {
+                        throw new IllegalArgumentException("No free addresses for " + copies + " copies of " + mac);
+                    }
+                    copy = String.format(Locale.US, "%02X:%02X", prefix >> 8, prefix & 0xFF) + suffix;
+                } while (!used.add(copy.toUpperCase(Locale.US)));
+                copiesOfMac[i] = copy;
+            }
+            result[d] = copiesOfMac;
+        }
+        return result;
+    }
+
+    /**
+     * @return number of captured advertisements
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Drop repeated advertisements before decoding
+     *
+     * @param deduplicator deduplicator or null
+     */
+    public void setDeduplicator(AtmotubeDeduplicator deduplicator) {
+        mDeduplicator = deduplicator;
+    }
+
+    /**
+     * Update registry with decoded readings
+     *
+     * @param registry registry or null
+     */
+    public void setRegistry(AtmotubeRegistry registry) {
+        mRegistry = registry;
+    }
+
+    /**
+     * Replay all advertisements
+     *
+     * @param speed multiple of original speed, 1 for original speed or {@link #SPEED_MAX}
+     * @return statistics
+     */
+    public Result run(double speed) {
+        if (speed < 0 || speed != speed) {
+            throw new IllegalArgumentException("Invalid speed " + speed);
+        }
+        Result result = new Result();
+        AtmotubeDeduplicator deduplicator = mDeduplicator;
+        AtmotubeRegistry registry = mRegistry;
+        long start = System.nanoTime();
+        long firstTime = mSize > 0 ? mTimes[0] : 0;
+        for (int i = 0; i < mSize; i++) {
+            if (speed != SPEED_MAX) {
+                long due = start + (long) (TimeUnit.MILLISECONDS.toNanos(mTimes[i] - firstTime) / speed);
+                long now = System.nanoTime();
+                while (now < due) {
+                    LockSupport.parkNanos(due - now);
+                    now = System.nanoTime();
+                }
+                result.mMaxLagNanos = Math.max(result.mMaxLagNanos, now - due);
+            }
+            byte[] record = mRecords[i];
+            String[] macs = mMacs[i];
+            for (String mac : macs) {
+                result.mAdvertisements++;
+                long t0 = System.nanoTime();
+                if (deduplicator != null) {
+                    boolean duplicate = deduplicator.isDuplicate(mac, record, mTimes[i]);
+                    long t1 = System.nanoTime();
+                    result.add(STAGE_DEDUP, t1 - t0);
+                    t0 = t1;
+                    if (duplicate) {
+                        result.mDuplicates++;
+                        continue;
+                    }
+                }
+                int status = AtmotubeDecoders.decode(mNames[i], mac, record, mRssi[i], mData);
+                long t1 = System.nanoTime();
+                result.add(STAGE_DECODE, t1 - t0);
+                if (status != AtmotubeDecoder.DECODE_OK) {
+                    result.mRejected++;
+                    continue;
+                }
+                // capture time keeps replay deterministic
+                mData.setTime(mTimes[i] / 1000);
+                result.mDecoded++;
+                if (registry != null) {
+                    registry.update(mData);
+                    result.add(STAGE_REGISTRY, System.nanoTime() - t1);
+                }
+            }
+        }
+        result.mElapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+}
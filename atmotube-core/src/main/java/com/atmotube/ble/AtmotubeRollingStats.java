@@ -0,0 +1,389 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+/**
+ * Sliding window statistics of one device, updated incrementally with every reading
+ * <p>
+ * Every window keeps count, sum, minimum and maximum (monotonic deques) and a log-scale histogram
+ * for approximate percentiles of VOC, PM2.5 and AQS, so queries do not depend on window length.
+ * A window covers readings with time in {@code (last - length, last]}, where last is the time of the
+ * latest reading or {@link #advanceTo(long)}. Unknown values and PM off values are skipped.
+ * <p>
+ * Readings must be added in time order. Not thread safe.
+ */
+public class AtmotubeRollingStats {
+
+    public static final int METRIC_VOC = 0;
+    public static final int METRIC_PM25 = 1;
+    public static final int METRIC_AQS = 2;
+    private static final int METRICS = 3;
+
+    public static final long WINDOW_1_MINUTE = 60;
+    public static final long WINDOW_15_MINUTES = 15 * 60;
+    public static final long WINDOW_24_HOURS = 24 * 60 * 60;
+
+    // histogram: bucket 0 for values below 2^MIN_EXP, 8 buckets per power of two, last bucket for 2^MAX_EXP and above
+    private static final int MIN_EXP = -10;
+    private static final int MAX_EXP = 16;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = ((MAX_EXP - MIN_EXP) << SUB_BITS) + 2;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private class Window {
+        final long mLength;
+        // sequence of the oldest reading in window
+        long mStart;
+        final int[] mCount = new int[METRICS];
+        final double[] mSum = new double[METRICS];
+        final int[][] mHistogram = new int[METRICS][BUCKETS];
+        final SeqDeque[] mMin = new SeqDeque[METRICS];
+        final SeqDeque[] mMax = new SeqDeque[METRICS];
+
+        Window(long length) {
+            mLength = length;
+            for (int i = 0; i < METRICS; i++) {
+                mMin[i] = new SeqDeque();
+                mMax[i] = new SeqDeque();
+            }
+        }
+
+        void add(long seq) {
+            for (int m = 0; m < METRICS; m++) {
+                float value = value(m, seq);
+                if (value == AtmotubeData.UNKNOWN) {
+                    continue;
+                }
+                mCount[m]++;
+                mSum[m] += value;
+                mHistogram[m][bucket(value)]++;
+                SeqDeque min = mMin[m];
+                while (!min.isEmpty() && value(m, min.peekLast()) >= value) {
+                    min.pollLast();
+                }
+                min.addLast(seq);
+                SeqDeque max = mMax[m];
+                while (!max.isEmpty() && value(m, max.peekLast()) <= value) {
+                    max.pollLast();
+                }
+                max.addLast(seq);
+            }
+        }
+
+        void evict(long time) {
+            long limit = time - mLength;
+            while (mStart < mNext && mTimes[index(mStart)] <= limit) {
+                for (int m = 0; m < METRICS; m++) {
+                    float value = value(m, mStart);
+                    if (value == AtmotubeData.UNKNOWN) {
+                        continue;
+                    }
+                    if (--mCount[m] == 0) {
+                        // no rounding drift in empty window
+                        mSum[m] = 0;
+                    } else {
+                        mSum[m] -= value;
+                    }
+                    mHistogram[m][bucket(value)]--;
+                    if (mMin[m].peekFirst() == mStart) {
+                        mMin[m].pollFirst();
+                    }
+                    if (mMax[m].peekFirst() == mStart) {
+                        mMax[m].pollFirst();
+                    }
+                }
+                mStart++;
+            }
+        }
+    }
+
+    // growable ring of reading sequence numbers
+    private static class SeqDeque {
+        private long[] mItems = new long[16];
+        private int mHead;
+        private int mSize;
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        long peekFirst() {
+            return mSize == 0 ? -1 : mItems[mHead];
+        }
+
+        long peekLast() {
+            return mItems[(mHead + mSize - 1) & (mItems.length - 1)];
+        }
+
+        void pollFirst() {
+            mHead = (mHead + 1) & (mItems.length - 1);
+            mSize--;
+        }
+
+        void pollLast() {
+            mSize--;
+        }
+
+        void addLast(long seq) {
+            if (mSize == mItems.length) {
+                long[] items = new long[mItems.length * 2];
+                for (int i = 0; i < mSize; i++) {
+                    items[i] = mItems[(mHead + i) & (mItems.length - 1)];
+                }
+                mItems = items;
+                mHead = 0;
+            }
+            mItems[(mHead + mSize) & (mItems.length - 1)] = seq;
+            mSize++;
+        }
+    }
+
+    private final Window[] mWindows;
+
+    // readings of the longest window, indexed by sequence & mask
+    private long[] mTimes;
+    private float[][] mValues;
+    private int mMask;
+    private long mFirst;
+    private long mNext;
+    private long mLastTime = Long.MIN_VALUE;
+
+    /**
+     * Statistics for 1 minute, 15 minutes and 24 hours windows
+     */
+    public AtmotubeRollingStats() {
+        this(WINDOW_1_MINUTE, WINDOW_15_MINUTES, WINDOW_24_HOURS);
+    }
+
+    /**
+     * @param windowSeconds window lengths in seconds, queries use the index of a window in this list
+     */
+    public AtmotubeRollingStats(long... windowSeconds) {
+        if (windowSeconds.length == 0) {
+            throw new IllegalArgumentException("No windows");
+        }
+        mWindows = new Window[windowSeconds.length];
+        for (int i = 0; i < windowSeconds.length; i++) {
+            if (windowSeconds[i] <= 0) {
+                throw new IllegalArgumentException("Invalid window " + windowSeconds[i]);
+            }
+            mWindows[i] = new Window(windowSeconds[i]);
+        }
+        mTimes = new long[DEFAULT_CAPACITY];
+        mValues = new float[METRICS][DEFAULT_CAPACITY];
+        mMask = DEFAULT_CAPACITY - 1;
+    }
+
+    /**
+     * Add reading
+     *
+     * @param data reading
+     * @throws IllegalArgumentException if reading is older than the latest reading
+     */
+    public void add(AtmotubeData data) {
+        long time = data.getTime();
+        if (time < mLastTime) {
+            throw new IllegalArgumentException("Reading at " + time + " is older than " + mLastTime);
+        }
+        float voc = data.getVOC();
+        float pm1 = data.getPm1();
+        float pm25 = data.getPm25();
+        float pm10 = data.getPm10();
+        boolean hasPm = isKnownPm(pm1) && isKnownPm(pm25) && isKnownPm(pm10);
+        float aqs = AtmotubeData.UNKNOWN;
+        if (voc != AtmotubeData.UNKNOWN) {
+            aqs = hasPm ? AtmotubeAqs.getAQS(voc, pm1, pm25, pm10) : AtmotubeAqs.getAQS(voc);
+        }
+        advanceTo(time);
+        if (mNext - mFirst > mMask) {
+            grow();
+        }
+        int index = index(mNext);
+        mTimes[index] = time;
+        mValues[METRIC_VOC][index] = voc;
+        mValues[METRIC_PM25][index] = isKnownPm(pm25) ? pm25 : AtmotubeData.UNKNOWN;
+        mValues[METRIC_AQS][index] = aqs;
+        long seq = mNext++;
+        for (Window window : mWindows) {
+            window.add(seq);
+        }
+    }
+
+    /**
+     * Move windows to time without a reading, e.g. when the device stopped advertising
+     *
+     * @param time time in seconds, earlier times are ignored
+     */
+    public void advanceTo(long time) {
+        if (time < mLastTime) {
+            return;
+        }
+        mLastTime = time;
+        long first = mNext;
+        for (Window window : mWindows) {
+            window.evict(time);
+            first = Math.min(first, window.mStart);
+        }
+        mFirst = first;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mWindows.length; i++) {
+            mWindows[i] = new Window(mWindows[i].mLength);
+        }
+        mFirst = 0;
+        mNext = 0;
+        mLastTime = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return time of the latest reading or {@link #advanceTo(long)}
+     */
+    public long getTime() {
+        return mLastTime;
+    }
+
+    public int getWindowCount() {
+        return mWindows.length;
+    }
+
+    public long getWindowLength(int window) {
+        return mWindows[window].mLength;
+    }
+
+    /**
+     * @param window window index
+     * @param metric one of METRIC_* constants
+     * @return number of known values in window
+     */
+    public int getCount(int window, int metric) {
+        return mWindows[window].mCount[metric];
+    }
+
+    /**
+     * @return mean value or {@link AtmotubeData#UNKNOWN} for empty window
+     */
+    public float getMean(int window, int metric) {
+        Window w = mWindows[window];
+        int count = w.mCount[metric];
+        return count == 0 ? AtmotubeData.UNKNOWN : (float) (w.mSum[metric] / count);
+    }
+
+    /**
+     * @return minimal value or {@link AtmotubeData#UNKNOWN} for empty window
+     */
+    public float getMin(int window, int metric) {
+        SeqDeque min = mWindows[window].mMin[metric];
+        return min.isEmpty() ? AtmotubeData.UNKNOWN : value(metric, min.peekFirst());
+    }
+
+    /**
+     * @return maximal value or {@link AtmotubeData#UNKNOWN} for empty window
+     */
+    public float getMax(int window, int metric) {
+        SeqDeque max = mWindows[window].mMax[metric];
+        return max.isEmpty() ? AtmotubeData.UNKNOWN : value(metric, max.peekFirst());
+    }
+
+    /**
+     * Approximate percentile, relative error is below 7% for values from 0.001 to 65536
+     *
+     * @param window     window index
+     * @param metric     one of METRIC_* constants
+     * @param percentile percentile 0 to 100
+     * @return percentile value or {@link AtmotubeData#UNKNOWN} for empty window
+     */
+    public float getPercentile(int window, int metric, float percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+        Window w = mWindows[window];
+        int count = w.mCount[metric];
+        if (count == 0) {
+            return AtmotubeData.UNKNOWN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        int[] histogram = w.mHistogram[metric];
+        long seen = 0;
+        int bucket = 0;
+        while (bucket < BUCKETS - 1) {
+            seen += histogram[bucket];
+            if (seen >= rank) {
+                break;
+            }
+            bucket++;
+        }
+        float min = getMin(window, metric);
+        float max = getMax(window, metric);
+        return Math.min(max, Math.max(min, bucketValue(bucket)));
+    }
+
+    private int index(long seq) {
+        return (int) seq & mMask;
+    }
+
+    private float value(int metric, long seq) {
+        return mValues[metric][index(seq)];
+    }
+
+    private void grow() {
+        int capacity = (mMask + 1) * 2;
+        int mask = capacity - 1;
+        long[] times = new long[capacity];
+        float[][] values = new float[METRICS][capacity];
+        for (long seq = mFirst; seq < mNext; seq++) {
+            int from = index(seq);
+            int to = (int) seq & mask;
+            times[to] = mTimes[from];
+            for (int m = 0; m < METRICS; m++) {
+                values[m][to] = mValues[m][from];
+            }
+        }
+        mTimes = times;
+        mValues = values;
+        mMask = mask;
+    }
+
+    private static boolean isKnownPm(float pm) {
+        return pm != AtmotubeData.UNKNOWN && pm != AtmotubeData.PM_OFF_FLOAT && pm != AtmotubeData.PM_OFF;
+    }
+
+    private static int bucket(float value) {
+        if (!(value >= 0x1p-10f)) {
+            return 0;
+        }
+        int bits = Float.floatToRawIntBits(value);
+        int exp = ((bits >>> 23) & 0xFF) - 127;
+        if (exp >= MAX_EXP) {
+            return BUCKETS - 1;
+        }
+        return 1 + ((exp - MIN_EXP) << SUB_BITS) + ((bits >>> (23 - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+    }
+
+    // middle of the bucket range
+    private static float bucketValue(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        } else if (bucket == BUCKETS - 1) {
+            return 0x1p16f;
+        }
+        int exp = ((bucket - 1) >> SUB_BITS) + MIN_EXP;
+        int sub = (bucket - 1) & ((1 << SUB_BITS) - 1);
+        return (float) (Math.pow(2, exp) * (1 + (sub + 0.5) / (1 << SUB_BITS)));
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.Arrays;
+
+/**
+ * History of one Atmotube device kept in primitive arrays, one array per value
+ * <p>
+ * A reading takes 38 bytes instead of a full {@link AtmotubeData} object with its strings,
+ * so long histories of 2 second PRO readings fit in memory. Readings are appended in time
+ * order, ranges are found by binary search on time and values are read by index without boxing.
+ * <p>
+ * The series is not thread safe.
+ */
+public class AtmotubeSeries {
+
+    // info byte is not known for reading
+    public static final int INFO_UNKNOWN = Short.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final String mMac;
+    private String mFwVer;
+    private int mHwVer;
+
+    private int mSize;
+    private long[] mTime;
+    private float[] mVOC;
+    private float[] mTemperature;
+    private float[] mHumidity;
+    private float[] mPressure;
+    private float[] mPm1;
+    private float[] mPm25;
+    private float[] mPm10;
+    private short[] mInfo;
+
+    /**
+     * Visitor for {@link #forEach(long, long, Visitor)}
+     */
+    public interface Visitor {
+        /**
+         * @param series series being visited
+         * @param index  reading index
+         * @return false to stop iteration
+         */
+        boolean visit(AtmotubeSeries series, int index);
+    }
+
+    public AtmotubeSeries(String mac) {
+        this(mac, DEFAULT_CAPACITY);
+    }
+
+    public AtmotubeSeries(String mac, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        mMac = mac;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        mTime = mTime == null ? new long[capacity] : Arrays.copyOf(mTime, capacity);
+        mVOC = mVOC == null ? new float[capacity] : Arrays.copyOf(mVOC, capacity);
+        mTemperature = mTemperature == null ? new float[capacity] : Arrays.copyOf(mTemperature, capacity);
+        mHumidity = mHumidity == null ? new float[capacity] : Arrays.copyOf(mHumidity, capacity);
+        mPressure = mPressure == null ? new float[capacity] : Arrays.copyOf(mPressure, capacity);
+        mPm1 = mPm1 == null ? new float[capacity] : Arrays.copyOf(mPm1, capacity);
+        mPm25 = mPm25 == null ? new float[capacity] : Arrays.copyOf(mPm25, capacity);
+        mPm10 = mPm10 == null ? new float[capacity] : Arrays.copyOf(mPm10, capacity);
+        mInfo = mInfo == null ? new short[capacity] : Arrays.copyOf(mInfo, capacity);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mTime.length) {
+            int newCapacity = mTime.length + (mTime.length >> 1);
+            allocate(Math.max(Math.max(newCapacity, capacity), DEFAULT_CAPACITY));
+        }
+    }
+
+    /**
+     * Append decoded reading, firmware and hardware version of the series follow the latest reading
+     *
+     * @param data reading, time must not be before the last appended reading
+     */
+    public void append(AtmotubeData data) {
+        if (data.mFwVer != null) {
+            mFwVer = data.mFwVer;
+        }
+        if (data.getHwVer() != AtmotubeData.HW_VER_UNKNOWN) {
+            mHwVer = data.getHwVer();
+        }
+        Integer info = data.getInfoByte();
+        append(data.getTime(), data.getVOC(), data.getTemperature(), data.getHumidity(), data.getPressure(),
+                data.getPm1(), data.getPm25(), data.getPm10(), info != null ? info : INFO_UNKNOWN);
+    }
+
+    /**
+     * Append reading, missing values are {@link AtmotubeData#UNKNOWN}
+     *
+     * @param time time in seconds, must not be before the last appended reading
+     * @param info info byte or {@link #INFO_UNKNOWN}
+     */
+    public void append(long time, float voc, float temperature, float humidity, float pressure,
+                       float pm1, float pm25, float pm10, int info) {
+        if (mSize > 0 && time < mTime[mSize - 1]) {
+            throw new IllegalArgumentException("Reading at " + time + " is before the last reading at " + mTime[mSize - 1]);
+        }
+        ensureCapacity(mSize + 1);
+        int i = mSize++;
+        mTime[i] = time;
+        mVOC[i] = voc;
+        mTemperature[i] = temperature;
+        mHumidity[i] = humidity;
+        mPressure[i] = pressure;
+        mPm1[i] = pm1;
+        mPm25[i] = pm25;
+        mPm10[i] = pm10;
+        mInfo[i] = (short) info;
+    }
+
+    /**
+     * Find first reading at or after the time
+     *
+     * @param time time in seconds
+     * @return reading index, {@link #size()} if all readings are before the time
+     */
+    public int indexOf(long time) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTime[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Visit readings in time range
+     *
+     * @param from    start time in seconds, inclusive
+     * @param to      end time in seconds, exclusive
+     * @param visitor visitor
+     * @return number of visited readings
+     */
+    public int forEach(long from, long to, Visitor visitor) {
+        int end = indexOf(to);
+        int count = 0;
+        for (int i = indexOf(from); i < end; i++) {
+            count++;
+            if (!visitor.visit(this, i)) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fill holder with reading values
+     *
+     * @param index  reading index
+     * @param target holder to fill, it is reset first
+     */
+    public void get(int index, AtmotubeData target) {
+        checkIndex(index);
+        target.reset();
+        target.setMac(mMac);
+        target.setFwVer(mFwVer);
+        target.setHwVer(mHwVer);
+        target.setVOC(mVOC[index]);
+        target.setTemperature(mTemperature[index]);
+        target.setHumidity(mHumidity[index]);
+        target.setPressure(mPressure[index]);
+        target.setPm(mPm1[index], mPm25[index], mPm10[index]);
+        if (mInfo[index] != INFO_UNKNOWN) {
+            target.setInfo((int) mInfo[index]);
+        }
+        // value setters stamp current time, so time goes last
+        target.setTime(mTime[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+
+    public String getMac() {
+        return mMac;
+    }
+
+    public String getFwVer() {
+        return mFwVer;
+    }
+
+    public int getHwVer() {
+        return mHwVer;
+    }
+
+    void setVersion(String fwVer, int hwVer) {
+        mFwVer = fwVer;
+        mHwVer = hwVer;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return mTime[index];
+    }
+
+    public float getVOC(int index) {
+        checkIndex(index);
+        return mVOC[index];
+    }
+
+    public float getTemperature(int index) {
+        checkIndex(index);
+        return mTemperature[index];
+    }
+
+    public float getHumidity(int index) {
+        checkIndex(index);
+        return mHumidity[index];
+    }
+
+    public float getPressure(int index) {
+        checkIndex(index);
+        return mPressure[index];
+    }
+
+    public float getPm1(int index) {
+        checkIndex(index);
+        return mPm1[index];
+    }
+
+    public float getPm25(int index) {
+        checkIndex(index);
+        return mPm25[index];
+    }
+
+    public float getPm10(int index) {
+        checkIndex(index);
+        return mPm10[index];
+    }
+
+    /**
+     * @return info byte or {@link #INFO_UNKNOWN}
+     */
+    public int getInfoByte(int index) {
+        checkIndex(index);
+        return mInfo[index];
+    }
+
+    /**
+     * @return shared info instance or null if info byte is not known
+     */
+    public AtmotubeInfo getInfo(int index) {
+        int info = getInfoByte(index);
+        return info != INFO_UNKNOWN ? AtmotubeInfo.valueOf(info, mFwVer) : null;
+    }
+
+    /**
+     * Copy VOC values of readings {@code from..to-1} into array, e.g. for
+     * {@link AtmotubeAqs#getAQS(float[], float[], float[], float[], int[])}
+     */
+    public void getVOC(int from, int to, float[] dst, int dstOffset) {
+        copy(mVOC, from, to, dst, dstOffset);
+    }
+
+    public void getTemperature(int from, int to, float[] dst, int dstOffset) {
+        copy(mTemperature, from, to, dst, dstOffset);
+    }
+
+    public void getHumidity(int from, int to, float[] dst, int dstOffset) {
+        copy(mHumidity, from, to, dst, dstOffset);
+    }
+
+    public void getPressure(int from, int to, float[] dst, int dstOffset) {
+        copy(mPressure, from, to, dst, dstOffset);
+    }
+
+    public void getPm1(int from, int to, float[] dst, int dstOffset) {
+        copy(mPm1, from, to, dst, dstOffset);
+    }
+
+    public void getPm25(int from, int to, float[] dst, int dstOffset) {
+        copy(mPm25, from, to, dst, dstOffset);
+    }
+
+    public void getPm10(int from, int to, float[] dst, int dstOffset) {
+        copy(mPm10, from, to, dst, dstOffset);
+    }
+
+    public void getTime(int from, int to, long[] dst, int dstOffset) {
+        checkRange(from, to);
+        System.arraycopy(mTime, from, dst, dstOffset, to - from);
+    }
+
+    private void copy(float[] column, int from, int to, float[] dst, int dstOffset) {
+        checkRange(from, to);
+        System.arraycopy(column, from, dst, dstOffset, to - from);
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > mSize || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + ".." + to + ", size " + mSize);
+        }
+    }
+
+    /**
+     * Remove readings before the time, e.g. to keep only the last week
+     *
+     * @param time time in seconds
+     * @return number of removed readings
+     */
+    public int removeBefore(long time) {
+        int count = indexOf(time);
+        if (count == 0) {
+            return 0;
+        }
+        int left = mSize - count;
+        System.arraycopy(mTime, count, mTime, 0, left);
+        System.arraycopy(mVOC, count, mVOC, 0, left);
+        System.arraycopy(mTemperature, count, mTemperature, 0, left);
+        System.arraycopy(mHumidity, count, mHumidity, 0, left);
+        System.arraycopy(mPressure, count, mPressure, 0, left);
+        System.arraycopy(mPm1, count, mPm1, 0, left);
+        System.arraycopy(mPm25, count, mPm25, 0, left);
+        System.arraycopy(mPm10, count, mPm10, 0, left);
+        System.arraycopy(mInfo, count, mInfo, 0, left);
+        mSize = left;
+        return count;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Release unused capacity
+     */
+    public void trimToSize() {
+        if (mTime.length > mSize) {
+            allocate(mSize);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for series written by {@link AtmotubeSeriesWriter}
+ */
+public class AtmotubeSeriesReader implements Closeable {
+
+    private final InputStream mIn;
+    private final String mMac;
+    private final String mFwVer;
+    private final int mHwVer;
+    private final long[] mValues = new long[AtmotubeSeriesWriter.FIELD_COUNT];
+    private long mTime;
+    private long mDelta;
+    private boolean mFinished;
+
+    /**
+     * Read stream header
+     *
+     * @param in input, buffered input is recommended
+     * @throws IOException if stream is not an Atmotube series
+     */
+    public AtmotubeSeriesReader(InputStream in) throws IOException {
+        mIn = in;
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != AtmotubeSeriesWriter.MAGIC) {
+            throw new IOException("Not an Atmotube series stream");
+        }
+        mMac = readString(header);
+        mFwVer = readString(header);
+        mHwVer = header.readInt();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public String getMac() {
+        return mMac;
+    }
+
+    public String getFwVer() {
+        return mFwVer;
+    }
+
+    public int getHwVer() {
+        return mHwVer;
+    }
+
+    /**
+     * Read next reading and append it to the series
+     *
+     * @param target series to append to
+     * @return false at the end of stream
+     */
+    public boolean next(AtmotubeSeries target) throws IOException {
+        if (mFinished) {
+            return false;
+        }
+        long changed = readVarint();
+        if (changed == AtmotubeSeriesWriter.END) {
+            mFinished = true;
+            return false;
+        }
+        if (changed > AtmotubeSeriesWriter.END) {
+            throw new IOException("Corrupted series stream");
+        }
+        mDelta += unZigZag(readVarint());
+        mTime += mDelta;
+        for (int i = 0; i < AtmotubeSeriesWriter.FIELD_COUNT; i++) {
+            if ((changed & (1 << i)) != 0) {
+                mValues[i] += unZigZag(readVarint());
+            }
+        }
+        float[] scale = AtmotubeSeriesWriter.SCALE;
+        target.append(mTime, (float) mValues[0] / scale[0], (float) mValues[1] / scale[1], (float) mValues[2] / scale[2],
+                (float) mValues[3] / scale[3], (float) mValues[4] / scale[4], (float) mValues[5] / scale[5],
+                (float) mValues[6] / scale[6], (int) mValues[AtmotubeSeriesWriter.FIELD_INFO]);
+        return true;
+    }
+
+    /**
+     * Read all remaining readings into a new series
+     */
+    public AtmotubeSeries read() throws IOException {
+        AtmotubeSeries series = new AtmotubeSeries(mMac);
+        series.setVersion(mFwVer, mHwVer);
+        while (next(series)) {
+            // read all
+        }
+        return series;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = mIn.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of series stream");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted series stream");
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
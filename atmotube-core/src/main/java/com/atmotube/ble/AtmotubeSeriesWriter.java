@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compact streaming encoder for {@link AtmotubeSeries}, read back with {@link AtmotubeSeriesReader}
+ * <p>
+ * Values are stored as fixed-point integers at decoder resolution: VOC in ppb, temperature,
+ * humidity, pressure and PM in hundredths. Time is written as zig-zag varint delta-of-delta,
+ * so readings at a steady interval take one byte. Each reading starts with a bitmap of the
+ * values that changed since the previous reading and only the changed values follow, as
+ * zig-zag varint deltas. A reading with no changes takes two bytes.
+ * <p>
+ * Values that are finer than decoder resolution are rounded to it.
+ */
+public class AtmotubeSeriesWriter implements Closeable {
+
+    static final int MAGIC = 0x41545331; // "ATS1"
+
+    // reading bitmap, info change uses the second varint byte
+    static final int FIELD_COUNT = 8;
+    static final int FIELD_INFO = 7;
+    static final int END = 1 << FIELD_COUNT;
+
+    // fixed-point scale of VOC, temperature, humidity, pressure, PM1, PM2.5, PM10
+    static final float[] SCALE = {1000f, 100f, 100f, 100f, 100f, 100f, 100f};
+
+    private final OutputStream mOut;
+    private final byte[] mBuffer = new byte[FIELD_COUNT * 10 + 20];
+    private final long[] mPrevious = new long[FIELD_COUNT];
+    private final long[] mCurrent = new long[FIELD_COUNT];
+    private long mPreviousTime;
+    private long mPreviousDelta;
+    private boolean mFinished;
+
+    /**
+     * Write stream header
+     *
+     * @param out   output, buffered output is recommended
+     * @param mac   device MAC address or null
+     * @param fwVer firmware version or null
+     * @param hwVer hardware version
+     */
+    public AtmotubeSeriesWriter(OutputStream out, String mac, String fwVer, int hwVer) throws IOException {
+        mOut = out;
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        writeString(header, mac);
+        writeString(header, fwVer);
+        header.writeInt(hwVer);
+        header.flush();
+    }
+
+    public AtmotubeSeriesWriter(OutputStream out, AtmotubeSeries series) throws IOException {
+        this(out, series.getMac(), series.getFwVer(), series.getHwVer());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Write all readings of the series
+     */
+    public void write(AtmotubeSeries series) throws IOException {
+        write(series, 0, series.size());
+    }
+
+    /**
+     * Write readings {@code from..to-1} of the series
+     */
+    public void write(AtmotubeSeries series, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            write(series.getTime(i), series.getVOC(i), series.getTemperature(i), series.getHumidity(i),
+                    series.getPressure(i), series.getPm1(i), series.getPm25(i), series.getPm10(i), series.getInfoByte(i));
+        }
+    }
+
+    /**
+     * Write reading, arguments are the same as for {@link AtmotubeSeries#append}
+     */
+    public void write(long time, float voc, float temperature, float humidity, float pressure,
+                      float pm1, float pm25, float pm10, int info) throws IOException {
+        if (mFinished) {
+            throw new IOException("Stream is finished");
+        }
+        mCurrent[0] = toFixed(voc, 0);
+        mCurrent[1] = toFixed(temperature, 1);
+        mCurrent[2] = toFixed(humidity, 2);
+        mCurrent[3] = toFixed(pressure, 3);
+        mCurrent[4] = toFixed(pm1, 4);
+        mCurrent[5] = toFixed(pm25, 5);
+        mCurrent[6] = toFixed(pm10, 6);
+        mCurrent[FIELD_INFO] = info;
+        int changed = 0;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if (mCurrent[i] != mPrevious[i]) {
+                changed |= 1 << i;
+            }
+        }
+        long delta = time - mPreviousTime;
+        int pos = putVarint(mBuffer, 0, changed);
+        pos = putVarint(mBuffer, pos, zigZag(delta - mPreviousDelta));
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if ((changed & (1 << i)) != 0) {
+                pos = putVarint(mBuffer, pos, zigZag(mCurrent[i] - mPrevious[i]));
+                mPrevious[i] = mCurrent[i];
+            }
+        }
+        mOut.write(mBuffer, 0, pos);
+        mPreviousTime = time;
+        mPreviousDelta = delta;
+    }
+
+    private static long toFixed(float value, int field) {
+        return Math.round((double) value * SCALE[field]);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int putVarint(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Write end of stream marker and flush, underlying stream stays open
+     */
+    public void finish() throws IOException {
+        if (!mFinished) {
+            mFinished = true;
+            mOut.write(mBuffer, 0, putVarint(mBuffer, 0, END));
+            mOut.flush();
+        }
+    }
+
+    /**
+     * Finish and close underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            mOut.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.UUID;
+
+/**
+ * Packet version detection for Atmotube 1.0 and Atmotube 2.0 advertisements
+ * <p>
+ * Identifiers live at fixed offsets of the scan record, so they are compared as precomputed
+ * 64-bit words. Records that do not match are rejected after at most four word reads, and the
+ * factory mode marker is searched only for matching records.
+ */
+final class PacketSignature {
+
+    // Atmotube v.1.0 identifiers
+    static final byte[] ATMOTUBE_ID_VER_1_0_V1 = {0, 0, 0, 0, 0, 0x41, 0x54, 0x4d, 0x4f, 0x54, 0x75, 0x55, 0x42};
+    static final byte[] ATMOTUBE_ID_VER_1_0_V2 = {0, 0, 0x41, 0x54, 0x4d, 0x4f, 0x54, 0x45, 0x53, 0x54};
+    static final byte[] ATMOTUBE_ID_VER_1_0_V3 = {0, 0, 0, 0, 0, (byte) 0x9e, (byte) 0xca, (byte) 0xdc, 0x24, 0x0e, (byte) 0xe5, (byte) 0xa9, (byte) 0xe0, (byte) 0x93, (byte) 0xf3, (byte) 0xa3, (byte) 0xb5, 0x01, 0x00, 0x40, 0x6e};
+
+    // Atmotube v.2.0 identifiers
+    static final byte[] ATMOTUBE_ID_VER_2_0_V1 = {0, 0, 0, 0, 0, (byte) 0x79, (byte) 0xb7, (byte) 0xa5, (byte) 0xaf, (byte) 0xfe, (byte) 0xee, (byte) 0xf6, (byte) 0xbf, (byte) 0x11, (byte) 0x42, (byte) 0xaa, (byte) 0xbd, 0x01, 0x00, (byte) 0x89, (byte) 0xd8};
+    static final byte[] ATMOTUBE_ID_VER_2_0_V2 = {0, 0, 0, 0, 0, (byte) 0xb2, (byte) 0x8a, (byte) 0x32, (byte) 0x4a, (byte) 0xd9, (byte) 0x6e, (byte) 0xd7, (byte) 0xad, (byte) 0x18, (byte) 0x48, (byte) 0x9a, (byte) 0x8e, 0x01, 0x00, (byte) 0x45, (byte) 0xdb};
+
+    // Factory test mode identifier for Atmotube 1.0 and Atmotube 2.0
+    static final byte[] ATMOTEST = {0x41, 0x54, 0x4d, 0x4f, 0x54, 0x45, 0x53, 0x54};
+
+    // Atmotube packet versions
+    static final int ATMOTUBE_UNKNOWN = 0;
+    static final int ATMOTUBE_PACKET_V1 = 1;
+    static final int ATMOTUBE_PACKET_V2 = 2;
+    static final int ATMOTUBE_PACKET_V3 = 3;
+
+    // set in classify result if the record contains ATMOTEST marker
+    static final int FLAG_FACTORY = 0x100;
+    static final int VERSION_MASK = 0xFF;
+
+    // 8 byte word at offset 5 (v1) or 2 (v2), two words at offset 5 and 13 for 16 byte UUID identifiers
+    private static final int OFFSET_V1 = 5;
+    private static final int OFFSET_V2 = 2;
+    private static final int OFFSET_UUID_HI = 5;
+    private static final int OFFSET_UUID_LO = 13;
+
+    private static final long SIG_V1 = word(ATMOTUBE_ID_VER_1_0_V1, OFFSET_V1);
+    private static final long SIG_V2 = word(ATMOTUBE_ID_VER_1_0_V2, OFFSET_V2);
+    private static final long[] SIG_UUID_HI = {
+            word(ATMOTUBE_ID_VER_1_0_V3, OFFSET_UUID_HI),
+            word(ATMOTUBE_ID_VER_2_0_V1, OFFSET_UUID_HI),
+            word(ATMOTUBE_ID_VER_2_0_V2, OFFSET_UUID_HI)
+    };
+    private static final long[] SIG_UUID_LO = {
+            word(ATMOTUBE_ID_VER_1_0_V3, OFFSET_UUID_LO),
+            word(ATMOTUBE_ID_VER_2_0_V1, OFFSET_UUID_LO),
+            word(ATMOTUBE_ID_VER_2_0_V2, OFFSET_UUID_LO)
+    };
+
+    // minimal record length to hold any identifier
+    private static final int MIN_LENGTH = OFFSET_UUID_LO + 8;
+
+    private PacketSignature() {
+    }
+
+    /**
+     * Detect Atmotube packet version and factory mode
+     *
+     * @param scanRecord scan record bytes
+     * @return packet version {@link #ATMOTUBE_PACKET_V1}, {@link #ATMOTUBE_PACKET_V2}, {@link #ATMOTUBE_PACKET_V3}
+     * or {@link #ATMOTUBE_UNKNOWN}, combined with {@link #FLAG_FACTORY} for factory mode
+     */
+    static int classify(byte[] scanRecord) {
+        int type = getPacketVersion(scanRecord);
+        if (type == ATMOTUBE_UNKNOWN) {
+            return ATMOTUBE_UNKNOWN;
+        }
+        return isAtmotest(scanRecord) ? type | FLAG_FACTORY : type;
+    }
+
+    /**
+     * Detect Atmotube packet version for v.1.0 and v.2.0
+     *
+     * @param scanRecord scan record bytes
+     * @return packet version {@link #ATMOTUBE_PACKET_V1}, {@link #ATMOTUBE_PACKET_V2}, {@link #ATMOTUBE_PACKET_V3}
+     * or {@link #ATMOTUBE_UNKNOWN}
+     */
+    static int getPacketVersion(byte[] scanRecord) {
+        if (scanRecord == null || scanRecord.length < MIN_LENGTH) {
+            return ATMOTUBE_UNKNOWN;
+        }
+        long hi = word(scanRecord, OFFSET_UUID_HI);
+        if (hi == SIG_V1) {
+            return ATMOTUBE_PACKET_V1;
+        }
+        if (word(scanRecord, OFFSET_V2) == SIG_V2) {
+            return ATMOTUBE_PACKET_V2;
+        }
+        for (int i = 0; i < SIG_UUID_HI.length; i++) {
+            if (hi == SIG_UUID_HI[i] && word(scanRecord, OFFSET_UUID_LO) == SIG_UUID_LO[i]) {
+                return ATMOTUBE_PACKET_V3;
+            }
+        }
+        return ATMOTUBE_UNKNOWN;
+    }
+
+    /**
+     * Check if current record is Atmotube in factory mode
+     * <p>
+     * Matching restarts after the mismatching byte, as it always did, so results are stable
+     * between library versions.
+     *
+     * @param scanRecord scan record bytes
+     * @return true if scan record is from Atmotube in factory mode
+     */
+    static boolean isAtmotest(byte[] scanRecord) {
+        int index = 0;
+        for (byte b : scanRecord) {
+            if (b == ATMOTEST[index]) {
+                index++;
+                if (ATMOTEST.length == index) {
+                    return true;
+                }
+            } else {
+                index = 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get service UUIDs of 16 byte identifiers
+     *
+     * @return UUIDs advertised by Atmotube 1.0 and Atmotube 2.0
+     */
+    static UUID[] getServiceUuids() {
+        byte[][] ids = {ATMOTUBE_ID_VER_1_0_V3, ATMOTUBE_ID_VER_2_0_V1, ATMOTUBE_ID_VER_2_0_V2};
+        UUID[] uuids = new UUID[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            uuids[i] = new UUID(AdvertisingData.readLongLE(ids[i], OFFSET_UUID_LO), AdvertisingData.readLongLE(ids[i], OFFSET_UUID_HI));
+        }
+        return uuids;
+    }
+
+    private static long word(byte[] b, int off) {
+        long w = 0;
+        for (int i = 0; i < 8; i++) {
+            w = w << 8 | (b[off + i] & 0xFF);
+        }
+        return w;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeAqsTest {
+
+    @Test
+    public void pmLevels() {
+        assertEquals(100, AtmotubeAqs.getAQS(0, 0, 0, 0));
+        assertEquals(80, AtmotubeAqs.getAQS(0, 14, 0, 0));
+        assertEquals(70, AtmotubeAqs.getAQS(0, 0, 35, 0));
+        assertEquals(0, AtmotubeAqs.getAQS(0, 0, 0, 250));
+        assertEquals(0, AtmotubeAqs.getAQS(0, 0, 0, 1000.5f));
+        assertEquals(AtmotubeAqs.getAQS(0.3f), AtmotubeAqs.getAQS(0.3f, AtmotubeData.UNKNOWN, 10, 10));
+    }
+
+    @Test
+    public void series() {
+        float[] voc = {0.1f, 0.8f, 3f, 0.2f};
+        float[] pm1 = {5, 40, 1, 12.5f};
+        float[] pm25 = {7, 60, 2, 150};
+        float[] pm10 = {9, 80, 3, 12};
+        int[] out = new int[voc.length];
+        AtmotubeAqs.getAQS(voc, pm1, pm25, pm10, out);
+        for (int i = 0; i < voc.length; i++) {
+            assertEquals(AtmotubeAqs.getAQS(voc[i], pm1[i], pm25[i], pm10[i]), out[i]);
+        }
+        AtmotubeAqs.getAQS(voc, null, null, null, out);
+        for (int i = 0; i < voc.length; i++) {
+            assertEquals(AtmotubeAqs.getAQS(voc[i]), out[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void seriesShortOutput() {
+        AtmotubeAqs.getAQS(new float[2], null, null, null, new int[1]);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeBtsnoopImporterTest {
+
+    private static final long T0 = 1500000000000L;
+    private static final long ADDRESS = 0xC25E1100AA01L;
+    private static final long OTHER_ADDRESS = 0xC25E1100AA02L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static class Capture {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBytes);
+        private final int mDatalink;
+
+        Capture(int datalink) throws IOException {
+            mDatalink = datalink;
+            mOut.write(AtmotubeBtsnoopImporter.MAGIC);
+            mOut.writeInt(1);
+            mOut.writeInt(datalink);
+        }
+
+        void packet(long time, int flags, byte[] data) throws IOException {
+            mOut.writeInt(data.length);
+            mOut.writeInt(data.length);
+            mOut.writeInt(flags);
+            mOut.writeInt(0);
+            mOut.writeLong(AtmotubeBtsnoopImporter.EPOCH_OFFSET_MICROS + time * 1000);
+            mOut.write(data);
+        }
+
+        void event(long time, byte[] event) throws IOException {
+            if (mDatalink == AtmotubeBtsnoopImporter.DATALINK_H4) {
+                byte[] data = new byte[event.length + 1];
+                data[0] = 0x04;
+                System.arraycopy(event, 0, data, 1, event.length);
+                packet(time, 3, data);
+            } else {
+                packet(time, 3, event);
+            }
+        }
+
+        // LE advertising report event with one report
+        void report(long time, int type, long address, byte[] data, int from, int to, int rssi) throws IOException {
+            int length = to - from;
+            byte[] event = new byte[4 + 10 + length];
+            event[0] = 0x3E;
+            event[1] = (byte) (event.length - 2);
+            event[2] = 0x02;
+            event[3] = 1;
+            event[4] = (byte) type;
+            putAddress(event, 6, address);
+            event[12] = (byte) length;
+            System.arraycopy(data, from, event, 13, length);
+            event[13 + length] = (byte) rssi;
+            event(time, event);
+        }
+
+        // LE extended advertising report event with one report
+        void extendedReport(long time, int type, long address, byte[] data, int rssi) throws IOException {
+            byte[] event = new byte[4 + 24 + data.length];
+            event[0] = 0x3E;
+            event[1] = (byte) (event.length - 2);
+            event[2] = 0x0D;
+            event[3] = 1;
+            event[4] = (byte) type;
+            event[5] = (byte) (type >> 8);
+            putAddress(event, 7, address);
+            event[17] = (byte) rssi;
+            event[27] = (byte) data.length;
+            System.arraycopy(data, 0, event, 28, data.length);
+            event(time, event);
+        }
+
+        File save(File file) throws IOException {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(mBytes.toByteArray());
+            } finally {
+                out.close();
+            }
+            return file;
+        }
+    }
+
+    private static void putAddress(byte[] b, int off, long address) {
+        for (int i = 0; i < 6; i++) {
+            b[off + i] = (byte) (address >>> (i * 8));
+        }
+    }
+
+    private static class Collector implements AtmotubeBtsnoopImporter.Listener {
+        final List<String> mMacs = new ArrayList<>();
+        final List<Long> mTimes = new ArrayList<>();
+        final List<Float> mPm25 = new ArrayList<>();
+
+        @Override
+        public synchronized void onReading(AtmotubeData data) {
+            mMacs.add(data.getMac());
+            mTimes.add(data.getTime());
+            mPm25.add(data.getPm25());
+        }
+    }
+
+    private static long run(File file, Collector collector, int threads) throws Exception {
+        AtmotubeBtsnoopImporter importer = new AtmotubeBtsnoopImporter(file);
+        try {
+            return importer.run(collector, threads);
+        } finally {
+            importer.close();
+        }
+    }
+
+    @Test
+    public void joinScanResponse() throws Exception {
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        Capture capture = new Capture(AtmotubeBtsnoopImporter.DATALINK_H4);
+        // HCI command, not an event
+        capture.packet(T0, 2, new byte[]{0x01, 0x0C, 0x20, 0x02, 0x01, 0x00});
+        capture.report(T0, 0x00, ADDRESS, record, 0, 47, -60);
+        // unrelated beacon between advertisement and scan response
+        capture.report(T0 + 5, 0x03, OTHER_ADDRESS, new byte[]{0x02, 0x01, 0x06}, 0, 3, -80);
+        capture.report(T0 + 10, 0x04, ADDRESS, record, 47, 62, -60);
+        // record truncated by interrupted capture
+        byte[] bytes = new byte[24 + 8];
+        bytes[3] = 100;
+        bytes[7] = 100;
+        File file = capture.save(mFolder.newFile());
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(bytes);
+        out.close();
+
+        Collector collector = new Collector();
+        AtmotubeBtsnoopImporter importer = new AtmotubeBtsnoopImporter(file);
+        assertEquals(1, importer.run(collector, 2));
+        assertEquals(4, importer.getPackets());
+        assertEquals(3, importer.getReports());
+        importer.close();
+
+        assertEquals(Arrays.asList("C2:5E:11:00:AA:01"), collector.mMacs);
+        assertEquals(T0 / 1000, (long) collector.mTimes.get(0));
+        // PM values come from the scan response
+        assertEquals(20, collector.mPm25.get(0), 0.001);
+    }
+
+    @Test
+    public void extendedReports() throws Exception {
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        Capture capture = new Capture(AtmotubeBtsnoopImporter.DATALINK_MONITOR);
+        // complete non-scannable advertisement, then incomplete fragment
+        capture.extendedReport(T0, 0x0000, ADDRESS, record, -60);
+        capture.extendedReport(T0, 0x0020, OTHER_ADDRESS, record, -60);
+        Collector collector = new Collector();
+        assertEquals(1, run(capture.save(mFolder.newFile()), collector, 1));
+        assertEquals(Arrays.asList("C2:5E:11:00:AA:01"), collector.mMacs);
+    }
+
+    @Test
+    public void manyDevicesInParallel() throws Exception {
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        Capture capture = new Capture(AtmotubeBtsnoopImporter.DATALINK_H4);
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            long address = ADDRESS + i;
+            capture.report(T0 + i, 0x00, address, record, 0, 47, -60);
+            capture.report(T0 + i, 0x04, address, record, 47, 62, -60);
+        }
+        // advertisement without scan response is decoded at the end
+        capture.report(T0 + count, 0x00, OTHER_ADDRESS - 0x100000, record, 0, 47, -60);
+        Collector collector = new Collector();
+        assertEquals(count + 1, run(capture.save(mFolder.newFile()), collector, 4));
+        assertEquals(count + 1, collector.mMacs.size());
+        assertEquals(count + 1, new HashSet<>(collector.mMacs).size());
+    }
+
+    @Test
+    public void notBtsnoop() throws Exception {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[32]);
+        out.close();
+        try {
+            new AtmotubeBtsnoopImporter(file);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void mac() {
+        assertEquals("C2:5E:11:00:AA:01", AtmotubeBtsnoopImporter.getMac(ADDRESS));
+    }
+
+    @Test
+    public void withoutLocalName() throws Exception {
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        // PRO is recognized by its service UUID
+        Arrays.fill(record, 37, 47, (byte) 0);
+        Capture capture = new Capture(AtmotubeBtsnoopImporter.DATALINK_H4);
+        capture.report(T0, 0x00, ADDRESS, record, 0, 47, -60);
+        capture.report(T0, 0x04, ADDRESS, record, 47, 62, -60);
+        Collector collector = new Collector();
+        assertEquals(1, run(capture.save(mFolder.newFile()), collector, 1));
+        assertEquals(20, collector.mPm25.get(0), 0.001);
+    }
+
+    @Test
+    public void listenerFailure() throws Exception {
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        Capture capture = new Capture(AtmotubeBtsnoopImporter.DATALINK_H4);
+        for (int i = 0; i < 3000; i++) {
+            capture.report(T0 + i, 0x03, ADDRESS + i, record, 0, 62, -60);
+        }
+        File file = capture.save(mFolder.newFile());
+        AtmotubeBtsnoopImporter importer = new AtmotubeBtsnoopImporter(file);
+        try {
+            importer.run(new AtmotubeBtsnoopImporter.Listener() {
+                @Override
+                public void onReading(AtmotubeData data) {
+                    throw new IllegalStateException("listener");
+                }
+            }, 2);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("listener", expected.getMessage());
+        } finally {
+            importer.close();
+        }
+    }
+}
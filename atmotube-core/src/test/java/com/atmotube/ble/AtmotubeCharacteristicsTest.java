@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeCharacteristicsTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        AtmotubeDecodersTest.put(b, 0, values);
+        return b;
+    }
+
+    @Test
+    public void types() {
+        assertEquals(AtmotubeCharacteristics.TYPE_PM_V4, AtmotubeCharacteristics.getType(AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4));
+        assertEquals(AtmotubeCharacteristics.TYPE_VOC_V2, AtmotubeCharacteristics.getType(AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V2));
+        assertEquals(AtmotubeCharacteristics.TYPE_UNKNOWN, AtmotubeCharacteristics.getType(AtmotubeConstants.UART_TX_CHARACTERISTIC_UUID));
+        assertEquals(AtmotubeCharacteristics.TYPE_UNKNOWN, AtmotubeCharacteristics.getType(null));
+        assertEquals(6, AtmotubeCharacteristics.getLength(AtmotubeCharacteristics.TYPE_BME280_V3));
+    }
+
+    @Test
+    public void proNotifications() {
+        AtmotubeData data = new AtmotubeData();
+        data.setFwVer("740105");
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4,
+                bytes(0x01, 0x90, 0x00, 0x00), data));
+        assertEquals(0.4f, data.getVOC(), 0);
+        assertEquals(AtmotubeData.HW_VER_PRO, data.getHwVer());
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V4,
+                bytes(45, 0xFB, 0x00, 0x01, 0x8B, 0xCD), data));
+        assertEquals(45f, data.getHumidity(), 0);
+        assertEquals(-5f, data.getTemperature(), 0);
+        assertEquals(1013.25f, data.getPressure(), 0);
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V4,
+                bytes(0x41, 87), data));
+        assertEquals(87, data.getBattery());
+        assertTrue(data.isPmIsOn());
+        assertFalse(data.isCalibrating());
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4,
+                bytes(0x00, 0x0A, 0x00, 0x14, 0x00, 0x1E, 0x00, 0x00), data));
+        assertEquals(10f, data.getPm1(), 0);
+        assertEquals(20f, data.getPm25(), 0);
+        assertEquals(30f, data.getPm10(), 0);
+        // values of other characteristics are kept
+        assertEquals(0.4f, data.getVOC(), 0);
+
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4,
+                bytes(0xFF, 0xFF, 0x00, 0x14, 0x00, 0x1E, 0x00, 0x00), data));
+        assertEquals(AtmotubeData.UNKNOWN, data.getPm25(), 0);
+
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4,
+                bytes(0x00, 0x03, 0xE9, 0x00, 0x07, 0xD0, 0x00, 0x0B, 0xB8, 0x00, 0x00, 0x00), data));
+        assertEquals(10.01f, data.getPm1(), 0);
+        assertEquals(20f, data.getPm25(), 0);
+        assertEquals(30f, data.getPm10(), 0);
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4,
+                bytes(0xFF, 0xFF, 0xFF, 0x00, 0x07, 0xD0, 0x00, 0x0B, 0xB8, 0x00, 0x00, 0x00), data));
+        assertEquals(AtmotubeData.UNKNOWN, data.getPm25(), 0);
+    }
+
+    @Test
+    public void overLengthValues() {
+        AtmotubeData data = new AtmotubeData();
+        UUID pm = AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4;
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(pm,
+                bytes(0x00, 0x0A, 0x00, 0x14, 0x00, 0x1E, 0x00, 0x00, 0x00), data));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(pm,
+                bytes(0x00, 0x03, 0xE8, 0x00, 0x07, 0xD0, 0x00, 0x0B, 0xB8, 0x00, 0x00, 0x00, 0x00), data));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4,
+                bytes(0x01, 0x90, 0x00, 0x00, 0x00), data));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V3,
+                bytes(45, 23, 0x00, 0x01, 0x8B, 0xCD, 0x00), data));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V2,
+                bytes(0x05, 0x00), data));
+        // 12 bytes are a PM layout only
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V4,
+                new byte[12], data));
+        assertEquals(AtmotubeData.UNKNOWN, data.getPm25(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, data.getVOC(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, data.getHumidity(), 0);
+        assertEquals(AtmotubeData.HW_VER_UNKNOWN, data.getHwVer());
+    }
+
+    @Test
+    public void v2Notifications() {
+        AtmotubeData data = new AtmotubeData();
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeCharacteristics.decode(AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V2,
+                bytes(0x01, 0x2C), data));
+        assertEquals(3f, data.getVOC(), 0);
+        assertEquals(AtmotubeData.HW_VER_2_0, data.getHwVer());
+        AtmotubeCharacteristics.decode(AtmotubeConstants.HUMIDITY_CHARACTERISTIC_UUID_V2, bytes(50), data);
+        AtmotubeCharacteristics.decode(AtmotubeConstants.TEMPERATURE_CHARACTERISTIC_UUID_V2, bytes(22), data);
+        AtmotubeCharacteristics.decode(AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V2, bytes(0x05), data);
+        assertEquals(50f, data.getHumidity(), 0);
+        assertEquals(22f, data.getTemperature(), 0);
+        assertEquals(6, data.getBattery());
+    }
+
+    @Test
+    public void invalidValues() {
+        AtmotubeData data = new AtmotubeData();
+        UUID bme = AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V3;
+        assertEquals(AtmotubeDecoder.DECODE_NO_DATA, AtmotubeCharacteristics.decode(bme, null, data));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(bme, bytes(45, 23), data));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeCharacteristics.decode(bme, bytes(45, 23, 0x80, 0, 0, 0), data));
+        assertEquals(AtmotubeDecoder.DECODE_NOT_ATMOTUBE, AtmotubeCharacteristics.decode(AtmotubeConstants.UART_RX_CHARACTERISTIC_UUID, bytes(1), data));
+        assertEquals(AtmotubeData.UNKNOWN, data.getHumidity(), 0);
+        assertEquals(AtmotubeData.HW_VER_UNKNOWN, data.getHwVer());
+    }
+
+    @Test
+    public void uint() {
+        assertEquals(0x7F, AtmotubeBytes.uint(bytes(0x7F), 0, 1));
+        assertEquals(0x018BCD, AtmotubeBytes.uint(bytes(0x00, 0x01, 0x8B, 0xCD), 1, 3));
+        assertEquals(0x12345678, AtmotubeBytes.uint(bytes(0x12, 0x34, 0x56, 0x78), 0, 4));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeDataTest {
+
+    private static byte[] write(AtmotubeData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        data.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static AtmotubeData read(byte[] bytes) throws IOException {
+        AtmotubeData data = new AtmotubeData();
+        data.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        return data;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        AtmotubeData data = new AtmotubeData();
+        AtmotubeDecoders.decode("Atmotube", "C2:5E:11:00:AA:01", AtmotubeDecodersTest.proRecord(), -60, data);
+        data.setLat(52.5);
+        data.setLon(13.4);
+        byte[] bytes = write(data);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(data);
+        out.close();
+        assertTrue(bytes.length * 4 < serialized.size());
+
+        AtmotubeData copy = read(bytes);
+        assertEquals(data.getName(), copy.getName());
+        assertEquals(data.getMac(), copy.getMac());
+        assertEquals(data.getFwVer(), copy.getFwVer());
+        assertEquals(data.getTime(), copy.getTime());
+        assertEquals(data.getVOC(), copy.getVOC(), 0);
+        assertEquals(data.getPressure(), copy.getPressure(), 0);
+        assertEquals(data.getPm25(), copy.getPm25(), 0);
+        assertEquals(data.getLat(), copy.getLat(), 0);
+        assertEquals(data.getDeviceCRC(), copy.getDeviceCRC());
+        assertEquals(data.getRssi(), copy.getRssi());
+        assertEquals(data.getBattery(), copy.getBattery());
+        assertEquals(data.getHwVer(), copy.getHwVer());
+        assertSame(data.getInfo(), copy.getInfo());
+        assertEquals(data.getRaw(), copy.getRaw());
+    }
+
+    @Test
+    public void absentValues() throws IOException {
+        AtmotubeData data = new AtmotubeData();
+        data.setVOC(0.5f);
+        AtmotubeData copy = read(write(data));
+        assertNull(copy.getMac());
+        assertNull(copy.getInfo());
+        assertNull(copy.getRawBytes());
+        assertEquals(AtmotubeData.UNKNOWN, copy.getPm1(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, copy.getLon(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, copy.getDeviceCRC());
+        assertEquals(0.5f, copy.getVOC(), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void newerVersion() throws IOException {
+        read(new byte[]{(byte) (AtmotubeData.FORMAT_VERSION + 1), 0, 0});
+    }
+
+    @Test
+    public void info() throws IOException {
+        AtmotubeInfo info = AtmotubeInfo.valueOf(0x23, "740105");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        info.writeTo(new DataOutputStream(bytes));
+        assertEquals(6, bytes.size());
+        assertSame(info, AtmotubeInfo.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    private static AtmotubeData serialize(AtmotubeData data) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(data);
+        out.close();
+        return (AtmotubeData) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    @Test
+    public void rawModePerHolder() throws IOException, ClassNotFoundException {
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        AtmotubeData dropped = new AtmotubeData();
+        dropped.setRawMode(AtmotubeData.RAW_MODE_NONE);
+        AtmotubeDecoders.decode("Atmotube", "C2:5E:11:00:AA:01", record, -60, dropped);
+        AtmotubeData kept = new AtmotubeData();
+        AtmotubeDecoders.decode("Atmotube", "C2:5E:11:00:AA:01", record, -60, kept);
+
+        // decode resets the holder but keeps its mode
+        assertEquals(AtmotubeData.RAW_MODE_NONE, dropped.getRawMode());
+        assertNull(serialize(dropped).getRawBytes());
+        assertNull(read(write(dropped)).getRawBytes());
+        assertArrayEquals(record, serialize(kept).getRawBytes());
+
+        AtmotubeData copy = new AtmotubeData();
+        copy.copyFrom(dropped);
+        assertEquals(AtmotubeData.RAW_MODE_NONE, copy.getRawMode());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decoding of raw advertisements on a plain JVM
+ */
+public class AtmotubeDecodersTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+
+    static byte[] proRecord() {
+        byte[] b = new byte[62];
+        put(b, 0, 0x02, 0x01, 0x06);
+        // manufacturer data: VOC 0.4 ppm, CRC, 45%, 23C, 1013.25 mbar, info, battery 87%
+        put(b, 3, 0x0F, 0xFF, 0xFF, 0xFF, 0x01, 0x90, 0x12, 0x34, 45, 23, 0x00, 0x01, 0x8B, 0xCD, 0x41, 87);
+        put(b, 19, 0x11, 0x07);
+        putUuid(b, 21, AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4);
+        put(b, 37, 0x09, 0x09, 'a', 't', 'm', 'o', 't', 'u', 'b', 'e');
+        // scan response: PM1 10, PM2.5 20, PM10 30, firmware 74.01.05
+        put(b, 47, 0x0D, 0xFF, 0xFF, 0xFF, 0x00, 0x0A, 0x00, 0x14, 0x00, 0x1E, 0x74, 0x01, 0x05);
+        return b;
+    }
+
+    static byte[] plusRecord() {
+        byte[] b = proRecord();
+        putUuid(b, 21, AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V3);
+        // scan response: baseline 0x0102, battery voltage 3.95V, firmware 73.02.01
+        put(b, 51, 0x01, 0x02, 0x01, 0x8B, 0x00, 0x00, 0x73, 0x02, 0x01);
+        return b;
+    }
+
+    static byte[] legacyFactoryRecord() {
+        byte[] b = new byte[62];
+        put(b, 2, 'A', 'T', 'M', 'O', 'T', 'E', 'S', 'T');
+        // VOC 3.00 ppm, 50%, 22C, info, firmware 72.01.03, hardware 0102
+        put(b, 14, 0x01, 0x2C, 50, 22, 0x05, 0x72, 0x01, 0x03, 0x01, 0x02);
+        return b;
+    }
+
+    @Test
+    public void decodePro() {
+        AtmotubeData data = new AtmotubeData();
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeDecoders.decode("Atmotube", MAC, proRecord(), -60, data));
+        assertEquals(AtmotubeData.HW_VER_PRO, data.getHwVer());
+        assertEquals(0.4f, data.getVOC(), 0);
+        assertEquals(45f, data.getHumidity(), 0);
+        assertEquals(23f, data.getTemperature(), 0);
+        assertEquals(1013.25f, data.getPressure(), 0);
+        assertEquals(10f, data.getPm1(), 0);
+        assertEquals(20f, data.getPm25(), 0);
+        assertEquals(30f, data.getPm10(), 0);
+        assertEquals(0x1234, data.getDeviceCRC());
+        assertEquals(87, data.getBattery());
+        assertEquals("740105", data.getFwVer());
+        assertTrue(data.isPmIsOn());
+        assertTrue(data.isActivated());
+        assertFalse(data.isCalibrating());
+        assertEquals(MAC, data.getMac());
+        assertEquals(-60, data.getRssi());
+    }
+
+    @Test
+    public void decodePlus() {
+        AtmotubeData data = new AtmotubeData();
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeDecoders.decode("ATMOTUBE", MAC, plusRecord(), -60, data));
+        assertEquals(AtmotubeData.HW_VER_PLUS, data.getHwVer());
+        assertEquals(0x0102, data.getADC());
+        assertEquals(395, data.getBatteryVoltage());
+        assertEquals("730201", data.getFwVer());
+        assertEquals(AtmotubeData.UNKNOWN, data.getPm25(), 0);
+    }
+
+    @Test
+    public void decodeLegacyFactory() {
+        AtmotubeData data = new AtmotubeData();
+        assertEquals(AtmotubeDecoder.DECODE_OK, AtmotubeDecoders.decode("ATMOTEST", MAC, legacyFactoryRecord(), -60, data));
+        assertEquals(AtmotubeData.HW_VER_2_0, data.getHwVer());
+        assertEquals(3f, data.getVOC(), 0);
+        assertEquals(300, data.getADC());
+        assertEquals("720103", data.getFwVer());
+    }
+
+    @Test
+    public void rejectInvalid() {
+        AtmotubeData data = new AtmotubeData();
+        byte[] other = new byte[62];
+        put(other, 0, 0x02, 0x01, 0x06, 0x03, 0x03, 0xAA, 0xFE);
+        assertFalse(AtmotubeDecoders.isCandidate(other));
+        assertEquals(AtmotubeDecoder.DECODE_NOT_ATMOTUBE, AtmotubeDecoders.decode("Beacon", MAC, other, -60, data));
+        assertFalse(data.isValid());
+        assertEquals(AtmotubeDecoder.DECODE_NO_DATA, AtmotubeDecoders.decode("Atmotube", MAC, null, -60, data));
+        byte[] truncated = Arrays.copyOf(proRecord(), 50);
+        truncated[47] = 0;
+        assertTrue(AtmotubeDecoders.isCandidate(truncated));
+        assertEquals(AtmotubeDecoder.DECODE_CORRUPTED, AtmotubeDecoders.decode("Atmotube", MAC, truncated, -60, data));
+        assertFalse(data.isValid());
+    }
+
+    @Test
+    public void localName() {
+        assertEquals("atmotube", AtmotubeDecoders.getLocalName(proRecord()));
+        assertNull(AtmotubeDecoders.getLocalName(legacyFactoryRecord()));
+    }
+
+    static void put(byte[] b, int off, int... values) {
+        for (int i = 0; i < values.length; i++) {
+            b[off + i] = (byte) values[i];
+        }
+    }
+
+    static void putUuid(byte[] b, int off, UUID uuid) {
+        long lsb = uuid.getLeastSignificantBits();
+        long msb = uuid.getMostSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            b[off + i] = (byte) (lsb >>> (8 * i));
+            b[off + 8 + i] = (byte) (msb >>> (8 * i));
+        }
+    }
+}
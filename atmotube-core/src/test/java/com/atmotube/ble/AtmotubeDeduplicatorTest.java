@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeDeduplicatorTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+
+    @Test
+    public void proMeasurement() {
+        AtmotubeDeduplicator dedup = new AtmotubeDeduplicator();
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        assertFalse(dedup.isDuplicate(MAC, record));
+        assertTrue(dedup.isDuplicate(MAC, record.clone()));
+        assertFalse(dedup.isDuplicate("C2:5E:11:00:AA:02", record));
+
+        // bytes outside of the measurement do not matter
+        byte[] other = record.clone();
+        other[61] = 0x7F;
+        assertTrue(dedup.isDuplicate(MAC, other));
+
+        // new PM reading in scan response
+        byte[] next = record.clone();
+        next[54] = 0x15;
+        assertFalse(dedup.isDuplicate(MAC, next));
+        // older record still remembered
+        assertTrue(dedup.isDuplicate(MAC, record));
+        assertEquals(3, dedup.getAccepted());
+        assertEquals(3, dedup.getDuplicates());
+    }
+
+    @Test
+    public void legacyRecord() {
+        AtmotubeDeduplicator dedup = new AtmotubeDeduplicator();
+        byte[] record = AtmotubeDecodersTest.legacyFactoryRecord();
+        assertFalse(dedup.isDuplicate(MAC, record));
+        assertTrue(dedup.isDuplicate(MAC, record));
+        byte[] other = record.clone();
+        other[61] = 1;
+        assertFalse(dedup.isDuplicate(MAC, other));
+    }
+
+    @Test
+    public void history() {
+        AtmotubeDeduplicator dedup = new AtmotubeDeduplicator(16, 2);
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        for (int voc = 0; voc < 3; voc++) {
+            record[8] = (byte) voc;
+            assertFalse(dedup.isDuplicate(MAC, record));
+        }
+        record[8] = 0;
+        assertFalse(dedup.isDuplicate(MAC, record));
+        record[8] = 2;
+        assertTrue(dedup.isDuplicate(MAC, record));
+    }
+
+    @Test
+    public void maxAge() {
+        AtmotubeDeduplicator dedup = new AtmotubeDeduplicator(16, 4, 5000);
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        assertFalse(dedup.isDuplicate(MAC, record, 1000));
+        assertTrue(dedup.isDuplicate(MAC, record, 6000));
+        // same measurement of a live device is let through once in a while
+        assertFalse(dedup.isDuplicate(MAC, record, 6001));
+        assertTrue(dedup.isDuplicate(MAC, record, 7000));
+        assertTrue(dedup.isDuplicate(MAC, record, 11001));
+        assertFalse(dedup.isDuplicate(MAC, record, 11002));
+        assertEquals(3, dedup.getAccepted());
+        assertEquals(3, dedup.getDuplicates());
+    }
+
+    @Test
+    public void boundedDevices() {
+        AtmotubeDeduplicator dedup = new AtmotubeDeduplicator(16, 4);
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(dedup.isDuplicate(String.format(Locale.US, "C2:5E:11:00:%02X:%02X", i >> 8, i & 0xFF), record));
+        }
+        assertTrue(dedup.getEvictions() >= 1000 - 16);
+        assertFalse(dedup.isDuplicate(MAC, null));
+        assertFalse(dedup.isDuplicate("not a mac", record));
+    }
+
+    private static class CrcDecoder implements AtmotubeDecoder, AtmotubeDecoder.DeviceCrcLayout {
+        @Override
+        public int decode(String name, String mac, byte[] record, int rssi, AtmotubeData target) {
+            return DECODE_OK;
+        }
+
+        @Override
+        public int getDeviceCrcOffset() {
+            return 9;
+        }
+
+        @Override
+        public int[] getMeasurementRanges() {
+            return new int[]{7, 19};
+        }
+    }
+
+    @Test
+    public void registeredLayout() {
+        UUID uuid = UUID.fromString("db450001-8e9a-4818-add7-6ed94a328ab5");
+        AtmotubeDecoders.register(uuid, new CrcDecoder());
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        AtmotubeDecodersTest.putUuid(record, 21, uuid);
+        AtmotubeDeduplicator dedup = new AtmotubeDeduplicator();
+        assertFalse(dedup.isDuplicate(MAC, record));
+        // scan response is not a measurement of this layout
+        byte[] other = record.clone();
+        other[54] = 0x15;
+        assertTrue(dedup.isDuplicate(MAC, other));
+        byte[] next = record.clone();
+        next[8] = 0x15;
+        assertFalse(dedup.isDuplicate(MAC, next));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeDownsamplerTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+
+    private static AtmotubeData reading(String mac, long time, float voc, float pm25) {
+        AtmotubeData data = new AtmotubeData();
+        data.setMac(mac);
+        data.setVOC(voc);
+        data.setTemperature(20);
+        if (pm25 != AtmotubeData.UNKNOWN) {
+            data.setPm(1f, pm25, 3f);
+        }
+        data.setTime(time);
+        return data;
+    }
+
+    @Test
+    public void meanPerInterval() {
+        AtmotubeDownsampler sampler = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_MEAN, 60);
+        AtmotubeData out = new AtmotubeData();
+        assertFalse(sampler.add(reading(MAC, 120, 1f, 10f), out));
+        assertFalse(sampler.add(reading(MAC, 150, 2f, AtmotubeData.UNKNOWN), out));
+        assertFalse(sampler.add(reading(MAC, 179, 3f, 20f), out));
+        assertTrue(sampler.add(reading(MAC, 180, 5f, 30f), out));
+        assertEquals(120, out.getTime());
+        assertEquals(2f, out.getVOC(), 1e-6);
+        // unknown PM is skipped
+        assertEquals(15f, out.getPm25(), 1e-6);
+        assertEquals(20f, out.getTemperature(), 0);
+        assertEquals(MAC, out.getMac());
+
+        assertTrue(sampler.flush(MAC, out));
+        assertEquals(180, out.getTime());
+        assertEquals(5f, out.getVOC(), 0);
+        assertFalse(sampler.flush(MAC, out));
+    }
+
+    @Test
+    public void minMaxLast() {
+        AtmotubeData out = new AtmotubeData();
+        AtmotubeDownsampler min = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_MIN, 60);
+        AtmotubeDownsampler max = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_MAX, 60);
+        AtmotubeDownsampler last = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_LAST, 60);
+        float[] voc = {0.5f, 0.2f, 0.9f};
+        for (int i = 0; i < voc.length; i++) {
+            AtmotubeData data = reading(MAC, i * 10, voc[i], i == 2 ? AtmotubeData.UNKNOWN : 10f + i);
+            min.add(data, out);
+            max.add(data, out);
+            last.add(data, out);
+        }
+        assertTrue(min.flush(MAC, out));
+        assertEquals(0.2f, out.getVOC(), 0);
+        assertTrue(max.flush(MAC, out));
+        assertEquals(0.9f, out.getVOC(), 0);
+        assertEquals(11f, out.getPm25(), 0);
+        assertTrue(last.flush(MAC, out));
+        assertEquals(0.9f, out.getVOC(), 0);
+        // last known PM value
+        assertEquals(11f, out.getPm25(), 0);
+        assertEquals(20, out.getTime());
+    }
+
+    private static AtmotubeData pm(long time, float pm1, float pm25, float pm10) {
+        AtmotubeData data = reading(MAC, time, 1f, AtmotubeData.UNKNOWN);
+        data.mPm1 = pm1;
+        data.mPm25 = pm25;
+        data.mPm10 = pm10;
+        return data;
+    }
+
+    @Test
+    public void pmTriple() {
+        AtmotubeData out = new AtmotubeData();
+        AtmotubeDownsampler last = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_LAST, 60);
+        AtmotubeDownsampler mean = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_MEAN, 60);
+        AtmotubeDownsampler max = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_MAX, 60);
+        AtmotubeData[] readings = {
+                pm(0, 1f, 10f, 30f),
+                pm(10, 2f, 20f, 3f),
+                // partial PM is not a reading of the triple
+                pm(20, AtmotubeData.UNKNOWN, 50f, AtmotubeData.UNKNOWN),
+        };
+        for (AtmotubeData data : readings) {
+            last.add(data, out);
+            mean.add(data, out);
+            max.add(data, out);
+        }
+        assertTrue(last.flush(MAC, out));
+        assertEquals(2f, out.getPm1(), 0);
+        assertEquals(20f, out.getPm25(), 0);
+        assertEquals(3f, out.getPm10(), 0);
+        assertTrue(mean.flush(MAC, out));
+        assertEquals(15f, out.getPm25(), 1e-6);
+        assertEquals(16.5f, out.getPm10(), 1e-6);
+        // values of one reading, not the maximum of every field
+        assertTrue(max.flush(MAC, out));
+        assertEquals(2f, out.getPm1(), 0);
+        assertEquals(20f, out.getPm25(), 0);
+        assertEquals(3f, out.getPm10(), 0);
+
+        // only partial PM in the interval
+        assertFalse(last.add(pm(60, 5f, AtmotubeData.UNKNOWN, 5f), out));
+        assertTrue(last.flush(MAC, out));
+        assertEquals(AtmotubeData.UNKNOWN, out.getPm1(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, out.getPm10(), 0);
+
+        AtmotubeDownsampler change = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_CHANGE, 300);
+        assertTrue(change.add(pm(0, 5f, AtmotubeData.UNKNOWN, 5f), out));
+        assertEquals(AtmotubeData.UNKNOWN, out.getPm1(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, out.getPm10(), 0);
+    }
+
+    @Test
+    public void devicesAreIndependent() {
+        AtmotubeDownsampler sampler = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_LAST, 60);
+        AtmotubeData out = new AtmotubeData();
+        String other = "C2:5E:11:00:AA:02";
+        assertFalse(sampler.add(reading(MAC, 0, 1f, 10f), out));
+        assertFalse(sampler.add(reading(other, 100, 2f, 10f), out));
+        assertTrue(sampler.add(reading(MAC, 100, 3f, 10f), out));
+        assertEquals(1f, out.getVOC(), 0);
+        assertEquals(2, sampler.size());
+        assertEquals(0, sampler.removeOlderThan(100));
+        assertEquals(2, sampler.removeOlderThan(101));
+    }
+
+    @Test
+    public void changeThreshold() {
+        AtmotubeDownsampler sampler = new AtmotubeDownsampler(AtmotubeDownsampler.MODE_CHANGE, 300);
+        sampler.setThreshold(AtmotubeDownsampler.FIELD_VOC, 0.1f);
+        sampler.setThreshold(AtmotubeDownsampler.FIELD_PM25, 5f);
+        AtmotubeData out = new AtmotubeData();
+        assertTrue(sampler.add(reading(MAC, 0, 1f, 10f), out));
+        assertFalse(sampler.add(reading(MAC, 2, 1.05f, 12f), out));
+        assertTrue(sampler.add(reading(MAC, 4, 1.2f, 12f), out));
+        assertEquals(1.2f, out.getVOC(), 0);
+        assertFalse(sampler.add(reading(MAC, 6, 1.25f, 14f), out));
+        // PM turned off
+        assertTrue(sampler.add(reading(MAC, 8, 1.25f, AtmotubeData.UNKNOWN), out));
+        assertFalse(sampler.add(reading(MAC, 10, 1.25f, AtmotubeData.UNKNOWN), out));
+        // heartbeat
+        assertTrue(sampler.add(reading(MAC, 308, 1.25f, AtmotubeData.UNKNOWN), out));
+        assertFalse(sampler.flush(MAC, out));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalRequired() {
+        new AtmotubeDownsampler(AtmotubeDownsampler.MODE_MEAN, 0);
+    }
+}
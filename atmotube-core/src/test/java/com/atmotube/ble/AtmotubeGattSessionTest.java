@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeGattSessionTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+
+    private static class Events implements AtmotubeGattSession.Listener {
+        final List<Integer> mErrors = new ArrayList<>();
+        final List<byte[]> mUart = new ArrayList<>();
+        final CountDownLatch mReady = new CountDownLatch(1);
+        final CountDownLatch mDisconnected = new CountDownLatch(1);
+        volatile CountDownLatch mUpdate = new CountDownLatch(1);
+        final AtmotubeData mLast = new AtmotubeData();
+
+        @Override
+        public void onStateChanged(AtmotubeGattSession session, int state) {
+            if (state == AtmotubeGattSession.STATE_READY) {
+                mReady.countDown();
+            } else if (state == AtmotubeGattSession.STATE_DISCONNECTED) {
+                mDisconnected.countDown();
+            }
+        }
+
+        @Override
+        public void onUpdate(AtmotubeGattSession session, AtmotubeData data) {
+            synchronized (this) {
+                mLast.copyFrom(data);
+            }
+            mUpdate.countDown();
+        }
+
+        @Override
+        public synchronized void onUartData(AtmotubeGattSession session, byte[] value) {
+            mUart.add(value.clone());
+        }
+
+        @Override
+        public synchronized void onError(AtmotubeGattSession session, int error) {
+            mErrors.add(error);
+        }
+    }
+
+    private AtmotubeGattManager mManager;
+
+    @After
+    public void tearDown() {
+        if (mManager != null) {
+            mManager.close();
+        }
+    }
+
+    private static FakeGattTransport proTransport() {
+        FakeGattTransport transport = new FakeGattTransport(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4,
+                AtmotubeConstants.UART_SERVICE_UUID);
+        transport.mValues.put(AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4, new byte[]{0x01, (byte) 0x90, 0, 0});
+        transport.mValues.put(AtmotubeConstants.BME280_CHARACTERISTIC_UUID_V4, new byte[]{45, 23, 0x00, 0x01, (byte) 0x8B, (byte) 0xCD});
+        transport.mValues.put(AtmotubeConstants.STATUS_CHARACTERISTIC_UUID_V4, new byte[]{0x41, 87});
+        transport.mValues.put(AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4, new byte[]{0, 10, 0, 20, 0, 30, 0, 0});
+        return transport;
+    }
+
+    @Test
+    public void proSession() throws InterruptedException {
+        Events events = new Events();
+        mManager = new AtmotubeGattManager(events);
+        FakeGattTransport transport = proTransport();
+        AtmotubeData data = new AtmotubeData();
+        data.setFwVer("740105");
+        AtmotubeGattSession session = mManager.connect(MAC, transport, data);
+        assertTrue(events.mReady.await(5, TimeUnit.SECONDS));
+        assertTrue(events.mUpdate.await(5, TimeUnit.SECONDS));
+        synchronized (events) {
+            assertEquals(0.4f, events.mLast.getVOC(), 0);
+            assertEquals(1013.25f, events.mLast.getPressure(), 0);
+            assertEquals(87, events.mLast.getBattery());
+            assertEquals(20f, events.mLast.getPm25(), 0);
+            assertEquals(AtmotubeData.HW_VER_PRO, events.mLast.getHwVer());
+            assertEquals(MAC, events.mLast.getMac());
+        }
+        List<String> operations = transport.getOperations();
+        assertEquals("connect", operations.get(0));
+        assertEquals("mtu " + AtmotubeGattSession.REQUESTED_MTU, operations.get(1));
+        assertEquals("discover", operations.get(2));
+        assertEquals("notify " + AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4, operations.get(3));
+        assertEquals("notify " + AtmotubeConstants.UART_TX_CHARACTERISTIC_UUID, operations.get(7));
+        assertEquals("read " + AtmotubeConstants.PM_CHARACTERISTIC_UUID_V4, operations.get(11));
+        assertEquals(185, session.getMtu());
+
+        events.mUpdate = new CountDownLatch(1);
+        // answered in order, UART data is delivered before the update
+        transport.notify(AtmotubeConstants.UART_TX_CHARACTERISTIC_UUID, new byte[]{1, 2, 3});
+        transport.notify(AtmotubeConstants.VOC_CHARACTERISTIC_UUID_V4, new byte[]{0x03, (byte) 0xE8, 0, 0});
+        assertTrue(events.mUpdate.await(5, TimeUnit.SECONDS));
+        assertTrue(session.writeUart(new byte[]{4, 5}));
+        AtmotubeData copy = new AtmotubeData();
+        session.getData(copy);
+        assertEquals(1f, copy.getVOC(), 0);
+        assertEquals(20f, copy.getPm25(), 0);
+
+        mManager.disconnect(MAC);
+        assertEquals(AtmotubeGattSession.STATE_CLOSED, session.getState());
+        assertTrue(transport.mClosed);
+        assertFalse(session.writeUart(new byte[]{6}));
+        synchronized (events) {
+            assertEquals(1, events.mUart.size());
+            assertTrue(events.mErrors.isEmpty());
+        }
+    }
+
+    @Test
+    public void timeout() throws InterruptedException {
+        Events events = new Events();
+        mManager = new AtmotubeGattManager(events);
+        mManager.setTimeout(100);
+        FakeGattTransport transport = proTransport();
+        transport.setHang(true);
+        AtmotubeGattSession session = mManager.connect(MAC, transport, new AtmotubeData());
+        assertTrue(events.mDisconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(AtmotubeGattSession.STATE_DISCONNECTED, session.getState());
+        assertTrue(transport.mClosed);
+        synchronized (events) {
+            assertEquals(AtmotubeGattSession.ERROR_TIMEOUT, events.mErrors.get(0).intValue());
+        }
+    }
+
+    @Test
+    public void notAtmotube() throws InterruptedException {
+        Events events = new Events();
+        mManager = new AtmotubeGattManager(events);
+        FakeGattTransport transport = new FakeGattTransport(AtmotubeConstants.UART_SERVICE_UUID);
+        mManager.connect(MAC, transport, new AtmotubeData());
+        assertTrue(events.mDisconnected.await(5, TimeUnit.SECONDS));
+        synchronized (events) {
+            assertEquals(AtmotubeGattSession.ERROR_NOT_ATMOTUBE, events.mErrors.get(0).intValue());
+        }
+    }
+
+    @Test
+    public void slowDeviceDoesNotStallOthers() throws InterruptedException {
+        final String fastMac = "C2:5E:11:00:AA:02";
+        final CountDownLatch slowReady = new CountDownLatch(1);
+        final CountDownLatch fastReady = new CountDownLatch(1);
+        mManager = new AtmotubeGattManager(new Events() {
+            @Override
+            public void onStateChanged(AtmotubeGattSession session, int state) {
+                if (state == AtmotubeGattSession.STATE_READY) {
+                    (fastMac.equals(session.getMac()) ? fastReady : slowReady).countDown();
+                }
+            }
+        });
+        FakeGattTransport slow = proTransport();
+        slow.setDelay(100);
+        mManager.connect(MAC, slow, new AtmotubeData());
+        mManager.connect(fastMac, proTransport(), new AtmotubeData());
+        assertTrue(fastReady.await(5, TimeUnit.SECONDS));
+        assertEquals(1, slowReady.getCount());
+        assertEquals(2, mManager.getSessions().size());
+        assertTrue(slowReady.await(5, TimeUnit.SECONDS));
+    }
+}
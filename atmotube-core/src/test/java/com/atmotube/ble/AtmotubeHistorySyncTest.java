@@ -0,0 +1,259 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeHistorySyncTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+    private static final long T0 = 1500000000L;
+
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+    private AtmotubeGattManager mManager;
+    private AtmotubeHistorySync mSync;
+
+    @After
+    public void tearDown() {
+        if (mManager != null) {
+            mManager.close();
+        }
+    }
+
+    private static void record(ByteArrayOutputStream out, long time, int voc, int pm25) {
+        byte[] b = new byte[FakeHistoryCodec.RECORD_SIZE];
+        AtmotubeDecodersTest.put(b, 0, (int) (time >>> 24) & 0xFF, (int) (time >>> 16) & 0xFF, (int) (time >>> 8) & 0xFF, (int) time & 0xFF,
+                voc >> 8, voc & 0xFF, 45, 0xFB, 0x00, 0x01, 0x8B, 0xCD, 0x41,
+                0, 10, pm25 >> 8, pm25 & 0xFF, 0, 30);
+        out.write(b, 0, b.length);
+    }
+
+    private static byte[] frame(int type, long fromTime, int count, int pm25) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            record(records, fromTime + i * 60, 400 + i, pm25);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(type);
+        out.write(records.size() >> 8);
+        out.write(records.size() & 0xFF);
+        out.write(records.toByteArray(), 0, records.size());
+        return out.toByteArray();
+    }
+
+    // notifications of at most chunk bytes
+    private static void send(FakeGattTransport transport, byte[] data, int from, int to, int chunk) {
+        for (int off = from; off < to; off += chunk) {
+            int end = Math.min(to, off + chunk);
+            byte[] value = new byte[end - off];
+            System.arraycopy(data, off, value, 0, value.length);
+            transport.notify(AtmotubeConstants.UART_TX_CHARACTERISTIC_UUID, value);
+        }
+    }
+
+    private String next() throws InterruptedException {
+        String event = mEvents.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        return event;
+    }
+
+    private static long time(byte[] command) {
+        return AtmotubeBytes.int32(command, 1) & 0xFFFFFFFFL;
+    }
+
+    @Test
+    public void resumeAfterDisconnect() throws InterruptedException {
+        AtmotubeSeries series = new AtmotubeSeries(MAC);
+        mSync = new AtmotubeHistorySync(series, new FakeHistoryCodec(), new AtmotubeHistorySync.Listener() {
+            @Override
+            public void onProgress(AtmotubeHistorySync sync, int records) {
+                mEvents.add("progress " + records);
+            }
+
+            @Override
+            public void onComplete(AtmotubeHistorySync sync, int records) {
+                mEvents.add("complete " + records);
+            }
+
+            @Override
+            public void onError(AtmotubeHistorySync sync) {
+                mEvents.add("error");
+            }
+        });
+        mManager = new AtmotubeGattManager(new AtmotubeGattSession.Listener() {
+            @Override
+            public void onStateChanged(AtmotubeGattSession session, int state) {
+                if (state == AtmotubeGattSession.STATE_READY) {
+                    mSync.start(session);
+                }
+                mEvents.add("state " + state);
+            }
+
+            @Override
+            public void onUpdate(AtmotubeGattSession session, AtmotubeData data) {
+            }
+
+            @Override
+            public void onUartData(AtmotubeGattSession session, byte[] value) {
+                mSync.onUartData(value);
+            }
+
+            @Override
+            public void onError(AtmotubeGattSession session, int error) {
+            }
+        });
+        FakeGattTransport transport = new FakeGattTransport(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4,
+                AtmotubeConstants.UART_SERVICE_UUID);
+        AtmotubeGattSession session = mManager.connect(MAC, transport, new AtmotubeData());
+        while (!next().equals("state " + AtmotubeGattSession.STATE_READY)) {
+        }
+
+        byte[] first = frame(FakeHistoryCodec.FRAME_DATA, T0, 3, 20);
+        send(transport, first, 0, first.length, 7);
+        assertEquals("progress 3", next());
+        assertEquals(3, series.size());
+        assertEquals(T0 + 120, mSync.getAckedTime());
+        assertEquals(0.402f, series.getVOC(2), 0);
+        assertEquals(-5f, series.getTemperature(2), 0);
+        assertEquals(1013.25f, series.getPressure(2), 0);
+        assertEquals(20f, series.getPm25(2), 0);
+
+        // second frame is interrupted after one and a half records
+        byte[] second = frame(FakeHistoryCodec.FRAME_DATA, T0 + 180, 2, AtmotubeData.PM_OFF);
+        send(transport, second, 0, 3 + FakeHistoryCodec.RECORD_SIZE * 3 / 2, 20);
+        transport.drop();
+        while (!next().equals("state " + AtmotubeGattSession.STATE_DISCONNECTED)) {
+        }
+        assertEquals(4, series.size());
+        assertEquals(T0 + 120, mSync.getAckedTime());
+
+        session.connect();
+        while (!next().equals("state " + AtmotubeGattSession.STATE_READY)) {
+        }
+        // device sends everything after the acknowledged time again
+        send(transport, second, 0, second.length, 64);
+        assertEquals("progress 1", next());
+        byte[] end = {FakeHistoryCodec.FRAME_END, 0, 0};
+        send(transport, end, 0, end.length, 64);
+        assertEquals("complete 1", next());
+        assertFalse(mSync.isRunning());
+
+        assertEquals(5, series.size());
+        assertEquals(T0 + 240, series.getTime(4));
+        assertEquals(AtmotubeData.UNKNOWN, series.getPm25(4), 0);
+
+        List<byte[]> writes = transport.getWrites();
+        assertEquals(4, writes.size());
+        assertEquals(FakeHistoryCodec.CMD_REQUEST, writes.get(0)[0]);
+        assertEquals(0, time(writes.get(0)));
+        assertEquals(FakeHistoryCodec.CMD_ACK, writes.get(1)[0]);
+        assertEquals(T0 + 120, time(writes.get(1)));
+        assertEquals(FakeHistoryCodec.CMD_REQUEST, writes.get(2)[0]);
+        assertEquals(T0 + 120, time(writes.get(2)));
+        assertEquals(T0 + 240, time(writes.get(3)));
+    }
+
+    @Test
+    public void startsAfterSeries() throws InterruptedException {
+        AtmotubeSeries series = new AtmotubeSeries(MAC);
+        series.append(T0, 1f, 20f, 40f, 1000f, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN,
+                AtmotubeSeries.INFO_UNKNOWN);
+        final boolean[] error = new boolean[1];
+        AtmotubeHistorySync sync = new AtmotubeHistorySync(series, new FakeHistoryCodec(), new AtmotubeHistorySync.Listener() {
+            @Override
+            public void onProgress(AtmotubeHistorySync sync, int records) {
+            }
+
+            @Override
+            public void onComplete(AtmotubeHistorySync sync, int records) {
+            }
+
+            @Override
+            public void onError(AtmotubeHistorySync sync) {
+                error[0] = true;
+            }
+        });
+        assertEquals(T0, sync.getAckedTime());
+        assertFalse(sync.isRunning());
+        sync.onUartData(new byte[]{FakeHistoryCodec.FRAME_DATA, 0, 5});
+        // not started, ignored
+        assertFalse(error[0]);
+    }
+
+    @Test(timeout = 30000)
+    public void startDuringNotifications() throws InterruptedException {
+        final AtmotubeSeries series = new AtmotubeSeries(MAC);
+        mSync = new AtmotubeHistorySync(series, new FakeHistoryCodec(), new AtmotubeHistorySync.Listener() {
+            @Override
+            public void onProgress(AtmotubeHistorySync sync, int records) {
+            }
+
+            @Override
+            public void onComplete(AtmotubeHistorySync sync, int records) {
+                mEvents.add("complete");
+            }
+
+            @Override
+            public void onError(AtmotubeHistorySync sync) {
+                mEvents.add("error");
+            }
+        });
+        mManager = new AtmotubeGattManager(new AtmotubeGattSession.Listener() {
+            @Override
+            public void onStateChanged(AtmotubeGattSession session, int state) {
+                mEvents.add("state " + state);
+            }
+
+            @Override
+            public void onUpdate(AtmotubeGattSession session, AtmotubeData data) {
+            }
+
+            @Override
+            public void onUartData(AtmotubeGattSession session, byte[] value) {
+                mSync.onUartData(value);
+            }
+
+            @Override
+            public void onError(AtmotubeGattSession session, int error) {
+            }
+        });
+        FakeGattTransport transport = new FakeGattTransport(AtmotubeConstants.ATMOTUBE_SERVICE_UUID_V4,
+                AtmotubeConstants.UART_SERVICE_UUID);
+        AtmotubeGattSession session = mManager.connect(MAC, transport, new AtmotubeData());
+        while (!next().equals("state " + AtmotubeGattSession.STATE_READY)) {
+        }
+        // app thread restarts the sync while the transport thread delivers frames
+        for (int i = 0; i < 2000; i++) {
+            byte[] frame = frame(FakeHistoryCodec.FRAME_DATA, T0 + i * 60, 1, 20);
+            send(transport, frame, 0, frame.length, 64);
+            assertTrue(mSync.start(session));
+        }
+        byte[] end = {FakeHistoryCodec.FRAME_END, 0, 0};
+        send(transport, end, 0, end.length, 64);
+        assertEquals("complete", next());
+        assertEquals(T0 + 1999 * 60, series.getTime(series.size() - 1));
+    }
+}
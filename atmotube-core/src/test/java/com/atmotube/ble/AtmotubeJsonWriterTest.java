@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeJsonWriterTest {
+
+    @Test
+    public void rows() throws IOException {
+        StringWriter out = new StringWriter();
+        AtmotubeJsonWriter writer = new AtmotubeJsonWriter(out);
+        AtmotubeData data = new AtmotubeData();
+        data.setVOC(0.456f);
+        data.setTemperature(23);
+        data.setHumidity(45.5f);
+        data.setTime(1600000000);
+        writer.write(data);
+        writer.write(52.52, 13.405, 1.2f, 21.45f, 40, 10, 20, 30, 1600000002);
+        writer.close();
+        assertEquals("[[-1000,-1000,72,0.46,23,45.5,1600000000],"
+                + "[52.52,13.405,57,1.2,21.450000762939453,40,1600000002]]", out.toString());
+    }
+
+    @Test
+    public void empty() throws IOException {
+        StringWriter out = new StringWriter();
+        new AtmotubeJsonWriter(out).close();
+        assertEquals("[]", out.toString());
+    }
+
+    @Test
+    public void largeSeries() throws IOException {
+        AtmotubeSeries series = new AtmotubeSeries(null);
+        for (int i = 0; i < 10000; i++) {
+            series.append(i, 0.3f, 20, 40, 1000, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, 0);
+        }
+        StringWriter out = new StringWriter();
+        AtmotubeJsonWriter writer = new AtmotubeJsonWriter(out);
+        writer.write(series, 0, series.size());
+        writer.finish();
+        String json = out.toString();
+        assertTrue(json.startsWith("[[-1000,-1000,82,0.3,20,40,0],"));
+        assertTrue(json.endsWith(",[-1000,-1000,82,0.3,20,40,9999]]"));
+    }
+
+    @Test
+    public void numbers() {
+        StringBuilder s = new StringBuilder();
+        AtmotubeJsonWriter.appendNumber(s, -0d);
+        s.append(' ');
+        AtmotubeJsonWriter.appendNumber(s, 1e20);
+        s.append(' ');
+        AtmotubeJsonWriter.appendNumber(s, -2.5);
+        assertEquals("-0 1.0E20 -2.5", s.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notANumber() throws IOException {
+        new AtmotubeJsonWriter(new StringWriter()).write(Double.NaN, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+}
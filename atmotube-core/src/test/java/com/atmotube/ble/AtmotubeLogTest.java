@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeLogTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static AtmotubeData reading(int i) {
+        AtmotubeData data = new AtmotubeData();
+        AtmotubeDecoders.decode("Atmotube", i % 2 == 0 ? "C2:5E:11:00:AA:01" : "C2:5E:11:00:AA:02",
+                AtmotubeDecodersTest.proRecord(), -60, data);
+        data.setTime(1000 + i);
+        data.setPm(i, i * 2, i * 3);
+        return data;
+    }
+
+    @Test
+    public void appendReopen() throws IOException {
+        File dir = mFolder.newFolder();
+        AtmotubeLog log = new AtmotubeLog(dir, 10);
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, log.append(reading(i)));
+        }
+        log.close();
+
+        log = new AtmotubeLog(dir, 1000);
+        assertEquals(10, log.getRecordsPerSegment());
+        assertEquals(0, log.getFirstIndex());
+        assertEquals(25, log.getNextIndex());
+        AtmotubeData data = new AtmotubeData();
+        for (int i = 0; i < 25; i++) {
+            AtmotubeData expected = reading(i);
+            assertTrue(log.read(i, data));
+            assertEquals(expected.getMac(), data.getMac());
+            assertEquals(expected.getFwVer(), data.getFwVer());
+            assertEquals(expected.getTime(), data.getTime());
+            assertEquals(expected.getVOC(), data.getVOC(), 0);
+            assertEquals(expected.getPressure(), data.getPressure(), 0);
+            assertEquals(expected.getPm10(), data.getPm10(), 0);
+            assertEquals(expected.getBattery(), data.getBattery());
+            assertEquals(expected.getDeviceCRC(), data.getDeviceCRC());
+            assertSame(expected.getInfo(), data.getInfo());
+            assertEquals(expected.getHwVer(), data.getHwVer());
+        }
+        assertEquals(25, log.append(reading(25)));
+        assertEquals(20, log.deleteBefore(22));
+        assertEquals(20, log.getFirstIndex());
+        log.close();
+        assertEquals(20, new AtmotubeLog(dir).getFirstIndex());
+    }
+
+    @Test
+    public void tornRecord() throws IOException {
+        File dir = mFolder.newFolder();
+        AtmotubeLog log = new AtmotubeLog(dir, 10);
+        for (int i = 0; i < 15; i++) {
+            log.append(reading(i));
+        }
+        log.close();
+        // process killed in the middle of record 14
+        RandomAccessFile segment = new RandomAccessFile(new File(dir, "000000000001.log"), "rw");
+        segment.seek(AtmotubeLog.HEADER_SIZE + 4 * AtmotubeLog.RECORD_SIZE + 20);
+        segment.write(new byte[8]);
+        segment.close();
+
+        log = new AtmotubeLog(dir, 10);
+        assertEquals(14, log.getNextIndex());
+        assertEquals(14, log.append(reading(99)));
+        AtmotubeData data = new AtmotubeData();
+        assertTrue(log.read(14, data));
+        assertEquals(1099, data.getTime());
+        log.close();
+    }
+
+    @Test
+    public void validRecordAfterTornOne() throws IOException {
+        File dir = mFolder.newFolder();
+        AtmotubeLog log = new AtmotubeLog(dir, 10);
+        for (int i = 0; i < 15; i++) {
+            log.append(reading(i));
+        }
+        log.close();
+        // record 12 is torn, pages of records 13 and 14 reached the disk
+        RandomAccessFile segment = new RandomAccessFile(new File(dir, "000000000001.log"), "rw");
+        segment.seek(AtmotubeLog.HEADER_SIZE + 2 * AtmotubeLog.RECORD_SIZE + 20);
+        segment.write(new byte[8]);
+        segment.close();
+
+        log = new AtmotubeLog(dir, 10);
+        assertEquals(12, log.getNextIndex());
+        assertEquals(12, log.append(reading(99)));
+        log.close();
+
+        log = new AtmotubeLog(dir, 10);
+        assertEquals(13, log.getNextIndex());
+        AtmotubeData data = new AtmotubeData();
+        assertTrue(log.read(12, data));
+        assertEquals(1099, data.getTime());
+        log.close();
+    }
+
+    @Test
+    public void damagedDeviceEntry() throws IOException {
+        File dir = mFolder.newFolder();
+        AtmotubeLog log = new AtmotubeLog(dir, 10);
+        String[] macs = {"C2:5E:11:00:AA:01", "C2:5E:11:00:AA:02", "C2:5E:11:00:AA:03"};
+        for (int i = 0; i < 15; i++) {
+            AtmotubeData data = reading(i);
+            data.setMac(macs[i % 3]);
+            log.append(data);
+        }
+        log.close();
+        // damage the second device entry, the third one is dropped with it
+        RandomAccessFile devices = new RandomAccessFile(new File(dir, "devices.dat"), "rw");
+        long second = 8 + devices.readInt();
+        devices.seek(second + 7);
+        devices.write('X');
+        devices.close();
+
+        log = new AtmotubeLog(dir, 10);
+        AtmotubeData data = new AtmotubeData();
+        assertTrue(log.read(0, data));
+        assertEquals(macs[0], data.getMac());
+        assertFalse(log.read(1, data));
+        assertFalse(log.read(14, data));
+        // lost ids are not given to a new device
+        AtmotubeData other = reading(15);
+        other.setMac("C2:5E:11:00:AA:04");
+        assertEquals(15, log.append(other));
+        log.close();
+
+        log = new AtmotubeLog(dir, 10);
+        assertFalse(log.read(13, data));
+        assertTrue(log.read(15, data));
+        assertEquals("C2:5E:11:00:AA:04", data.getMac());
+        assertTrue(log.read(12, data));
+        assertEquals(macs[0], data.getMac());
+        log.close();
+    }
+}
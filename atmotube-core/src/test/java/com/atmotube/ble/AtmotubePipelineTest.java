@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AtmotubePipelineTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+
+    private static class Collector implements AtmotubePipeline.Listener {
+        final List<AtmotubeData> mData = new ArrayList<>();
+        final List<Integer> mBatches = new ArrayList<>();
+        final CountDownLatch mLatch;
+
+        Collector(int expected) {
+            mLatch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onBatch(AtmotubeData[] data, int count) {
+            synchronized (this) {
+                mBatches.add(count);
+                for (int i = 0; i < count; i++) {
+                    AtmotubeData copy = new AtmotubeData();
+                    copy.copyFrom(data[i]);
+                    mData.add(copy);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                mLatch.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void fullBatches() throws InterruptedException {
+        Collector collector = new Collector(8);
+        AtmotubePipeline pipeline = new AtmotubePipeline(collector, 16, 4, 60000);
+        pipeline.start();
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        for (int i = 0; i < 8; i++) {
+            assertTrue(pipeline.offer("Atmotube", MAC, record, -60 - i, 1500000000000L + i * 1000));
+        }
+        assertTrue(collector.mLatch.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        synchronized (collector) {
+            assertEquals(8, collector.mData.size());
+            for (int count : collector.mBatches) {
+                assertEquals(4, count);
+            }
+            AtmotubeData last = collector.mData.get(7);
+            assertEquals(-67, last.getRssi());
+            assertEquals(1500000007L, last.getTime());
+            assertEquals(0.4f, last.getVOC(), 0);
+            assertNull(last.getRawBytes());
+        }
+        assertEquals(8, pipeline.getDecoded());
+    }
+
+    @Test
+    public void latencyBound() throws InterruptedException {
+        Collector collector = new Collector(1);
+        AtmotubePipeline pipeline = new AtmotubePipeline(collector, 16, 8, 10);
+        pipeline.setKeepRaw(true);
+        pipeline.start();
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        pipeline.offer("Atmotube", MAC, record, -60, System.currentTimeMillis());
+        assertTrue(collector.mLatch.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        synchronized (collector) {
+            assertEquals(1, collector.mBatches.get(0).intValue());
+            assertArrayEquals(record, collector.mData.get(0).getRawBytes());
+        }
+    }
+
+    @Test
+    public void dropWhenFull() throws InterruptedException {
+        Collector collector = new Collector(4);
+        AtmotubePipeline pipeline = new AtmotubePipeline(collector, 4, 4, 0);
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(pipeline.offer("Atmotube", MAC, record, -60, 0));
+        }
+        assertFalse(pipeline.offer("Atmotube", MAC, record, -60, 0));
+        assertEquals(1, pipeline.getDropped());
+        // queued records are delivered once the worker starts
+        pipeline.start();
+        assertTrue(collector.mLatch.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+    }
+
+    @Test
+    public void rejectAndDeduplicate() throws InterruptedException {
+        Collector collector = new Collector(1);
+        AtmotubePipeline pipeline = new AtmotubePipeline(collector, 16, 4, 0);
+        pipeline.setDeduplicator(new AtmotubeDeduplicator());
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        pipeline.offer("Atmotube", MAC, record, -60, 0);
+        pipeline.offer("Atmotube", MAC, record, -61, 0);
+        pipeline.offer("Beacon", MAC, new byte[62], -60, 0);
+        pipeline.start();
+        pipeline.stop();
+        assertEquals(1, pipeline.getDecoded());
+        assertEquals(1, pipeline.getRejected());
+        synchronized (collector) {
+            assertEquals(1, collector.mData.size());
+        }
+    }
+
+    @Test
+    public void listenerFailure() throws InterruptedException {
+        final Collector collector = new Collector(1);
+        AtmotubePipeline pipeline = new AtmotubePipeline(new AtmotubePipeline.Listener() {
+            private boolean mFailed;
+
+            @Override
+            public void onBatch(AtmotubeData[] data, int count) {
+                if (!mFailed) {
+                    mFailed = true;
+                    throw new IllegalStateException("listener");
+                }
+                collector.onBatch(data, count);
+            }
+        }, 16, 1, 0);
+        pipeline.start();
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        pipeline.offer("Atmotube", MAC, record, -60, 0);
+        pipeline.offer("Atmotube", MAC, record, -61, 0);
+        // worker survives the exception and delivers the next batch
+        assertTrue(collector.mLatch.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        assertEquals(1, pipeline.getFailedBatches());
+        assertEquals("listener", pipeline.getLastError().getMessage());
+        assertEquals(0, pipeline.getDropped());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeRegistryTest {
+
+    private static String mac(int i) {
+        return String.format(Locale.US, "C2:5E:11:00:%02X:%02X", i >> 8, i & 0xFF);
+    }
+
+    @Test
+    public void parseMac() {
+        assertEquals(0xC25E1100AA01L, AtmotubeRegistry.parseMac("C2:5E:11:00:AA:01"));
+        assertEquals(0xC25E1100AA01L, AtmotubeRegistry.parseMac("c2:5e:11:00:aa:01"));
+        assertEquals(0, AtmotubeRegistry.parseMac("00:00:00:00:00:00"));
+        assertEquals(AtmotubeRegistry.INVALID_MAC, AtmotubeRegistry.parseMac("C2-5E-11-00-AA-01"));
+        assertEquals(AtmotubeRegistry.INVALID_MAC, AtmotubeRegistry.parseMac("C2:5E:11:00:AA"));
+        assertEquals(AtmotubeRegistry.INVALID_MAC, AtmotubeRegistry.parseMac(null));
+    }
+
+    @Test
+    public void updateKeepsKnownValues() {
+        AtmotubeRegistry registry = new AtmotubeRegistry();
+        AtmotubeData data = new AtmotubeData();
+        AtmotubeDecoders.decode("Atmotube", mac(1), AtmotubeDecodersTest.proRecord(), -60, data);
+        assertEquals(0, registry.update(data));
+        AtmotubeData first = registry.get(mac(1));
+        assertNotSame(data, first);
+
+        // reading without PM and info, e.g. from a GATT characteristic
+        data.reset();
+        data.setMac(mac(1));
+        data.setVOC(0.9f);
+        assertEquals(0, registry.update(data));
+        AtmotubeData second = registry.get(0);
+        assertEquals(0.9f, second.getVOC(), 0);
+        assertEquals(first.getPm25(), second.getPm25(), 0);
+        assertEquals(first.getPressure(), second.getPressure(), 0);
+        assertSame(first.getInfo(), second.getInfo());
+        assertEquals(0.4f, first.getVOC(), 0);
+    }
+
+    @Test
+    public void pmSwitchedOff() {
+        AtmotubeRegistry registry = new AtmotubeRegistry();
+        AtmotubeData data = new AtmotubeData();
+        AtmotubeDecoders.decode("Atmotube", mac(1), AtmotubeDecodersTest.proRecord(), -60, data);
+        data.setLat(50.45);
+        data.setLon(30.52);
+        registry.update(data);
+        assertTrue(registry.get(0).isPmIsOn());
+        assertEquals(20f, registry.get(0).getPm25(), 0);
+
+        data.setPm(AtmotubeData.PM_OFF, AtmotubeData.PM_OFF, AtmotubeData.PM_OFF);
+        data.setInfo(0x40);
+        data.setLat(AtmotubeData.UNKNOWN);
+        data.setLon(AtmotubeData.UNKNOWN);
+        registry.update(data);
+        AtmotubeData off = registry.get(0);
+        assertFalse(off.isPmIsOn());
+        assertEquals(AtmotubeData.UNKNOWN, off.getPm1(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, off.getPm25(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, off.getPm10(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, off.getLat(), 0);
+        assertEquals(AtmotubeData.UNKNOWN, off.getLon(), 0);
+    }
+
+    @Test
+    public void order() {
+        AtmotubeRegistry registry = new AtmotubeRegistry();
+        AtmotubeData data = new AtmotubeData();
+        for (int i = 0; i < 200; i++) {
+            data.setMac(mac(i));
+            data.setTime(i);
+            assertEquals(i, registry.update(data));
+        }
+        data.setMac(mac(150));
+        assertEquals(150, registry.update(data));
+        assertEquals(200, registry.size());
+        assertEquals(mac(10), registry.getAll().get(10).getMac());
+        assertEquals(100, registry.removeOlderThan(100));
+        assertEquals(mac(100), registry.get(0).getMac());
+        assertNull(registry.get(mac(5)));
+        data.setMac(mac(5));
+        assertEquals(100, registry.update(data));
+    }
+
+    @Test
+    public void concurrentUpdates() throws InterruptedException {
+        final AtmotubeRegistry registry = new AtmotubeRegistry();
+        final int threads = 4;
+        final int devices = 100;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    AtmotubeData data = new AtmotubeData();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 20000; i++) {
+                        data.setMac(mac(i % devices));
+                        data.setVOC(thread);
+                        data.setTemperature(thread);
+                        registry.update(data);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        while (workers[0].isAlive()) {
+            for (AtmotubeData data : registry.getAll()) {
+                // snapshot values always come from one update
+                assertEquals(data.getVOC(), data.getTemperature(), 0);
+            }
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(devices, registry.size());
+    }
+
+    @Test
+    public void updateDuringRemoval() throws InterruptedException {
+        final AtmotubeRegistry registry = new AtmotubeRegistry();
+        final String mac = mac(1);
+        // time of the last update that was checked
+        final AtomicLong checked = new AtomicLong();
+        final int updates = 200000;
+        Thread remover = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (checked.get() < updates) {
+                    // removes the checked reading, never one that is newer
+                    registry.removeOlderThan(checked.get() + 1);
+                }
+            }
+        });
+        remover.start();
+        AtmotubeData data = new AtmotubeData();
+        data.setMac(mac);
+        try {
+            for (int i = 1; i <= updates; i++) {
+                data.setTime(i);
+                registry.update(data);
+                AtmotubeData state = registry.get(mac);
+                assertNotNull("reading " + i + " is lost", state);
+                assertTrue(state.getTime() >= i);
+                checked.set(i);
+            }
+        } finally {
+            checked.set(updates);
+            remover.join();
+        }
+    }
+}
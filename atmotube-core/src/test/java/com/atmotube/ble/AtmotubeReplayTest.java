@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeReplayTest {
+
+    private static final String MAC = "C2:5E:11:00:AA:01";
+    private static final String OTHER_MAC = "C2:5E:11:00:AA:02";
+    private static final long T0 = 1500000000000L;
+
+    private static byte[] capture() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtmotubeCaptureWriter writer = new AtmotubeCaptureWriter(out);
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        for (int i = 0; i < 10; i++) {
+            record[8] = (byte) i;
+            writer.write(T0 + i * 100, MAC, "Atmotube", -60, record);
+            writer.write(T0 + i * 100 + 10, OTHER_MAC, "Atmotube", -70, record);
+        }
+        // repeated advertisement and a beacon
+        writer.write(T0 + 1000, MAC, "Atmotube", -61, record);
+        writer.write(T0 + 1000, "00:11:22:33:44:55", null, -80, new byte[62]);
+        // converted from a decoded reading with hex raw data
+        AtmotubeData data = new AtmotubeData();
+        record[8] = 100;
+        AtmotubeDecoders.decode("Atmotube", MAC, record, -62, data);
+        data.setTime((T0 + 2000) / 1000);
+        assertTrue(writer.write(data));
+        writer.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void captureRoundTrip() throws IOException {
+        AtmotubeCaptureReader reader = new AtmotubeCaptureReader(new ByteArrayInputStream(capture()));
+        assertTrue(reader.next());
+        assertEquals(T0, reader.getTime());
+        assertEquals(MAC, reader.getMac());
+        assertEquals("Atmotube", reader.getName());
+        assertEquals(-60, reader.getRssi());
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        record[8] = 0;
+        assertArrayEquals(record, reader.getRecord());
+        int count = 1;
+        while (reader.next()) {
+            count++;
+        }
+        assertEquals(23, count);
+        assertEquals("Atmotube", reader.getName());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedCapture() throws IOException {
+        byte[] capture = capture();
+        AtmotubeCaptureReader reader = new AtmotubeCaptureReader(
+                new ByteArrayInputStream(Arrays.copyOf(capture, capture.length - 5)));
+        while (reader.next()) {
+            // read all
+        }
+    }
+
+    @Test
+    public void replayFleet() throws IOException {
+        AtmotubeReplay replay = new AtmotubeReplay(new AtmotubeCaptureReader(new ByteArrayInputStream(capture())), 3);
+        assertEquals(23, replay.size());
+        AtmotubeRegistry registry = new AtmotubeRegistry();
+        replay.setDeduplicator(new AtmotubeDeduplicator());
+        replay.setRegistry(registry);
+        AtmotubeReplay.Result result = replay.run(AtmotubeReplay.SPEED_MAX);
+        assertEquals(69, result.getAdvertisements());
+        assertEquals(3, result.getDuplicates());
+        assertEquals(3, result.getRejected());
+        assertEquals(63, result.getDecoded());
+        assertEquals(6, registry.size());
+        AtmotubeData last = registry.get(MAC);
+        assertEquals((T0 + 2000) / 1000, last.getTime());
+        assertEquals(-62, last.getRssi());
+        assertNotNull(registry.get("00:01" + MAC.substring(5)));
+        assertTrue(result.getThroughput() > 0);
+        assertTrue(result.getMeanNanos(AtmotubeReplay.STAGE_DECODE) > 0);
+        assertEquals(0, result.getMaxLagNanos());
+        assertNotNull(result.toString());
+    }
+
+    @Test
+    public void originalTimeline() throws IOException {
+        AtmotubeReplay replay = new AtmotubeReplay(new AtmotubeCaptureReader(new ByteArrayInputStream(capture())));
+        AtmotubeReplay.Result result = replay.run(100);
+        // capture spans 2 seconds
+        assertTrue(result.getElapsedNanos() >= 20000000L);
+        assertEquals(0, result.getDuplicates());
+        assertEquals(22, result.getDecoded());
+        assertEquals(0, result.getMeanNanos(AtmotubeReplay.STAGE_REGISTRY), 0);
+    }
+
+    @Test
+    public void distinctCopies() throws IOException {
+        // first device looks like copy 1 of the second one
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtmotubeCaptureWriter writer = new AtmotubeCaptureWriter(out);
+        byte[] record = AtmotubeDecodersTest.proRecord();
+        writer.write(T0, "00:01:11:00:AA:01", "Atmotube", -60, record);
+        writer.write(T0, "00:02" + MAC.substring(5), "Atmotube", -60, record);
+        writer.close();
+        AtmotubeReplay replay = new AtmotubeReplay(new AtmotubeCaptureReader(new ByteArrayInputStream(out.toByteArray())), 3);
+        AtmotubeRegistry registry = new AtmotubeRegistry();
+        replay.setRegistry(registry);
+        assertEquals(6, replay.run(AtmotubeReplay.SPEED_MAX).getDecoded());
+        assertEquals(6, registry.size());
+    }
+}
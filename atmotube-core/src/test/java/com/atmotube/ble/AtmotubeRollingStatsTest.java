@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeRollingStatsTest {
+
+    private static AtmotubeData reading(long time, float voc, float pm25) {
+        AtmotubeData data = new AtmotubeData();
+        data.setVOC(voc);
+        if (pm25 != AtmotubeData.UNKNOWN) {
+            data.setPm(pm25, pm25, pm25);
+        }
+        data.setTime(time);
+        return data;
+    }
+
+    @Test
+    public void slidingWindow() {
+        AtmotubeRollingStats stats = new AtmotubeRollingStats(10, 100);
+        for (int t = 0; t < 20; t++) {
+            stats.add(reading(t, t, AtmotubeData.UNKNOWN));
+        }
+        // readings 10..19 in short window, all in long window
+        assertEquals(10, stats.getCount(0, AtmotubeRollingStats.METRIC_VOC));
+        assertEquals(14.5f, stats.getMean(0, AtmotubeRollingStats.METRIC_VOC), 1e-5);
+        assertEquals(10f, stats.getMin(0, AtmotubeRollingStats.METRIC_VOC), 0);
+        assertEquals(19f, stats.getMax(0, AtmotubeRollingStats.METRIC_VOC), 0);
+        assertEquals(20, stats.getCount(1, AtmotubeRollingStats.METRIC_VOC));
+        assertEquals(0f, stats.getMin(1, AtmotubeRollingStats.METRIC_VOC), 0);
+        assertEquals(0, stats.getCount(0, AtmotubeRollingStats.METRIC_PM25));
+        assertEquals(AtmotubeData.UNKNOWN, stats.getMean(0, AtmotubeRollingStats.METRIC_PM25), 0);
+
+        stats.advanceTo(200);
+        assertEquals(0, stats.getCount(1, AtmotubeRollingStats.METRIC_VOC));
+        assertEquals(AtmotubeData.UNKNOWN, stats.getMax(1, AtmotubeRollingStats.METRIC_VOC), 0);
+    }
+
+    @Test
+    public void aqsAndPm() {
+        AtmotubeRollingStats stats = new AtmotubeRollingStats();
+        stats.add(reading(0, 0.1f, 10f));
+        AtmotubeData off = reading(1, 0.1f, AtmotubeData.UNKNOWN);
+        off.mPm25 = AtmotubeData.PM_OFF_FLOAT;
+        stats.add(off);
+        assertEquals(1, stats.getCount(0, AtmotubeRollingStats.METRIC_PM25));
+        assertEquals(10f, stats.getMax(0, AtmotubeRollingStats.METRIC_PM25), 0);
+        assertEquals(2, stats.getCount(0, AtmotubeRollingStats.METRIC_AQS));
+        assertEquals(AtmotubeAqs.getAQS(0.1f, 10f, 10f, 10f), stats.getMin(0, AtmotubeRollingStats.METRIC_AQS), 0);
+        assertEquals(AtmotubeAqs.getAQS(0.1f), stats.getMax(0, AtmotubeRollingStats.METRIC_AQS), 0);
+    }
+
+    @Test
+    public void matchesRescan() {
+        Random random = new Random(7);
+        AtmotubeRollingStats stats = new AtmotubeRollingStats(300);
+        float[] voc = new float[5000];
+        long[] time = new long[voc.length];
+        long t = 0;
+        for (int i = 0; i < voc.length; i++) {
+            t += random.nextInt(4);
+            time[i] = t;
+            voc[i] = random.nextFloat() * 5;
+            stats.add(reading(t, voc[i], AtmotubeData.UNKNOWN));
+        }
+        int from = 0;
+        while (time[from] <= t - 300) {
+            from++;
+        }
+        float[] window = Arrays.copyOfRange(voc, from, voc.length);
+        Arrays.sort(window);
+        double sum = 0;
+        for (float v : window) {
+            sum += v;
+        }
+        assertEquals(window.length, stats.getCount(0, AtmotubeRollingStats.METRIC_VOC));
+        assertEquals(sum / window.length, stats.getMean(0, AtmotubeRollingStats.METRIC_VOC), 1e-3);
+        assertEquals(window[0], stats.getMin(0, AtmotubeRollingStats.METRIC_VOC), 0);
+        assertEquals(window[window.length - 1], stats.getMax(0, AtmotubeRollingStats.METRIC_VOC), 0);
+        float median = window[(window.length - 1) / 2];
+        assertEquals(median, stats.getPercentile(0, AtmotubeRollingStats.METRIC_VOC, 50), median * 0.07);
+        float p95 = window[(int) Math.ceil(0.95 * window.length) - 1];
+        assertEquals(p95, stats.getPercentile(0, AtmotubeRollingStats.METRIC_VOC, 95), p95 * 0.07);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeOrder() {
+        AtmotubeRollingStats stats = new AtmotubeRollingStats();
+        stats.add(reading(10, 1f, AtmotubeData.UNKNOWN));
+        stats.add(reading(9, 1f, AtmotubeData.UNKNOWN));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeSeriesCodecTest {
+
+    private static final int WEEK = 7 * 24 * 3600 / 2;
+
+    private static AtmotubeSeries week() {
+        Random random = new Random(1);
+        AtmotubeSeries series = new AtmotubeSeries("C2:5E:11:00:AA:01", WEEK);
+        int voc = 400;
+        int temp = 23;
+        int pressure = 101325;
+        int pm = 10;
+        long time = 1600000000;
+        for (int i = 0; i < WEEK; i++) {
+            voc = Math.max(0, voc + random.nextInt(11) - 5);
+            if (random.nextInt(100) == 0) {
+                temp += random.nextInt(3) - 1;
+            }
+            pressure += random.nextInt(5) - 2;
+            if (random.nextInt(10) == 0) {
+                pm = Math.max(0, pm + random.nextInt(3) - 1);
+            }
+            time += random.nextInt(50) == 0 ? 3 : 2;
+            series.append(time, (float) voc / 1000, temp, 45, (float) pressure / 100, pm, pm * 2, pm * 3, i < 100 ? 0x21 : 0x23);
+        }
+        return series;
+    }
+
+    private static byte[] encode(AtmotubeSeries series) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtmotubeSeriesWriter writer = new AtmotubeSeriesWriter(out, series);
+        writer.write(series);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        AtmotubeSeries series = week();
+        series.setVersion("740105", AtmotubeData.HW_VER_PRO);
+        byte[] encoded = encode(series);
+        // 38 bytes per reading in memory
+        assertTrue("encoded " + encoded.length, encoded.length < WEEK * 8);
+
+        AtmotubeSeries decoded = new AtmotubeSeriesReader(new ByteArrayInputStream(encoded)).read();
+        assertEquals(series.getMac(), decoded.getMac());
+        assertEquals("740105", decoded.getFwVer());
+        assertEquals(AtmotubeData.HW_VER_PRO, decoded.getHwVer());
+        assertEquals(series.size(), decoded.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(series.getTime(i), decoded.getTime(i));
+            assertEquals(series.getVOC(i), decoded.getVOC(i), 0);
+            assertEquals(series.getTemperature(i), decoded.getTemperature(i), 0);
+            assertEquals(series.getPressure(i), decoded.getPressure(i), 0);
+            assertEquals(series.getPm25(i), decoded.getPm25(i), 0);
+            assertEquals(series.getInfoByte(i), decoded.getInfoByte(i));
+        }
+    }
+
+    @Test
+    public void unknownValues() throws IOException {
+        AtmotubeSeries series = new AtmotubeSeries(null);
+        series.append(10, 0.5f, 20, 30, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN,
+                AtmotubeData.UNKNOWN, AtmotubeSeries.INFO_UNKNOWN);
+        series.append(10, 0.5f, 20, 30, 1000, 1, 2, 3, -5);
+        AtmotubeSeries decoded = new AtmotubeSeriesReader(new ByteArrayInputStream(encode(series))).read();
+        assertNull(decoded.getMac());
+        assertEquals(AtmotubeData.UNKNOWN, decoded.getPressure(0), 0);
+        assertEquals(AtmotubeData.UNKNOWN, decoded.getPm10(0), 0);
+        assertEquals(AtmotubeSeries.INFO_UNKNOWN, decoded.getInfoByte(0));
+        assertEquals(-5, decoded.getInfoByte(1));
+        assertEquals(10, decoded.getTime(1));
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncated() throws IOException {
+        byte[] encoded = encode(week());
+        new AtmotubeSeriesReader(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length / 2))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void notSeries() throws IOException {
+        new AtmotubeSeriesReader(new ByteArrayInputStream(new byte[16]));
+    }
+}
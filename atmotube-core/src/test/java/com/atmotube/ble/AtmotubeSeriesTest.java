@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AtmotubeSeriesTest {
+
+    private static AtmotubeSeries series(int count) {
+        AtmotubeSeries series = new AtmotubeSeries("C2:5E:11:00:AA:01", 4);
+        for (int i = 0; i < count; i++) {
+            series.append(1000 + i * 2, i / 100f, 20 + i, 40, 1000, i, i * 2, i * 3, i % 2 == 0 ? 0x21 : AtmotubeSeries.INFO_UNKNOWN);
+        }
+        return series;
+    }
+
+    @Test
+    public void appendAndGrow() {
+        AtmotubeSeries series = series(1000);
+        assertEquals(1000, series.size());
+        assertEquals(2998, series.getTime(999));
+        assertEquals(999 / 100f, series.getVOC(999), 0);
+        assertEquals(2997f, series.getPm10(999), 0);
+        assertEquals(0x21, series.getInfoByte(0));
+        assertEquals(AtmotubeSeries.INFO_UNKNOWN, series.getInfoByte(1));
+        assertNull(series.getInfo(1));
+        series.trimToSize();
+        assertEquals(998f, series.getPm25(499), 0);
+    }
+
+    @Test
+    public void range() {
+        AtmotubeSeries series = series(100);
+        assertEquals(0, series.indexOf(0));
+        assertEquals(5, series.indexOf(1010));
+        assertEquals(6, series.indexOf(1011));
+        assertEquals(100, series.indexOf(5000));
+        final long[] sum = {0};
+        int visited = series.forEach(1010, 1020, new AtmotubeSeries.Visitor() {
+            @Override
+            public boolean visit(AtmotubeSeries s, int index) {
+                sum[0] += s.getTime(index);
+                return true;
+            }
+        });
+        assertEquals(5, visited);
+        assertEquals(1010 + 1012 + 1014 + 1016 + 1018, sum[0]);
+        float[] voc = new float[5];
+        series.getVOC(5, 10, voc, 0);
+        assertEquals(9 / 100f, voc[4], 0);
+        assertEquals(5, series.removeBefore(1010));
+        assertEquals(1010, series.getTime(0));
+    }
+
+    @Test
+    public void holder() {
+        AtmotubeSeries series = new AtmotubeSeries("C2:5E:11:00:AA:01");
+        AtmotubeData data = new AtmotubeData();
+        AtmotubeDecoders.decode("Atmotube", series.getMac(), AtmotubeDecodersTest.proRecord(), -60, data);
+        data.setTime(1234);
+        series.append(data);
+        AtmotubeData copy = new AtmotubeData();
+        series.get(0, copy);
+        assertEquals(1234, copy.getTime());
+        assertEquals(data.getVOC(), copy.getVOC(), 0);
+        assertEquals(data.getPressure(), copy.getPressure(), 0);
+        assertEquals(data.getPm25(), copy.getPm25(), 0);
+        assertEquals(data.getInfoByte(), copy.getInfoByte());
+        assertSame(data.getInfo(), copy.getInfo());
+        assertEquals(AtmotubeData.HW_VER_PRO, copy.getHwVer());
+
+        // firmware string is stored as decoded, the same way the log stores it
+        data.setFwVer("7401ab");
+        data.setTime(1235);
+        series.append(data);
+        assertEquals("7401ab", series.getFwVer());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfOrder() {
+        AtmotubeSeries series = series(3);
+        series.append(999, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+}
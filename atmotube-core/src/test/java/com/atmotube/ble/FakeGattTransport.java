@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Local GATT transport that answers every operation asynchronously from its own thread
+ */
+class FakeGattTransport implements AtmotubeGattTransport {
+
+    final Set<UUID> mServices = new HashSet<>();
+    final Map<UUID, byte[]> mValues = new HashMap<>();
+    final List<String> mOperations = new ArrayList<>();
+    final List<byte[]> mWrites = new ArrayList<>();
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FakeGattTransport");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile Callback mCallback;
+    private volatile long mDelayMillis;
+    private volatile boolean mHang;
+    volatile int mMaxMtu = 185;
+    volatile boolean mClosed;
+
+    FakeGattTransport(UUID... services) {
+        for (UUID service : services) {
+            mServices.add(service);
+        }
+    }
+
+    void setDelay(long delayMillis) {
+        mDelayMillis = delayMillis;
+    }
+
+    // operations are accepted but never answered
+    void setHang(boolean hang) {
+        mHang = hang;
+    }
+
+    synchronized List<String> getOperations() {
+        return new ArrayList<>(mOperations);
+    }
+
+    void notify(final UUID characteristic, final byte[] value) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCharacteristicChanged(characteristic, value);
+            }
+        });
+    }
+
+    // connection lost on device side
+    void drop() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onConnectionStateChanged(false, 8);
+            }
+        });
+    }
+
+    synchronized List<byte[]> getWrites() {
+        return new ArrayList<>(mWrites);
+    }
+
+    private synchronized void record(String operation) {
+        mOperations.add(operation);
+    }
+
+    private boolean answer(final Runnable answer) {
+        if (mHang) {
+            return true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(mDelayMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                answer.run();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean connect(Callback callback) {
+        mCallback = callback;
+        mClosed = false;
+        record("connect");
+        return answer(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onConnectionStateChanged(true, GATT_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        record("close");
+        mClosed = true;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        record("discover");
+        return answer(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onServicesDiscovered(GATT_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public boolean requestMtu(final int mtu) {
+        record("mtu " + mtu);
+        return answer(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onMtuChanged(Math.min(mtu, mMaxMtu), GATT_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public boolean hasService(UUID service) {
+        return mServices.contains(service);
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID service, final UUID characteristic) {
+        record("read " + characteristic);
+        return answer(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCharacteristicRead(characteristic, mValues.get(characteristic), GATT_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID service, final UUID characteristic, byte[] value) {
+        record("write " + characteristic);
+        synchronized (this) {
+            mWrites.add(value);
+        }
+        return answer(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCharacteristicWrite(characteristic, GATT_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public boolean enableNotifications(UUID service, final UUID characteristic) {
+        record("notify " + characteristic);
+        return answer(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onNotificationsEnabled(characteristic, GATT_SUCCESS);
+            }
+        });
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+/**
+ * History protocol spoken by tests, not the device firmware
+ * <pre>
+ * request  client -> device  'H', from time uint32
+ * ack      client -> device  'A', time uint32
+ * data     device -> client  0x01, payload length uint16, records
+ * end      device -> client  0x02, 0x0000
+ * record   19 bytes          time uint32, VOC ppb uint16, humidity %, signed temperature C,
+ *                            pressure mbar * 100 int32, info byte, PM1, PM2.5, PM10 ug/m3 uint16
+ * </pre>
+ */
+class FakeHistoryCodec implements AtmotubeHistorySync.Codec {
+
+    static final byte CMD_REQUEST = 'H';
+    static final byte CMD_ACK = 'A';
+    static final int FRAME_DATA = 0x01;
+    static final int FRAME_END = 0x02;
+    static final int RECORD_SIZE = 19;
+
+    private static final int HEADER_SIZE = 3;
+
+    private final byte[] mHeader = new byte[HEADER_SIZE];
+    private int mHeaderFill;
+    private int mRemaining;
+    private final byte[] mRecord = new byte[RECORD_SIZE];
+    private int mRecordFill;
+
+    @Override
+    public byte[] request(long fromTime) {
+        return command(CMD_REQUEST, fromTime);
+    }
+
+    @Override
+    public byte[] ack(long time) {
+        return command(CMD_ACK, time);
+    }
+
+    @Override
+    public void reset() {
+        mHeaderFill = 0;
+        mRemaining = 0;
+        mRecordFill = 0;
+    }
+
+    @Override
+    public boolean parse(byte[] value, AtmotubeHistorySync.Sink sink) {
+        int off = 0;
+        int end = value.length;
+        while (off < end) {
+            if (mHeaderFill < HEADER_SIZE) {
+                mHeader[mHeaderFill++] = value[off++];
+                if (mHeaderFill < HEADER_SIZE) {
+                    continue;
+                }
+                int type = mHeader[0] & 0xFF;
+                int length = AtmotubeBytes.uint16(mHeader, 1);
+                if (type == FRAME_END && length == 0) {
+                    sink.onEnd();
+                    return true;
+                }
+                if (type != FRAME_DATA || length % RECORD_SIZE != 0) {
+                    return false;
+                }
+                mRemaining = length;
+                if (length == 0) {
+                    mHeaderFill = 0;
+                    sink.onFrameEnd();
+                }
+                continue;
+            }
+            if (mRecordFill == 0 && end - off >= RECORD_SIZE) {
+                record(value, off, sink);
+                off += RECORD_SIZE;
+            } else {
+                int n = Math.min(RECORD_SIZE - mRecordFill, end - off);
+                System.arraycopy(value, off, mRecord, mRecordFill, n);
+                mRecordFill += n;
+                off += n;
+                if (mRecordFill < RECORD_SIZE) {
+                    continue;
+                }
+                mRecordFill = 0;
+                record(mRecord, 0, sink);
+            }
+            mRemaining -= RECORD_SIZE;
+            if (mRemaining == 0) {
+                mHeaderFill = 0;
+                sink.onFrameEnd();
+            }
+        }
+        return true;
+    }
+
+    private static void record(byte[] b, int off, AtmotubeHistorySync.Sink sink) {
+        long time = AtmotubeBytes.int32(b, off) & 0xFFFFFFFFL;
+        float voc = (float) AtmotubeBytes.uint16(b, off + 4) / 1000;
+        float humidity = AtmotubeDecoders.getHumidity(b[off + 6]);
+        float temperature = AtmotubeDecoders.getTemperature(b[off + 7]);
+        int p = AtmotubeBytes.int32(b, off + 8);
+        float pressure = p < 0 ? AtmotubeData.UNKNOWN : (float) p / 100;
+        int info = b[off + 12];
+        int pm1 = AtmotubeBytes.uint16(b, off + 13);
+        int pm25 = AtmotubeBytes.uint16(b, off + 15);
+        int pm10 = AtmotubeBytes.uint16(b, off + 17);
+        if (pm1 == AtmotubeData.PM_OFF || pm25 == AtmotubeData.PM_OFF || pm10 == AtmotubeData.PM_OFF) {
+            sink.onRecord(time, voc, temperature, humidity, pressure,
+                    AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, AtmotubeData.UNKNOWN, info);
+        } else {
+            sink.onRecord(time, voc, temperature, humidity, pressure, pm1, pm25, pm10, info);
+        }
+    }
+
+    private static byte[] command(byte command, long time) {
+        return new byte[]{command, (byte) (time >>> 24), (byte) (time >>> 16), (byte) (time >>> 8), (byte) time};
+    }
+}
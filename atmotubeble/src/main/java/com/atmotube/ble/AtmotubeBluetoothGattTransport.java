@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.UUID;
+
+/**
+ * {@link AtmotubeGattTransport} on top of Android {@link BluetoothGatt}
+ */
+public class AtmotubeBluetoothGattTransport extends BluetoothGattCallback implements AtmotubeGattTransport {
+
+    private static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private final Context mContext;
+    private final BluetoothDevice mDevice;
+    private volatile Callback mCallback;
+    private volatile BluetoothGatt mGatt;
+    private volatile boolean mClosed;
+
+    public AtmotubeBluetoothGattTransport(Context context, BluetoothDevice device) {
+        mContext = context.getApplicationContext();
+        mDevice = device;
+    }
+
+    /**
+     * Connect to Atmotube with {@link AtmotubeGattManager}
+     *
+     * @param manager sessions manager
+     * @param context context
+     * @param device  device from scan result
+     * @param data    holder with the last advertisement or empty holder
+     * @return session
+     */
+    public static AtmotubeGattSession connect(AtmotubeGattManager manager, Context context, BluetoothDevice device,
+                                              UpdateDataHolder data) {
+        return manager.connect(device.getAddress(), new AtmotubeBluetoothGattTransport(context, device), data);
+    }
+
+    @Override
+    public boolean connect(Callback callback) {
+        mCallback = callback;
+        mClosed = false;
+        BluetoothGatt gatt;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            gatt = mDevice.connectGatt(mContext, false, this, BluetoothDevice.TRANSPORT_LE);
+        } else {
+            gatt = mDevice.connectGatt(mContext, false, this);
+        }
+        mGatt = gatt;
+        return gatt != null;
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        BluetoothGatt gatt = mGatt;
+        mGatt = null;
+        if (gatt != null) {
+            gatt.disconnect();
+            gatt.close();
+        }
+    }
+
+    @Override
+    public boolean discoverServices() {
+        BluetoothGatt gatt = mGatt;
+        return gatt != null && gatt.discoverServices();
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        BluetoothGatt gatt = mGatt;
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && gatt != null && gatt.requestMtu(mtu);
+    }
+
+    @Override
+    public boolean hasService(UUID service) {
+        BluetoothGatt gatt = mGatt;
+        return gatt != null && gatt.getService(service) != null;
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID service, UUID characteristic) {
+        BluetoothGattCharacteristic c = getCharacteristic(service, characteristic);
+        return c != null && mGatt.readCharacteristic(c);
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value) {
+        BluetoothGattCharacteristic c = getCharacteristic(service, characteristic);
+        if (c == null) {
+            return false;
+        }
+        c.setValue(value);
+        return mGatt.writeCharacteristic(c);
+    }
+
+    @Override
+    public boolean enableNotifications(UUID service, UUID characteristic) {
+        BluetoothGattCharacteristic c = getCharacteristic(service, characteristic);
+        if (c == null || !mGatt.setCharacteristicNotification(c, true)) {
+            return false;
+        }
+        BluetoothGattDescriptor descriptor = c.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG);
+        if (descriptor == null) {
+            return false;
+        }
+        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+        return mGatt.writeDescriptor(descriptor);
+    }
+
+    private BluetoothGattCharacteristic getCharacteristic(UUID service, UUID characteristic) {
+        BluetoothGatt gatt = mGatt;
+        if (gatt == null) {
+            return null;
+        }
+        BluetoothGattService s = gatt.getService(service);
+        return s == null ? null : s.getCharacteristic(characteristic);
+    }
+
+    // callbacks of closed connections are ignored
+    private boolean isCurrent(BluetoothGatt gatt) {
+        BluetoothGatt current = mGatt;
+        return !mClosed && (current == null || current == gatt);
+    }
+
+    @Override
+    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        if (!isCurrent(gatt)) {
+            return;
+        }
+        // may come before connectGatt returns
+        mGatt = gatt;
+        mCallback.onConnectionStateChanged(newState == BluetoothProfile.STATE_CONNECTED, status);
+    }
+
+    @Override
+    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+        if (isCurrent(gatt)) {
+            mCallback.onServicesDiscovered(status);
+        }
+    }
+
+    @Override
+    public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+        if (isCurrent(gatt)) {
+            mCallback.onMtuChanged(mtu, status);
+        }
+    }
+
+    @Override
+    public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        if (isCurrent(gatt)) {
+            mCallback.onCharacteristicRead(characteristic.getUuid(), characteristic.getValue(), status);
+        }
+    }
+
+    @Override
+    public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        if (isCurrent(gatt)) {
+            mCallback.onCharacteristicWrite(characteristic.getUuid(), status);
+        }
+    }
+
+    @Override
+    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+        if (isCurrent(gatt)) {
+            mCallback.onNotificationsEnabled(descriptor.getCharacteristic().getUuid(), status);
+        }
+    }
+
+    @Override
+    public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+        if (isCurrent(gatt)) {
+            mCallback.onCharacteristicChanged(characteristic.getUuid(), characteristic.getValue());
+        }
+    }
+}
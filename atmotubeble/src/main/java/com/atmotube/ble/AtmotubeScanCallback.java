@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 NotAnotherOne Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atmotube.ble;
+
+import android.os.SystemClock;
+
+import java.util.List;
+
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Scan callback that only copies advertisements into {@link AtmotubePipeline}
+ * <p>
+ * Decoding and listeners run on the pipeline worker, so the callback returns quickly for single
+ * and batched scan results. Start the pipeline before the scan and stop it after the scan is stopped.
+ */
+public class AtmotubeScanCallback extends ScanCallback {
+
+    private final AtmotubePipeline mPipeline;
+
+    public AtmotubeScanCallback(AtmotubePipeline pipeline) {
+        mPipeline = pipeline;
+    }
+
+    public AtmotubePipeline getPipeline() {
+        return mPipeline;
+    }
+
+    @Override
+    public void onScanResult(int callbackType, ScanResult result) {
+        offer(result, System.currentTimeMillis(), SystemClock.elapsedRealtimeNanos());
+    }
+
+    @Override
+    public void onBatchScanResults(List<ScanResult> results) {
+        // results may be delivered long after they were received, keep their own timestamps
+        long now = System.currentTimeMillis();
+        long elapsed = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < results.size(); i++) {
+            offer(results.get(i), now, elapsed);
+        }
+    }
+
+    private void offer(ScanResult result, long now, long elapsedNanos) {
+        if (result == null || result.getScanRecord() == null || result.getDevice() == null) {
+            return;
+        }
+        String name = result.getDevice().getName();
+        String mac = result.getDevice().getAddress();
+        if (name == null || mac == null) {
+            return;
+        }
+        long time = now - (elapsedNanos - result.getTimestampNanos()) / 1000000;
+        mPipeline.offer(name, mac, result.getScanRecord().getBytes(), result.getRssi(), time);
+    }
+}
@@ -18,78 +18,20 @@ package com.atmotube.ble;
 
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.text.TextUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import java.io.Serializable;
-
 /**
  * Data holder with Atmotube packet information
  */
-public class UpdateDataHolder implements Parcelable, Serializable {
-
-    public static final int HW_VER_UNKNOWN = 0;
-    public static final int HW_VER_1_0 = 1;
-    public static final int HW_VER_2_0 = 2;
-    public static final int HW_VER_PLUS = 3;
-    public static final int HW_VER_PRO = 4;
-
-    public static final int UNKNOWN = -1000;
-    public static final int PM_OFF = 0xFFFF;
-    public static final float PM_OFF_FLOAT = 167772.15f; // 0xFFFFFF
-
-    private float mVOC = UNKNOWN;
-    private float mTemperature = UNKNOWN;
-    private float mHumidity = UNKNOWN;
-    private float mPressure = UNKNOWN;
-
-    private long mTime;
-    private double mLat = UNKNOWN;
-    private double mLon = UNKNOWN;
+public class UpdateDataHolder extends AtmotubeData implements Parcelable {
 
-    private int mADC;
-    private String mFwVer;
-    private String mRaw;
-    private String mName;
-    private int mHwVer;
-    private String mMac;
-    private int mRssi;
-    private int mErrorCode;
-    private int mBatteryVoltage;
-    private int mBatteryPercentage = UNKNOWN;
-
-    private float mPm1 = UNKNOWN;
-    private float mPm25 = UNKNOWN;
-    private float mPm10 = UNKNOWN;
-
-    private int mDeviceCRC = UNKNOWN;
-
-    private AtmotubeInfo mInfo;
+    private static final long serialVersionUID = 1L;
 
     public UpdateDataHolder() {
     }
 
-    public boolean isValid() {
-        return mVOC != UNKNOWN;
-    }
-
-    public boolean isFullPacket() {
-        // on some devices packet data may be incomplete
-        return !TextUtils.isEmpty(mFwVer);
-    }
-
-    public boolean isValidAllData() {
-        boolean isGeneralDataOK = mVOC != UNKNOWN && mTemperature != UNKNOWN && mHumidity != UNKNOWN && mInfo != null;
-        if (isHw3()) {
-            return isGeneralDataOK && mPressure != UNKNOWN;
-        } else if (isHw4()) {
-            return isGeneralDataOK && (!isPmIsOn() || (mPressure != UNKNOWN && mPm1 != UNKNOWN && mPm10 != UNKNOWN && mPm25 != UNKNOWN));
-        }
-        return isGeneralDataOK;
-    }
-
     public UpdateDataHolder(String name,
                             float voc,
                             float temperature,
@@ -125,28 +67,8 @@ public class UpdateDataHolder implements Parcelable, Serializable {
                             int batteryVoltage,
                             int batteryPercentage,
                             int errorCode) {
-        mName = name;
-        mTime = time;
-        mVOC = voc;
-        mTemperature = temperature;
-        mHumidity = humidity;
-        mPressure = pressure;
-        mADC = adc;
-        mFwVer = fwVer;
+        set(name, time, voc, temperature, humidity, pressure, info, adc, fwVer, null, hwVer, mac, rssi, batteryVoltage, batteryPercentage, errorCode);
         mRaw = raw;
-        mHwVer = hwVer;
-        mMac = mac;
-        mRssi = rssi;
-        mBatteryVoltage = batteryVoltage;
-        mErrorCode = errorCode;
-        setInfo(info);
-        if (mInfo != null && mInfo.mHasError) {
-            mBatteryVoltage = 0;
-            mErrorCode = mBatteryVoltage;
-        }
-        if (isHw3() || isHw4()) {
-            mBatteryPercentage = batteryPercentage;
-        }
     }
 
     public UpdateDataHolder(Parcel in) {
@@ -170,11 +92,11 @@ public class UpdateDataHolder implements Parcelable, Serializable {
         mLon = in.readDouble();
         mADC = in.readInt();
         mFwVer = in.readString();
-        mRaw = in.readString();
+        readRaw(in);
         mHwVer = in.readInt();
         mMac = in.readString();
         int b = in.readInt();
-        mInfo = b == -1 ? null : new AtmotubeInfo(b, mFwVer);
+        mInfo = b == -1 ? null : AtmotubeInfo.valueOf(b, mFwVer);
         mBatteryVoltage = in.readInt();
         mErrorCode = in.readInt();
         mPm1 = in.readFloat();
@@ -200,7 +122,7 @@ public class UpdateDataHolder implements Parcelable, Serializable {
         dest.writeDouble(mLon);
         dest.writeInt(mADC);
         dest.writeString(mFwVer);
-        dest.writeString(mRaw);
+        writeRaw(dest);
         dest.writeInt(mHwVer);
         dest.writeString(mMac);
         dest.writeInt(mInfo == null ? -1 : mInfo.getInfoByte());
@@ -223,267 +145,37 @@ public class UpdateDataHolder implements Parcelable, Serializable {
         }
     };
 
-    public void setInfo(Integer info) {
-        if (info != null) {
-            mInfo = new AtmotubeInfo(info, mFwVer);
+    private void writeRaw(Parcel dest) {
+        int mode = getRawMode();
+        dest.writeInt(mode);
+        if (mode == RAW_MODE_STRING) {
+            dest.writeString(getRaw());
+        } else if (mode == RAW_MODE_BYTES) {
+            dest.writeByteArray(getRawBytes());
         }
     }
 
-    public void setVOC(float VOC) {
-        mVOC = VOC;
-        mTime = System.currentTimeMillis() / 1000;
-    }
-
-    public void setTemperature(float temperature) {
-        mTemperature = temperature;
-        mTime = System.currentTimeMillis() / 1000;
-    }
-
-    public void setHumidity(float humidity) {
-        mHumidity = humidity;
-        mTime = System.currentTimeMillis() / 1000;
-    }
-
-    public void updateData(UpdateDataHolder holder) {
-        if (holder != null) {
-            mTime = System.currentTimeMillis() / 1000;
-            if (holder.mVOC != UNKNOWN) {
-                mVOC = holder.mVOC;
-            }
-            if (holder.mHumidity != UNKNOWN) {
-                mHumidity = holder.mHumidity;
-            }
-            if (holder.mTemperature != UNKNOWN) {
-                mTemperature = holder.mTemperature;
-            }
-            mLat = holder.mLat;
-            mLon = holder.mLon;
-            if (holder.mInfo != null) {
-                mInfo = holder.mInfo;
-            }
+    private void readRaw(Parcel in) {
+        int mode = in.readInt();
+        mRaw = null;
+        mRawBytes = null;
+        if (mode == RAW_MODE_STRING) {
+            mRaw = in.readString();
+        } else if (mode == RAW_MODE_BYTES) {
+            mRawBytes = in.createByteArray();
         }
     }
 
-    public String getFwVer() {
-        return mFwVer != null ? mFwVer.toUpperCase() : null;
-    }
-
-    public void setCurrentFwVersion(String fwVer) {
-        mFwVer = fwVer;
-    }
-
-    public boolean isActivated() {
-        return mInfo != null && mInfo.mIsActivated;
-    }
-
-    public boolean hasFwVer() {
-        return TextUtils.isEmpty(mFwVer);
-    }
-
-    public long getTime() {
-        return mTime;
-    }
-
-    public boolean isCharging() {
-        return mInfo != null && mInfo.mIsCharging;
-    }
-
-    public boolean isChargingTimeout() {
-        return mInfo != null && mInfo.mIsChargingTimeout;
-    }
-
-    public boolean isCalibrating() {
-        return mInfo != null && mInfo.mIsCalibrating;
-    }
-
-    public int getBattery() {
-        if (mBatteryPercentage != UNKNOWN) {
-            return mBatteryPercentage;
-        }
-        return mInfo != null ? mInfo.mBattery : 0;
-    }
-
-    public float getVOC() {
-        return mVOC;
-    }
-
-    public float getTemperature() {
-        return mTemperature;
-    }
-
-    public float getHumidity() {
-        return mHumidity;
-    }
-
-    public float getPressure() {
-        return mPressure;
-    }
-
-    public int getADC() {
-        return mADC;
-    }
-
-    public Integer getInfoByte() {
-        return mInfo != null ? mInfo.getInfoByte() : null;
-    }
-
-    public String getMac() {
-        return mMac;
-    }
-
-    public int getErrorCode() {
-        return mErrorCode;
-    }
-
-    public int getBatteryVoltage() {
-        return mBatteryVoltage;
-    }
-
-    public float getBatteryVoltageFloat() {
-        return (float) mBatteryVoltage / 100;
-    }
-
-    public double getLat() {
-        return mLat;
-    }
-
-    public void setLat(double lat) {
-        mLat = lat;
-    }
-
-    public double getLon() {
-        return mLon;
-    }
-
-    public void setLon(double lon) {
-        mLon = lon;
-    }
-
-    public void setPressure(float mPressure) {
-        this.mPressure = mPressure;
-    }
-
-    public void setTime(long mTime) {
-        this.mTime = mTime;
-    }
-
-    public void setMac(String mMac) {
-        this.mMac = mMac;
-    }
-
-    public void setADC(int ADC) {
-        mADC = ADC;
-    }
-
-    public void setFwVer(String fwVer) {
-        mFwVer = fwVer;
-    }
-
-    public String getRaw() {
-        return mRaw;
-    }
-
-    public void setRaw(String raw) {
-        mRaw = raw;
-    }
-
-    public void setHwVer(int hwVer) {
-        mHwVer = hwVer;
-    }
-
-    public int getRssi() {
-        return mRssi;
-    }
-
-    public void setRssi(int rssi) {
-        mRssi = rssi;
-    }
-
-    public void setErrorCode(int errorCode) {
-        mErrorCode = errorCode;
-    }
-
-    public void setBatteryVoltage(int batteryVoltage) {
-        mBatteryVoltage = batteryVoltage;
-    }
-
-    public void setBatteryPercentage(int batteryPercentage) {
-        mBatteryPercentage = batteryPercentage;
-    }
-
-    public AtmotubeInfo getInfo() {
-        return mInfo;
-    }
-
-    public void setInfo(AtmotubeInfo info) {
-        mInfo = info;
-    }
-
-    public int getHwVer() {
-        return mHwVer;
-    }
-
-    public boolean isHw2() {
-        return mHwVer == HW_VER_2_0;
-    }
-
-    public boolean isHw3() {
-        return mHwVer == HW_VER_PLUS;
-    }
-
-    public boolean isHw4() {
-        return mHwVer == HW_VER_PRO;
-    }
-
-    public void setName(String name) {
-        mName = name;
-    }
-
-    public void setPm(int pm1, int pm25, int pm10) {
-        if (pm1 == PM_OFF || pm25 == PM_OFF || pm10 == PM_OFF) {
-            mPm1 = UNKNOWN;
-            mPm25 = UNKNOWN;
-            mPm10 = UNKNOWN;
-            return;
-        }
-        mPm1 = pm1;
-        mPm25 = pm25;
-        mPm10 = pm10;
-    }
-
-    public void setPm(float pm1, float pm25, float pm10) {
-        if (pm1 == PM_OFF_FLOAT || pm25 == PM_OFF_FLOAT || pm10 == PM_OFF_FLOAT) {
-            mPm1 = UNKNOWN;
-            mPm25 = UNKNOWN;
-            mPm10 = UNKNOWN;
-            return;
-        }
-        mPm1 = pm1;
-        mPm25 = pm25;
-        mPm10 = pm10;
-    }
-
-    public float getPm1() {
-        return mPm1;
-    }
-
-    public float getPm25() {
-        return mPm25;
-    }
-
-    public float getPm10() {
-        return mPm10;
-    }
-
-    public String getName() {
-        return mName;
-    }
-
+    /**
+     * Get reading as {@code [lat, lon, aqs, voc, temp, hum, time]} array
+     * <p>
+     * Use {@link AtmotubeJsonWriter} to export many readings, it writes the same rows without building JSON objects.
+     */
     public JSONArray getJSONArray() throws JSONException {
         JSONArray array = new JSONArray();
         array.put(mLat);
         array.put(mLon);
-        array.put(AtmotubeUtils.getAQS(mVOC, mPm1, mPm25, mPm10));
+        array.put(AtmotubeAqs.getAQS(mVOC, mPm1, mPm25, mPm10));
         array.put(Math.round(mVOC * 100.0) / 100.0);
         array.put(mTemperature);
         array.put(mHumidity);
@@ -491,20 +183,4 @@ public class UpdateDataHolder implements Parcelable, Serializable {
         return array;
     }
 
-    public int getDeviceCRC() {
-        return mDeviceCRC;
-    }
-
-    public void setDeviceCRC(int deviceCRC) {
-        mDeviceCRC = deviceCRC;
-    }
-
-    public boolean isBonded() {
-        return mInfo != null && mInfo.mIsBonded;
-    }
-
-    public boolean isPmIsOn() {
-        return mInfo != null && mInfo.mIsPmOn;
-    }
-
-}
\ No newline at end of file
+}